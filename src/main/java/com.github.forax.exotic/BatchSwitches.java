@@ -0,0 +1,157 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+
+/**
+ * Helper methods of the batch versions of the switches, switching on a whole array.
+ *
+ * <p>The batch method of a switch is a loop that calls the method handle of the switch for each
+ * value. To avoid all the switches sharing the same loop, and so the same type profile, a copy of
+ * a template class is defined for each switch, the method handle of the switch being a static
+ * final field of the copy, so each loop is compiled with its own inlining cache inlined.
+ */
+final class BatchSwitches {
+  private BatchSwitches() {
+    throw new AssertionError();
+  }
+
+  private static final byte[] STRING_SWITCH_TEMPLATE =
+      HiddenClasses.bytecode(StringSwitchImpl.class);
+  private static final byte[] TYPE_SWITCH_TEMPLATE = HiddenClasses.bytecode(TypeSwitchImpl.class);
+
+  // the method handle of the switch being created, read by the static initializer of the copy
+  private static final ThreadLocal<MethodHandle> PENDING_HANDLE = new ThreadLocal<>();
+
+  static MethodHandle pendingHandle() {
+    return PENDING_HANDLE.get();
+  }
+
+  static StringSwitch stringSwitch(MethodHandle mh) {
+    return (StringSwitch) newSwitch(StringSwitch.class, STRING_SWITCH_TEMPLATE, mh);
+  }
+
+  static TypeSwitch typeSwitch(MethodHandle mh) {
+    return (TypeSwitch) newSwitch(TypeSwitch.class, TYPE_SWITCH_TEMPLATE, mh);
+  }
+
+  private static Object newSwitch(Class<?> hostClass, byte[] template, MethodHandle mh) {
+    PENDING_HANDLE.set(mh);
+    try {
+      // the copy is not strong, it is unloaded with its switch
+      Lookup lookup = HiddenClasses.define(MethodHandles.lookup(), hostClass, template, false);
+      return lookup.findConstructor(lookup.lookupClass(), methodType(void.class)).invoke();
+    } catch (Throwable e) {
+      throw Thrower.rethrow(e);
+    } finally {
+      PENDING_HANDLE.remove();
+    }
+  }
+
+  /** The template of a StringSwitch, never instantiated, only copied. */
+  static final class StringSwitchImpl implements StringSwitch {
+    private static final MethodHandle MH = pendingHandle();
+
+    @Override
+    public int stringSwitch(String value) {
+      try {
+        return (int) MH.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    }
+
+    @Override
+    public void stringSwitch(String[] values, int[] indexes, int from, int to) {
+      checkRange(values.length, indexes.length, from, to);
+      try {
+        for (int i = from; i < to; i++) {
+          indexes[i] = (int) MH.invokeExact(values[i]);
+        }
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    }
+  }
+
+  /** The template of a TypeSwitch, never instantiated, only copied. */
+  static final class TypeSwitchImpl implements TypeSwitch {
+    private static final MethodHandle MH = pendingHandle();
+
+    @Override
+    public int typeSwitch(Object value) {
+      try {
+        return (int) MH.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    }
+
+    @Override
+    public void typeSwitch(Object[] values, int[] indexes, int from, int to) {
+      checkRange(values.length, indexes.length, from, to);
+      try {
+        for (int i = from; i < to; i++) {
+          indexes[i] = (int) MH.invokeExact(values[i]);
+        }
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    }
+  }
+
+  static void checkRange(int valuesLength, int indexesLength, int from, int to) {
+    if (from < 0 || from > to || to > valuesLength || to > indexesLength) {
+      throw new IndexOutOfBoundsException(
+          "from "
+              + from
+              + " to "
+              + to
+              + " values length "
+              + valuesLength
+              + " indexes length "
+              + indexesLength);
+    }
+  }
+
+  static <T> Collector<T, ?, int[]> toIndexes(ToIntFunction<? super T> indexFunction) {
+    return Collector.of(
+        IndexArray::new,
+        (indexes, value) -> indexes.add(indexFunction.applyAsInt(value)),
+        IndexArray::addAll,
+        IndexArray::toArray);
+  }
+
+  /** A growable array of indexes used to collect the indexes of a stream. */
+  private static final class IndexArray {
+    private int[] array = new int[16];
+    private int size;
+
+    void add(int index) {
+      if (size == array.length) {
+        array = Arrays.copyOf(array, size << 1);
+      }
+      array[size++] = index;
+    }
+
+    IndexArray addAll(IndexArray indexes) {
+      int newSize = size + indexes.size;
+      if (newSize > array.length) {
+        array = Arrays.copyOf(array, Math.max(newSize, array.length << 1));
+      }
+      System.arraycopy(indexes.array, 0, array, size, indexes.size);
+      size = newSize;
+      return this;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(array, size);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.github.forax.exotic.ConstantMemoizer.EvictionPolicy;
+import com.github.forax.exotic.ConstantMemoizer.InliningCacheCallSite;
+
+/**
+ * A memoizer that stores at most {@code maximumSize} entries.
+ *
+ * <p>The entries are stored in a clock, a circular array where each entry has a counter incremented
+ * (up to a maximum) each time the entry is used and decremented each time the clock hand passes
+ * over it, the first entry with a counter at zero is evicted. A new entry starts with a counter at
+ * zero, so an entry used only once is evicted first. With a maximum of 1, this is the CLOCK
+ * approximation of LRU, with a greater maximum, this is GCLOCK that also takes the frequency into
+ * account.
+ *
+ * <p>The first {@code maxDepth} entries are inlined as a cascade of {@code if equals else} in front
+ * of the table, if an inlined entry is evicted, the cascade is re-created without it.
+ */
+final class BoundedMemoizerCallSite extends MutableCallSite {
+  private static final MethodHandle LOOKUP, TOUCH;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      LOOKUP =
+          lookup.findVirtual(
+              BoundedMemoizerCallSite.class, "lookup", methodType(Object.class, Object.class));
+      TOUCH = lookup.findVirtual(Entry.class, "touch", methodType(void.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int LFU_MAX_COUNT = 15;
+
+  private static final class Entry {
+    final Object key;
+    final Object value;
+    private final int maxCount;
+    int count; // racy, an approximation is enough
+    boolean inlined; // guarded by the call site lock
+
+    Entry(Object key, Object value, int maxCount) {
+      this.key = key;
+      this.value = value;
+      this.maxCount = maxCount;
+    }
+
+    @SuppressWarnings("unused")
+    void touch() {
+      if (count < maxCount) { // avoid to write if not necessary
+        count++;
+      }
+    }
+  }
+
+  private final Function<Object, Object> function;
+  private final int maxDepth;
+  private final int maxCount;
+  private final ConcurrentHashMap<Object, Entry> map = new ConcurrentHashMap<>();
+  private final MethodHandle lookupTarget;
+  private final CallSiteStats stats = CallSiteStats.create(ConstantMemoizer.class);
+
+  // guarded by this
+  private final Entry[] clock;
+  private int size;
+  private int hand;
+  private final ArrayList<Entry> inlined = new ArrayList<>();
+  private boolean megamorphic;
+
+  @SuppressWarnings("unchecked")
+  BoundedMemoizerCallSite(
+      MethodType type,
+      Function<?, ?> function,
+      int maxDepth,
+      int maximumSize,
+      EvictionPolicy policy) {
+    super(type);
+    this.function = (Function<Object, Object>) function;
+    this.maxDepth = Math.min(maxDepth, maximumSize);
+    this.maxCount = (policy == EvictionPolicy.LRU) ? 1 : LFU_MAX_COUNT;
+    this.clock = new Entry[maximumSize];
+    MethodHandle lookupTarget = LOOKUP.bindTo(this).asType(type);
+    this.lookupTarget = lookupTarget;
+    setTarget(lookupTarget);
+  }
+
+  @SuppressWarnings("unused")
+  private Object lookup(Object key) {
+    Entry entry = map.get(key);
+    if (entry != null) {
+      entry.touch();
+      return entry.value;
+    }
+    long start = stats.enter();
+    try {
+      // call the function outside of the lock, the function may be recursive
+      Object value = Objects.requireNonNull(function.apply(key));
+      return insert(key, value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private synchronized Object insert(Object key, Object value) {
+    Entry entry = map.get(key);
+    if (entry != null) { // inserted by another thread
+      entry.touch();
+      return entry.value;
+    }
+    entry = new Entry(key, value, maxCount);
+    boolean relink = false;
+    if (size < clock.length) {
+      clock[size++] = entry;
+    } else {
+      Entry victim = evict();
+      clock[hand] = entry;
+      hand = (hand + 1) % clock.length;
+      if (victim.inlined) {
+        inlined.remove(victim);
+        relink = true;
+      }
+    }
+    map.put(key, entry);
+    if (inlined.size() < maxDepth) {
+      entry.inlined = true;
+      inlined.add(entry);
+      relink = true;
+    } else if (!megamorphic) {
+      megamorphic = true;
+      stats.megamorphic();
+    }
+    if (relink) {
+      relink();
+    }
+    return value;
+  }
+
+  private Entry evict() {
+    Entry[] clock = this.clock;
+    // the counters are racy, so bound the number of turns
+    for (int i = 0; i < clock.length * (maxCount + 1); i++) {
+      Entry entry = clock[hand];
+      if (entry.count <= 0) {
+        break;
+      }
+      entry.count--;
+      hand = (hand + 1) % clock.length;
+    }
+    Entry victim = clock[hand];
+    map.remove(victim.key);
+    return victim;
+  }
+
+  private void relink() {
+    MethodType type = type();
+    Class<?> keyClass = type.parameterType(0);
+    Class<?> valueClass = type.returnType();
+    MethodHandle target = lookupTarget;
+    for (int i = inlined.size(); --i >= 0; ) {
+      Entry entry = inlined.get(i);
+      target =
+          guardWithTest(
+              InliningCacheCallSite.guard(keyClass, entry.key),
+              foldArguments(
+                  dropArguments(constant(valueClass, entry.value), 0, keyClass),
+                  TOUCH.bindTo(entry)),
+              target);
+    }
+    setTarget(target);
+    stats.relink(inlined.size());
+  }
+}
@@ -0,0 +1,68 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * A ByteBufferSwitch is like a {@link ByteStringSwitch} but matches the remaining bytes of a {@link
+ * ByteBuffer}, a heap buffer or a direct buffer, without decoding them into a String.
+ *
+ * <pre>
+ * private static final ByteBufferSwitch METHOD_SWITCH = ByteBufferSwitch.create("GET", "POST");
+ *
+ * public static void parse(ByteBuffer buffer) {
+ *   ByteBuffer token = ...
+ *   switch(METHOD_SWITCH.byteSwitch(token)) {
+ *   case 0:  // GET
+ *     ...
+ *   case 1:  // POST
+ *     ...
+ *   default: // ByteBufferSwitch.NO_MATCH
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * @see ByteStringSwitch
+ */
+@FunctionalInterface
+public interface ByteBufferSwitch {
+  /**
+   * Returns the index of the string in {@code stringcases} that is equal to the remaining bytes of
+   * {@code buffer} decoded in UTF-8. The position and the limit of the buffer are not changed.
+   *
+   * @param buffer a byte buffer.
+   * @return the index of the string in the array or {@link #NO_MATCH} if no string match.
+   * @throws NullPointerException if {@code buffer} is null.
+   * @see #create(String...)
+   */
+  int byteSwitch(ByteBuffer buffer);
+
+  /** Return value of {@link #byteSwitch(ByteBuffer)} that indicates that no match is found. */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /**
+   * Creates a ByteBufferSwitch that returns for a byte buffer the index of the string encoded in
+   * UTF-8 in the {@code stringcases} array or {@link #NO_MATCH} if no string match.
+   *
+   * @param stringcases an array of string.
+   * @return a ByteBufferSwitch configured with the array of stringcases.
+   * @throws NullPointerException is {@code stringcases is null} or one string of the array is
+   *     null.
+   * @throws IllegalStateException if the same string appears several times in the array.
+   * @see ByteStringSwitch#create(String...)
+   */
+  static ByteBufferSwitch create(String... stringcases) {
+    byte[][] bytecases = ByteStringSwitchCallSite.encode(stringcases);
+    PerfectHash perfectHash = ByteStringSwitchCallSite.createPerfectHash(bytecases);
+    MethodHandle mh =
+        ByteStringSwitchCallSite.createBufferSwitch(bytecases, perfectHash).dynamicInvoker();
+    return buffer -> {
+      try {
+        return (int) mh.invokeExact(buffer);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
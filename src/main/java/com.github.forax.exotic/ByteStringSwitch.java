@@ -0,0 +1,83 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A ByteStringSwitch is like a {@link StringSwitch} but matches the UTF-8 encoded bytes of a range
+ * of a byte array, so there is no need to decode the bytes into a String before switching on it.
+ * {@link ByteBufferSwitch} does the same for the remaining bytes of a {@link java.nio.ByteBuffer}.
+ *
+ * <p>The strings of the cases are encoded in UTF-8 when the ByteStringSwitch is {@link
+ * #create(String...) created}, the bytes to match are compared with the encoded strings without
+ * being copied.
+ *
+ * <pre>
+ * private static final ByteStringSwitch METHOD_SWITCH = ByteStringSwitch.create("GET", "POST");
+ *
+ * public static void parse(byte[] bytes, int offset, int length) {
+ *   switch(METHOD_SWITCH.byteSwitch(bytes, offset, length)) {
+ *   case 0:  // GET
+ *     ...
+ *   case 1:  // POST
+ *     ...
+ *   default: // ByteStringSwitch.NO_MATCH
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Like a StringSwitch, a ByteStringSwitch uses an inlining cache of the byte strings already seen
+ * and a perfect hash if there are too many of them.
+ *
+ * @see ByteBufferSwitch
+ */
+@FunctionalInterface
+public interface ByteStringSwitch {
+  /**
+   * Returns the index of the string in {@code stringcases} that is equal to the bytes of {@code
+   * bytes} from {@code offset} to {@code offset + length} decoded in UTF-8.
+   *
+   * @param bytes an array of bytes.
+   * @param offset the offset of the first byte.
+   * @param length the number of bytes.
+   * @return the index of the string in the array or {@link #NO_MATCH} if no string match.
+   * @throws NullPointerException if {@code bytes} is null.
+   * @throws IndexOutOfBoundsException if the range is not inside the array.
+   * @see #create(String...)
+   */
+  int byteSwitch(byte[] bytes, int offset, int length);
+
+  /**
+   * Return value of {@link #byteSwitch(byte[], int, int)} that indicates that no match is found.
+   */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /**
+   * Creates a ByteStringSwitch that returns for a sequence of bytes the index of the string encoded
+   * in UTF-8 in the {@code stringcases} array or {@link #NO_MATCH} if no string match.
+   *
+   * @param stringcases an array of string.
+   * @return a ByteStringSwitch configured with the array of stringcases.
+   * @throws NullPointerException is {@code stringcases is null} or one string of the array is
+   *     null.
+   * @throws IllegalStateException if the same string appears several times in the array.
+   * @see StringSwitch#create(boolean, String...)
+   */
+  static ByteStringSwitch create(String... stringcases) {
+    byte[][] bytecases = ByteStringSwitchCallSite.encode(stringcases);
+    PerfectHash perfectHash = ByteStringSwitchCallSite.createPerfectHash(bytecases);
+    MethodHandle mh =
+        ByteStringSwitchCallSite.createArraySwitch(bytecases, perfectHash).dynamicInvoker();
+    return (bytes, offset, length) -> {
+      if (offset < 0 || length < 0 || offset > bytes.length - length) {
+        throw new IndexOutOfBoundsException(
+            "offset " + offset + " length " + length + " array length " + bytes.length);
+      }
+      try {
+        return (int) mh.invokeExact(bytes, offset, length);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,255 @@
+package com.github.forax.exotic;
+
+import static com.github.forax.exotic.StringSwitch.NO_MATCH;
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+
+/**
+ * The inlining cache of a {@link ByteStringSwitch} for the byte arrays or of a {@link
+ * ByteBufferSwitch} for the byte buffers, the strategy is the same as {@link StringSwitchCallSite}.
+ */
+class ByteStringSwitchCallSite extends MutableCallSite {
+  private static final MethodType ARRAY_TYPE =
+      methodType(int.class, byte[].class, int.class, int.class);
+  private static final MethodType BUFFER_TYPE = methodType(int.class, ByteBuffer.class);
+  private static final MethodHandle ARRAY_FALLBACK, BUFFER_FALLBACK;
+  private static final MethodHandle ARRAY_EQUALS, BUFFER_EQUALS;
+  private static final MethodHandle ARRAY_INDEX_OF, BUFFER_INDEX_OF;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      ARRAY_FALLBACK = lookup.findVirtual(ByteStringSwitchCallSite.class, "fallback", ARRAY_TYPE);
+      BUFFER_FALLBACK =
+          lookup.findVirtual(ByteStringSwitchCallSite.class, "fallback", BUFFER_TYPE);
+      ARRAY_EQUALS =
+          lookup.findStatic(
+              ByteStringSwitchCallSite.class,
+              "equals",
+              methodType(boolean.class, byte[].class, byte[].class, int.class, int.class));
+      BUFFER_EQUALS =
+          lookup.findStatic(
+              ByteStringSwitchCallSite.class,
+              "equals",
+              methodType(boolean.class, byte[].class, ByteBuffer.class));
+      ARRAY_INDEX_OF =
+          lookup.findStatic(
+              ByteStringSwitchCallSite.class,
+              "indexOf",
+              ARRAY_TYPE.insertParameterTypes(0, PerfectHash.class, byte[][].class));
+      BUFFER_INDEX_OF =
+          lookup.findStatic(
+              ByteStringSwitchCallSite.class,
+              "indexOf",
+              BUFFER_TYPE.insertParameterTypes(0, PerfectHash.class, byte[][].class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 32;
+
+  private final int depth;
+  private final ByteStringSwitchCallSite callsite;
+  private final byte[][] bytecases;
+  private final PerfectHash perfectHash;
+  private final CallSiteStats stats;
+
+  private ByteStringSwitchCallSite(
+      MethodType type,
+      int depth,
+      ByteStringSwitchCallSite callsite,
+      byte[][] bytecases,
+      PerfectHash perfectHash,
+      CallSiteStats stats) {
+    super(type);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.bytecases = bytecases;
+    this.perfectHash = perfectHash;
+    this.stats = stats;
+    setTarget((type.equals(ARRAY_TYPE) ? ARRAY_FALLBACK : BUFFER_FALLBACK).bindTo(this));
+  }
+
+  static ByteStringSwitchCallSite createArraySwitch(byte[][] bytecases, PerfectHash perfectHash) {
+    return new ByteStringSwitchCallSite(
+        ARRAY_TYPE, 0, null, bytecases, perfectHash, CallSiteStats.create(ByteStringSwitch.class));
+  }
+
+  static ByteStringSwitchCallSite createBufferSwitch(byte[][] bytecases, PerfectHash perfectHash) {
+    return new ByteStringSwitchCallSite(
+        BUFFER_TYPE, 0, null, bytecases, perfectHash, CallSiteStats.create(ByteBufferSwitch.class));
+  }
+
+  static byte[][] encode(String[] stringcases) {
+    HashSet<ByteBuffer> set = new HashSet<>();
+    byte[][] bytecases = new byte[stringcases.length][];
+    for (int i = 0; i < stringcases.length; i++) {
+      String stringcase = Objects.requireNonNull(stringcases[i]);
+      byte[] bytecase = stringcase.getBytes(StandardCharsets.UTF_8);
+      if (!set.add(ByteBuffer.wrap(bytecase))) {
+        throw new IllegalStateException(stringcase + " value appear more than once");
+      }
+      bytecases[i] = bytecase;
+    }
+    return bytecases;
+  }
+
+  static PerfectHash createPerfectHash(byte[][] bytecases) {
+    int[] hashes = new int[bytecases.length];
+    for (int i = 0; i < bytecases.length; i++) {
+      hashes[i] = hash(bytecases[i], 0, bytecases[i].length);
+    }
+    return PerfectHash.create(hashes);
+  }
+
+  /** Same hash as {@link String#hashCode()} for ASCII strings. */
+  static int hash(byte[] bytes, int offset, int length) {
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + (bytes[offset + i] & 0xFF);
+    }
+    return hash;
+  }
+
+  static int hash(ByteBuffer buffer) {
+    int hash = 0;
+    for (int i = buffer.position(); i < buffer.limit(); i++) {
+      hash = 31 * hash + (buffer.get(i) & 0xFF);
+    }
+    return hash;
+  }
+
+  static boolean equals(byte[] bytecase, byte[] bytes, int offset, int length) {
+    if (bytecase.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (bytecase[i] != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean equals(byte[] bytecase, ByteBuffer buffer) {
+    int position = buffer.position();
+    if (bytecase.length != buffer.limit() - position) {
+      return false;
+    }
+    for (int i = 0; i < bytecase.length; i++) {
+      if (bytecase[i] != buffer.get(position + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int indexOf(
+      PerfectHash perfectHash, byte[][] bytecases, byte[] bytes, int offset, int length) {
+    int hash = hash(bytes, offset, length);
+    for (int index = perfectHash.index(hash); index != -1; index = perfectHash.next(index)) {
+      if (equals(bytecases[index], bytes, offset, length)) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  static int indexOf(PerfectHash perfectHash, byte[][] bytecases, ByteBuffer buffer) {
+    int hash = hash(buffer);
+    for (int index = perfectHash.index(hash); index != -1; index = perfectHash.next(index)) {
+      if (equals(bytecases[index], buffer)) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(byte[] bytes, int offset, int length) {
+    long start = stats.enter();
+    try {
+      int index = indexOf(perfectHash, bytecases, bytes, offset, length);
+      byte[] value =
+          (index == NO_MATCH)
+              ? Arrays.copyOfRange(bytes, offset, offset + length)
+              : bytecases[index];
+      return link(ARRAY_EQUALS, value, index);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(ByteBuffer buffer) {
+    long start = stats.enter();
+    try {
+      int index = indexOf(perfectHash, bytecases, buffer);
+      byte[] value;
+      if (index == NO_MATCH) {
+        value = new byte[buffer.remaining()];
+        for (int i = 0; i < value.length; i++) {
+          value[i] = buffer.get(buffer.position() + i);
+        }
+      } else {
+        value = bytecases[index];
+      }
+      return link(BUFFER_EQUALS, value, index);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private int link(MethodHandle equals, byte[] value, int index) {
+    MethodType type = type();
+    if (depth == MAX_DEPTH) {
+      MethodHandle indexOf = (type.equals(ARRAY_TYPE)) ? ARRAY_INDEX_OF : BUFFER_INDEX_OF;
+      callsite.setTarget(insertArguments(indexOf, 0, perfectHash, bytecases));
+      stats.megamorphic();
+      return index;
+    }
+
+    if (depth == bytecases.length) {
+      callsite.setTarget(createCascadeIfEquals(type, equals, bytecases));
+      stats.relink(bytecases.length);
+      return index;
+    }
+
+    setTarget(
+        guardWithTest(
+            insertArguments(equals, 0, (Object) value),
+            dropArguments(constant(int.class, index), 0, type.parameterList()),
+            new ByteStringSwitchCallSite(type, depth + 1, callsite, bytecases, perfectHash, stats)
+                .dynamicInvoker()));
+    stats.link();
+    return index;
+  }
+
+  private static MethodHandle createCascadeIfEquals(
+      MethodType type, MethodHandle equals, byte[][] bytecases) {
+    MethodHandle target = dropArguments(constant(int.class, NO_MATCH), 0, type.parameterList());
+    for (int i = bytecases.length; --i >= 0; ) {
+      target =
+          guardWithTest(
+              insertArguments(equals, 0, (Object) bytecases[i]),
+              dropArguments(constant(int.class, i), 0, type.parameterList()),
+              target);
+    }
+    return target;
+  }
+}
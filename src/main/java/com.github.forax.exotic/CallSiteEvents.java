@@ -0,0 +1,67 @@
+package com.github.forax.exotic;
+
+/**
+ * Report the re-links of the call sites of the library, by default the reports are ignored.
+ *
+ * <p>With Java 11+, the jar contains a version of {@code JfrCallSiteEvents} (in {@code
+ * META-INF/versions/11}) that emits Java Flight Recorder events, so the re-links and the
+ * de-optimizations they trigger can be correlated with the latency of an application.
+ */
+interface CallSiteEvents {
+  /** Called when a call site of an inlining cache of {@code owner} is re-linked. */
+  void relink(Class<?> owner, int depth);
+
+  /** Called when an inlining cache of {@code owner} becomes megamorphic. */
+  void megamorphic(Class<?> owner, int depth);
+
+  /** Called when {@code count} call sites of {@code owner} are synchronized. */
+  void syncAll(Class<?> owner, int count);
+
+  /**
+   * Returns true if the events are currently recorded, the result may change if a recording is
+   * started or stopped.
+   */
+  boolean isEnabled();
+
+  /** An implementation that ignores all the reports. */
+  CallSiteEvents NONE =
+      new CallSiteEvents() {
+        @Override
+        public void relink(Class<?> owner, int depth) {
+          // empty
+        }
+
+        @Override
+        public void megamorphic(Class<?> owner, int depth) {
+          // empty
+        }
+
+        @Override
+        public void syncAll(Class<?> owner, int count) {
+          // empty
+        }
+
+        @Override
+        public boolean isEnabled() {
+          return false;
+        }
+      };
+
+  /** The implementation used by the library. */
+  CallSiteEvents INSTANCE = load();
+
+  /** Loads the implementation that emits Flight Recorder events if it's available. */
+  static CallSiteEvents load() {
+    try {
+      return (CallSiteEvents)
+          Class.forName("com.github.forax.exotic.JfrCallSiteEvents")
+              .getDeclaredConstructor()
+              .newInstance();
+    } catch (ClassNotFoundException | LinkageError e) {
+      // Java 8 or the module jdk.jfr is not available
+      return NONE;
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
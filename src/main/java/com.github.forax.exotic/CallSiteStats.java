@@ -0,0 +1,240 @@
+package com.github.forax.exotic;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The statistics of an inlining cache, shared by all the call sites of the inlining cache, the
+ * changes of the inlining cache are also reported to {@link CallSiteEvents}.
+ *
+ * <p>If the statistics are not enabled, an inlining cache has no statistics at all, unless some
+ * {@link CallSiteEvents events} are recorded when it is created, in that case, only its depth is
+ * tracked to report its changes. So the inlining caches created before a recording is started are
+ * not reported, unless the statistics are enabled. The statistics are only registered if they are
+ * enabled.
+ *
+ * <p>The MXBean registered for the statistics only references them weakly, when an inlining cache
+ * is garbage collected, its MXBean is unregistered the next time statistics are created.
+ *
+ * @see InliningCacheMXBean
+ */
+final class CallSiteStats implements InliningCacheMXBean {
+  private static final boolean ENABLED = Boolean.getBoolean(ENABLE_PROPERTY);
+  private static final CallSiteEvents EVENTS = CallSiteEvents.INSTANCE;
+  private static final CallSiteStats DISABLED = new CallSiteStats(Object.class);
+  private static final AtomicIntegerFieldUpdater<CallSiteStats> DEPTH =
+      AtomicIntegerFieldUpdater.newUpdater(CallSiteStats.class, "depth");
+
+  private final Class<?> owner;
+  // only allocated if the statistics are enabled
+  private final LongAdder fallbackCount;
+  private final LongAdder fallbackTime;
+  private final LongAdder relinkCount;
+  private volatile int depth;
+  private volatile boolean megamorphic;
+
+  private CallSiteStats(Class<?> owner) {
+    this.owner = owner;
+    this.fallbackCount = ENABLED ? new LongAdder() : null;
+    this.fallbackTime = ENABLED ? new LongAdder() : null;
+    this.relinkCount = ENABLED ? new LongAdder() : null;
+  }
+
+  static CallSiteStats create(Class<?> owner) {
+    if (!ENABLED) {
+      // checked at each creation, true only while a recording of the events is running
+      return EVENTS.isEnabled() ? new CallSiteStats(owner) : DISABLED;
+    }
+    CallSiteStats stats = new CallSiteStats(owner);
+    MBeans.register(stats);
+    return stats;
+  }
+
+  /**
+   * The registration of the statistics as MXBeans, all the references to {@code java.management}
+   * are in this class and its nested class, so the module {@code java.management} is only required
+   * if the statistics are enabled.
+   */
+  private static final class MBeans {
+    private static final AtomicLong ID = new AtomicLong();
+    private static final ReferenceQueue<CallSiteStats> QUEUE = new ReferenceQueue<>();
+
+    static void register(CallSiteStats stats) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      unregisterCollected(server);
+      try {
+        ObjectName name =
+            new ObjectName(
+                "com.github.forax.exotic:type=InliningCache,kind="
+                    + stats.getKind()
+                    + ",id="
+                    + ID.incrementAndGet());
+        server.registerMBean(new Registration(stats, name), name);
+      } catch (JMException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private static void unregisterCollected(MBeanServer server) {
+      Reference<? extends CallSiteStats> reference;
+      while ((reference = QUEUE.poll()) != null) {
+        try {
+          server.unregisterMBean(((Registration) reference).name);
+        } catch (InstanceNotFoundException e) {
+          // already unregistered by someone else
+        } catch (JMException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }
+
+    /**
+     * The MXBean registered for the statistics of an inlining cache, the statistics are referenced
+     * weakly so the MBean server doesn't keep them alive.
+     */
+    private static final class Registration extends WeakReference<CallSiteStats>
+        implements InliningCacheMXBean {
+      final ObjectName name;
+      private final String kind;
+
+      Registration(CallSiteStats stats, ObjectName name) {
+        super(stats, QUEUE);
+        this.name = name;
+        this.kind = stats.getKind();
+      }
+
+      @Override
+      public String getKind() {
+        return kind;
+      }
+
+      @Override
+      public long getFallbackCount() {
+        CallSiteStats stats = get();
+        return (stats == null) ? 0 : stats.getFallbackCount();
+      }
+
+      @Override
+      public long getFallbackTime() {
+        CallSiteStats stats = get();
+        return (stats == null) ? 0 : stats.getFallbackTime();
+      }
+
+      @Override
+      public long getRelinkCount() {
+        CallSiteStats stats = get();
+        return (stats == null) ? 0 : stats.getRelinkCount();
+      }
+
+      @Override
+      public int getDepth() {
+        CallSiteStats stats = get();
+        return (stats == null) ? 0 : stats.getDepth();
+      }
+
+      @Override
+      public boolean isMegamorphic() {
+        CallSiteStats stats = get();
+        return stats != null && stats.isMegamorphic();
+      }
+    }
+  }
+
+  /** Called at the start of a fallback, returns the start time. */
+  long enter() {
+    if (!ENABLED) {
+      return 0;
+    }
+    fallbackCount.increment();
+    return System.nanoTime();
+  }
+
+  /** Called at the end of a fallback with the start time. */
+  void exit(long start) {
+    if (!ENABLED) {
+      return;
+    }
+    fallbackTime.add(System.nanoTime() - start);
+  }
+
+  /** Called when a test is added to the inlining cache. */
+  void link() {
+    if (this == DISABLED) {
+      return;
+    }
+    int depth = DEPTH.incrementAndGet(this);
+    if (ENABLED) {
+      relinkCount.increment();
+    }
+    if (EVENTS.isEnabled()) {
+      EVENTS.relink(owner, depth);
+    }
+  }
+
+  /** Called when the whole inlining cache is re-created with {@code depth} tests. */
+  void relink(int depth) {
+    if (this == DISABLED) {
+      return;
+    }
+    this.depth = depth;
+    if (ENABLED) {
+      relinkCount.increment();
+    }
+    if (EVENTS.isEnabled()) {
+      EVENTS.relink(owner, depth);
+    }
+  }
+
+  /** Called when the inlining cache becomes megamorphic. */
+  void megamorphic() {
+    if (this == DISABLED) {
+      return;
+    }
+    megamorphic = true;
+    if (ENABLED) {
+      relinkCount.increment();
+    }
+    if (EVENTS.isEnabled()) {
+      EVENTS.megamorphic(owner, depth);
+    }
+  }
+
+  @Override
+  public String getKind() {
+    return owner.getSimpleName();
+  }
+
+  @Override
+  public long getFallbackCount() {
+    return fallbackCount.sum();
+  }
+
+  @Override
+  public long getFallbackTime() {
+    return fallbackTime.sum();
+  }
+
+  @Override
+  public long getRelinkCount() {
+    return relinkCount.sum();
+  }
+
+  @Override
+  public int getDepth() {
+    return depth;
+  }
+
+  @Override
+  public boolean isMegamorphic() {
+    return megamorphic;
+  }
+}
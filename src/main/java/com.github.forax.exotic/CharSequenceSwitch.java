@@ -0,0 +1,82 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A CharSequenceSwitch is like a {@link StringSwitch} but matches any {@link CharSequence}, a
+ * {@link StringBuilder} or a {@link java.nio.CharBuffer} by example, so there is no need to call
+ * {@code toString()} before switching on it.
+ *
+ * <pre>
+ * private static final CharSequenceSwitch KEYWORD_SWITCH =
+ *     CharSequenceSwitch.create(false, "if", "else", "while");
+ *
+ * public static Token keyword(StringBuilder builder) {
+ *   switch(KEYWORD_SWITCH.charSequenceSwitch(builder)) {
+ *   case 0:
+ *     return Token.IF;
+ *   case 1:
+ *     return Token.ELSE;
+ *   case 2:
+ *     return Token.WHILE;
+ *   default: // CharSequenceSwitch.NO_MATCH
+ *     return Token.IDENTIFIER;
+ *   }
+ * }
+ * </pre>
+ *
+ * Like a StringSwitch, a CharSequenceSwitch uses an inlining cache of the sequences already seen,
+ * the characters of a sequence are compared with the strings of the cases without being copied,
+ * and a perfect hash on the hash code of the sequence, computed as {@link String#hashCode()}, if
+ * there are too many of them.
+ */
+@FunctionalInterface
+public interface CharSequenceSwitch {
+  /**
+   * Returns the index of the string in {@code stringcases} that has the same characters as {@code
+   * value}.
+   *
+   * @param value the value.
+   * @return the index of the string that has the same characters as {@code value}, {@value
+   *     #NULL_MATCH} if {@code value} is null or {@link #NO_MATCH} if no string match.
+   * @see #create(boolean, String...)
+   */
+  int charSequenceSwitch(CharSequence value);
+
+  /**
+   * Return value of {@link #charSequenceSwitch(CharSequence)} that indicates that no match is
+   * found.
+   */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /**
+   * Return value of {@link #charSequenceSwitch(CharSequence)} that indicates that null is found.
+   */
+  int NULL_MATCH = StringSwitch.NULL_MATCH;
+
+  /**
+   * Creates a CharSequenceSwitch that returns for a sequence of characters the index of the string
+   * with the same characters in the {@code stringcases} array or {@link #NO_MATCH} if no string
+   * match.
+   *
+   * @param nullMatch true is the CharSequenceSwitch should allow null.
+   * @param stringcases an array of string.
+   * @return a CharSequenceSwitch configured with the array of stringcases.
+   * @throws NullPointerException is {@code stringcases is null} or one string of the array is
+   *     null.
+   * @throws IllegalStateException if the same string appears several times in the array.
+   * @see StringSwitch#create(boolean, String...)
+   */
+  static CharSequenceSwitch create(boolean nullMatch, String... stringcases) {
+    MethodHandle mh =
+        CharSequenceSwitchCallSite.wrapNullIfNecessary(
+            nullMatch, CharSequenceSwitchCallSite.create(stringcases).dynamicInvoker());
+    return value -> {
+      try {
+        return (int) mh.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,154 @@
+package com.github.forax.exotic;
+
+import static com.github.forax.exotic.StringSwitch.NO_MATCH;
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Objects;
+
+/**
+ * The inlining cache of a {@link CharSequenceSwitch}, the strategy is the same as {@link
+ * StringSwitchCallSite} but the guards use {@link String#contentEquals(CharSequence)}.
+ */
+class CharSequenceSwitchCallSite extends MutableCallSite {
+  private static final MethodType CHAR_SEQUENCE_TO_INT =
+      methodType(int.class, CharSequence.class);
+  private static final MethodHandle FALLBACK, CONTENT_EQUALS, INDEX_OF, NULLCHECK;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK =
+          lookup.findVirtual(CharSequenceSwitchCallSite.class, "fallback", CHAR_SEQUENCE_TO_INT);
+      CONTENT_EQUALS =
+          lookup.findVirtual(
+              String.class, "contentEquals", methodType(boolean.class, CharSequence.class));
+      INDEX_OF =
+          lookup.findStatic(
+              CharSequenceSwitchCallSite.class,
+              "indexOf",
+              CHAR_SEQUENCE_TO_INT.insertParameterTypes(0, PerfectHash.class, String[].class));
+      MethodHandle nullCheck =
+          lookup.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
+      NULLCHECK = nullCheck.asType(methodType(boolean.class, CharSequence.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 32;
+
+  private final int depth;
+  private final CharSequenceSwitchCallSite callsite;
+  private final String[] stringcases;
+  private final PerfectHash perfectHash;
+  private final CallSiteStats stats;
+
+  private CharSequenceSwitchCallSite(
+      int depth,
+      CharSequenceSwitchCallSite callsite,
+      String[] stringcases,
+      PerfectHash perfectHash,
+      CallSiteStats stats) {
+    super(CHAR_SEQUENCE_TO_INT);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.stringcases = stringcases;
+    this.perfectHash = perfectHash;
+    this.stats = stats;
+    setTarget(FALLBACK.bindTo(this));
+  }
+
+  static CharSequenceSwitchCallSite create(String[] stringcases) {
+    // the hash of a CharSequence is computed like String.hashCode()
+    PerfectHash perfectHash = StringSwitchCallSite.createPerfectHash(stringcases);
+    return new CharSequenceSwitchCallSite(
+        0, null, stringcases, perfectHash, CallSiteStats.create(CharSequenceSwitch.class));
+  }
+
+  private static int hash(CharSequence value) {
+    int hash = 0;
+    for (int i = 0; i < value.length(); i++) {
+      hash = 31 * hash + value.charAt(i);
+    }
+    return hash;
+  }
+
+  static int indexOf(PerfectHash perfectHash, String[] stringcases, CharSequence value) {
+    int hash = hash(value);
+    for (int index = perfectHash.index(hash); index != -1; index = perfectHash.next(index)) {
+      if (stringcases[index].contentEquals(value)) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(CharSequence value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private int link(CharSequence value) {
+    Objects.requireNonNull(value);
+    int index = indexOf(perfectHash, stringcases, value);
+
+    if (depth == MAX_DEPTH) {
+      callsite.setTarget(insertArguments(INDEX_OF, 0, perfectHash, stringcases));
+      stats.megamorphic();
+      return index;
+    }
+
+    if (depth == stringcases.length) {
+      callsite.setTarget(createCascadeIfContentEquals(stringcases));
+      stats.relink(stringcases.length);
+      return index;
+    }
+
+    // the sequence may be mutable, so a copy of an unknown sequence is stored
+    String string = (index == NO_MATCH) ? value.toString() : stringcases[index];
+    setTarget(
+        guardWithTest(
+            CONTENT_EQUALS.bindTo(string),
+            dropArguments(constant(int.class, index), 0, CharSequence.class),
+            new CharSequenceSwitchCallSite(depth + 1, callsite, stringcases, perfectHash, stats)
+                .dynamicInvoker()));
+    stats.link();
+    return index;
+  }
+
+  private static MethodHandle createCascadeIfContentEquals(String[] stringcases) {
+    MethodHandle target = dropArguments(constant(int.class, NO_MATCH), 0, CharSequence.class);
+    for (int i = stringcases.length; --i >= 0; ) {
+      target =
+          guardWithTest(
+              CONTENT_EQUALS.bindTo(stringcases[i]),
+              dropArguments(constant(int.class, i), 0, CharSequence.class),
+              target);
+    }
+    return target;
+  }
+
+  static MethodHandle wrapNullIfNecessary(boolean nullMatch, MethodHandle mh) {
+    if (!nullMatch) {
+      return mh;
+    }
+    return guardWithTest(
+        NULLCHECK,
+        dropArguments(constant(int.class, StringSwitch.NULL_MATCH), 0, CharSequence.class),
+        mh);
+  }
+}
@@ -3,8 +3,10 @@ package com.github.forax.exotic;
 import static java.lang.invoke.MethodHandles.constant;
 import static java.lang.invoke.MethodHandles.dropArguments;
 import static java.lang.invoke.MethodHandles.exactInvoker;
+import static java.lang.invoke.MethodHandles.filterReturnValue;
 import static java.lang.invoke.MethodHandles.foldArguments;
 import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodHandles.lookup;
 import static java.lang.invoke.MethodType.methodType;
 
@@ -12,8 +14,20 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToIntFunction;
 import java.util.function.ToLongFunction;
@@ -27,6 +41,25 @@ import java.util.function.ToLongFunction;
  * Class)} and {@link #doubleMemoizer(ToDoubleFunction, Class)} returns memoizers specialized if the
  * value is an int, a long or a double (respectively).
  *
+ * <p>If the keys are int or long, the methods {@link #intKeyMemoizer(IntFunction, Class)}, {@link
+ * #longKeyMemoizer(LongFunction, Class)}, {@link #intToIntMemoizer(IntUnaryOperator)} and {@link
+ * #longToLongMemoizer(LongUnaryOperator)} avoid to box the keys.
+ *
+ * <p>If there are several keys, {@link #biMemoizer(BiFunction, Class, Class, Class)} and {@link
+ * #memoizer(MethodHandle)} test each key separately instead of grouping them into an object.
+ *
+ * <p>The method {@link #asyncMemoizer(Function, Class, Executor)} computes the values
+ * asynchronously and returns a constant future for each key.
+ *
+ * <p>Only the first {@link Options#maxDepth(int) maxDepth} keys are cached in a code similar to a
+ * cascade of {@code if equals else}, the keys seen after that are stored in a hash table. Each
+ * method has an overload that takes a {@link Options configuration callback}.
+ *
+ * <p>By default, a memoizer never forgets a key, {@link Options#maximumSize(int, EvictionPolicy)}
+ * allows to bound the number of entries, the evicted keys being removed from the inlined keys,
+ * {@link Options#expireAfterWrite(long, TimeUnit)} and {@link Options#refreshAfterWrite(long,
+ * TimeUnit)} allow to forget or re-compute the values after a duration.
+ *
  * <p>Here is an example of usage
  *
  * <pre>
@@ -45,15 +78,290 @@ public final class ConstantMemoizer {
     throw new AssertionError();
   }
 
+  /**
+   * The maximum number of keys inlined by a memoizer if {@link Options#maxDepth(int)} is not
+   * called.
+   */
+  public static final int DEFAULT_MAX_DEPTH = 16;
+
+  /**
+   * Options used to configure a memoizer.
+   *
+   * @see ConstantMemoizer#memoizer(Function, Class, Class, Consumer)
+   */
+  public interface Options {
+    /**
+     * Set the maximum number of keys that are seen as constants. Once this number of keys is
+     * reached, the other keys and their values are stored in a hash table.
+     *
+     * @param maxDepth the maximum number of keys that are seen as constants, can be zero.
+     * @return itself so calls to the options can be chained.
+     * @throws IllegalArgumentException if {@code maxDepth} is negative.
+     * @see ConstantMemoizer#DEFAULT_MAX_DEPTH
+     */
+    Options maxDepth(int maxDepth);
+
+    /**
+     * Bound the number of entries stored by the memoizer. Once this size is reached, adding a new
+     * entry requires to evict an entry chosen by the {@code policy}, if the evicted key was
+     * inlined, it is removed from the inlined keys, so the next new key will be inlined instead.
+     *
+     * @param maximumSize the maximum number of entries.
+     * @param policy the policy used to choose the entry to evict.
+     * @return itself so calls to the options can be chained.
+     * @throws NullPointerException if {@code policy} is null.
+     * @throws IllegalArgumentException if {@code maximumSize} is not positive.
+     */
+    Options maximumSize(int maximumSize, EvictionPolicy policy);
+
+    /**
+     * Compare the keys using {@code ==} instead of {@link Object#equals(Object)}. This is useful
+     * if the keys are classes, enum values or canonical instances.
+     *
+     * <p>The keys that are classes are referenced weakly, so they don't prevent their class loader
+     * to be collected (but the values still reference them strongly). If there are more keys than
+     * {@link #maxDepth(int) maxDepth}, the value of a class is stored using a {@link ClassValue}
+     * while the other keys are stored in a table like an {@link java.util.IdentityHashMap}.
+     *
+     * <p>This option can not be used with {@link #maximumSize(int, EvictionPolicy)}.
+     *
+     * @return itself so calls to the options can be chained.
+     */
+    Options identityKeys();
+
+    /**
+     * Compute the value of a key only once even if several threads call the memoizer with the
+     * same new key at the same time, one thread calls the function while the other threads wait
+     * for its result. Each key is also inlined at most once.
+     *
+     * <p>If the function fails, the exception is propagated to the waiting threads and the next
+     * call with the same key will call the function again. If the function calls the memoizer
+     * with the key it is computing, an {@link IllegalStateException} is thrown.
+     *
+     * <p>The values are stored in a hash table even if the key is inlined, the keys of a
+     * primitive type are boxed to access this table. This option can not be used with {@link
+     * #identityKeys()} or {@link #maximumSize(int, EvictionPolicy)}.
+     *
+     * @return itself so calls to the options can be chained.
+     */
+    Options singleFlight();
+
+    /**
+     * Forget the value of a key once the {@code duration} has elapsed since the value was
+     * computed, the next call with the same key will call the function again.
+     *
+     * <p>Calling the memoizer never checks the time, the entries are checked periodically by a
+     * background thread, so a value can be seen a little after its expiration. All the entries
+     * that have expired at the same time are invalidated together.
+     *
+     * @param duration the duration after which an entry expires.
+     * @param unit the unit of the {@code duration}.
+     * @return itself so calls to the options can be chained.
+     * @throws NullPointerException if {@code unit} is null.
+     * @throws IllegalArgumentException if {@code duration} is not positive.
+     * @see #refreshAfterWrite(long, TimeUnit)
+     */
+    Options expireAfterWrite(long duration, TimeUnit unit);
+
+    /**
+     * Re-compute the value of a key once the {@code duration} has elapsed since the value was
+     * computed, the new value is computed by a task of the common fork/join pool and replaces the
+     * old value (seen as a constant) at the next periodic check, without blocking the threads
+     * calling the memoizer.
+     *
+     * <p>If the function fails, the old value is kept, so if {@link #expireAfterWrite(long,
+     * TimeUnit)} is also used with a greater duration, the entry will expire if the function
+     * fails until then. Note that the entries are refreshed even if they are not used anymore and
+     * that if {@link #expireAfterWrite(long, TimeUnit)} is not used, the entries are never removed,
+     * so the memoizer keeps all the keys it has seen.
+     *
+     * <p>This option and {@link #expireAfterWrite(long, TimeUnit)} can not be used with {@link
+     * #maximumSize(int, EvictionPolicy)}, {@link #identityKeys()} or {@link #singleFlight()}.
+     *
+     * @param duration the duration after which an entry is re-computed.
+     * @param unit the unit of the {@code duration}.
+     * @return itself so calls to the options can be chained.
+     * @throws NullPointerException if {@code unit} is null.
+     * @throws IllegalArgumentException if {@code duration} is not positive.
+     */
+    Options refreshAfterWrite(long duration, TimeUnit unit);
+
+    /**
+     * Reference the keys weakly, so a key and its class loader can be collected even if the key is
+     * used by the memoizer, the keys are compared using {@link Object#equals(Object)} like with a
+     * {@link java.util.WeakHashMap}. The values are referenced strongly, so a value should not
+     * reference its key.
+     *
+     * <p>When an inlined key is collected, the inlined keys are re-linked without it, either by
+     * the next call that is not inlined or periodically by a background thread, so the next new
+     * key will be inlined instead. If there are more keys than {@link #maxDepth(int) maxDepth},
+     * the other keys are stored in a concurrent hash table that is read without a lock.
+     *
+     * <p>This option can only be used with keys of a reference type and can not be used with the
+     * other options apart {@link #maxDepth(int)}.
+     *
+     * @return itself so calls to the options can be chained.
+     */
+    Options weakKeys();
+  }
+
+  /**
+   * Policies used to choose the entry to evict when a memoizer is bounded.
+   *
+   * <p>To keep the inlined keys as fast as a constant, the usage of an entry is only approximated,
+   * the entries are organized in a clock, each entry has a counter incremented when the entry is
+   * used and decremented each time the clock hand passes over it, the first entry found with a
+   * counter at zero is evicted.
+   *
+   * @see Options#maximumSize(int, EvictionPolicy)
+   */
+  public enum EvictionPolicy {
+    /** Evict an entry not recently used, the counter only records if the entry was used or not. */
+    LRU,
+    /** Evict an entry not frequently used, the counter records how often the entry was used. */
+    LFU
+  }
+
+  private static final class OptionsImpl implements Options {
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int maximumSize; // 0 means unbounded
+    private EvictionPolicy policy;
+    private boolean identityKeys;
+    private boolean singleFlight;
+    private long expireAfterWrite; // in nanoseconds, 0 means never
+    private long refreshAfterWrite; // in nanoseconds, 0 means never
+    private boolean weakKeys;
+
+    @Override
+    public Options maxDepth(int maxDepth) {
+      if (maxDepth < 0) {
+        throw new IllegalArgumentException("maxDepth is negative " + maxDepth);
+      }
+      this.maxDepth = maxDepth;
+      return this;
+    }
+
+    @Override
+    public Options maximumSize(int maximumSize, EvictionPolicy policy) {
+      Objects.requireNonNull(policy);
+      if (maximumSize <= 0) {
+        throw new IllegalArgumentException("maximumSize is not positive " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+      this.policy = policy;
+      return this;
+    }
+
+    @Override
+    public Options identityKeys() {
+      this.identityKeys = true;
+      return this;
+    }
+
+    @Override
+    public Options singleFlight() {
+      this.singleFlight = true;
+      return this;
+    }
+
+    @Override
+    public Options expireAfterWrite(long duration, TimeUnit unit) {
+      this.expireAfterWrite = toNanos(duration, unit);
+      return this;
+    }
+
+    @Override
+    public Options refreshAfterWrite(long duration, TimeUnit unit) {
+      this.refreshAfterWrite = toNanos(duration, unit);
+      return this;
+    }
+
+    @Override
+    public Options weakKeys() {
+      this.weakKeys = true;
+      return this;
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+      Objects.requireNonNull(unit);
+      if (duration <= 0) {
+        throw new IllegalArgumentException("duration is not positive " + duration);
+      }
+      return Math.max(1, unit.toNanos(duration));
+    }
+
+    MutableCallSite createCallSite(MethodType type, Function<?, ?> function) {
+      if (weakKeys) {
+        if (maximumSize != 0
+            || identityKeys
+            || singleFlight
+            || expireAfterWrite != 0
+            || refreshAfterWrite != 0) {
+          throw new IllegalStateException("weakKeys can only be used with maxDepth");
+        }
+        if (type.parameterType(0).isPrimitive()) {
+          throw new IllegalStateException("weakKeys can not be used with primitive keys");
+        }
+        return new WeakKeyMemoizerCallSite(type, function, maxDepth);
+      }
+      if (expireAfterWrite != 0 || refreshAfterWrite != 0) {
+        if (maximumSize != 0 || identityKeys || singleFlight) {
+          throw new IllegalStateException(
+              "expireAfterWrite and refreshAfterWrite can not be used with maximumSize,"
+                  + " identityKeys or singleFlight");
+        }
+        if (expireAfterWrite != 0
+            && refreshAfterWrite != 0
+            && refreshAfterWrite >= expireAfterWrite) {
+          throw new IllegalStateException(
+              "refreshAfterWrite should be shorter than expireAfterWrite");
+        }
+        return new ExpiringMemoizerCallSite(
+            type, function, maxDepth, expireAfterWrite, refreshAfterWrite);
+      }
+      if (singleFlight && (identityKeys || maximumSize != 0)) {
+        throw new IllegalStateException(
+            "singleFlight can not be used with identityKeys or maximumSize");
+      }
+      if (maximumSize != 0) {
+        if (identityKeys) {
+          throw new IllegalStateException("identityKeys and maximumSize can not be used together");
+        }
+        return new BoundedMemoizerCallSite(type, function, maxDepth, maximumSize, policy);
+      }
+      return new InliningCacheCallSite<>(type, function, maxDepth, identityKeys, singleFlight);
+    }
+
+    MethodHandle createMultiKeyInvoker(MethodHandle function) {
+      if (maximumSize != 0
+          || identityKeys
+          || singleFlight
+          || expireAfterWrite != 0
+          || refreshAfterWrite != 0
+          || weakKeys) {
+        throw new IllegalStateException(
+            "only maxDepth is supported by a memoizer with several keys");
+      }
+      return new MultiKeyMemoizerCallSite(function, maxDepth).dynamicInvoker();
+    }
+  }
+
+  private static OptionsImpl options(Consumer<? super Options> consumer) {
+    Objects.requireNonNull(consumer);
+    OptionsImpl options = new OptionsImpl();
+    consumer.accept(options);
+    return options;
+  }
+
   /**
    * Return a function that returns a constant value (for the Virtual Machine) for each key taken as
    * argument. The value corresponding to a key is calculated by calling the {@code function} once
    * by key and then cached in a code similar to a cascade of {@code if equals else}.
    *
    * <p>To find if a key was previously seen or not, {@link Object#equals(Object)} will be called to
-   * compare the actual key with possibly all the keys already seen, so if there are a lot of
-   * different keys, the performance in the worst case is like a linear search i.e. O(number of seen
-   * keys).
+   * compare the actual key with possibly all the keys already inlined, at most {@link
+   * Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys are inlined, the
+   * other keys are found using a hash table.
    *
    * @param <K> type of the keys.
    * @param <V> type of the values.
@@ -67,14 +375,46 @@ public final class ConstantMemoizer {
    *     valueClass} is null, or if the function key or the function value is null.
    * @throws ClassCastException if the function key or the function value types doesn't match the
    *     {@code keyClass} or the {@code valueClass}.
+   * @see #memoizer(Function, Class, Class, Consumer)
    */
   public static <K, V> Function<K, V> memoizer(
       Function<? super K, ? extends V> function, Class<K> keyClass, Class<V> valueClass) {
+    return memoizer(function, keyClass, valueClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each key taken as
+   * argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <K> type of the keys.
+   * @param <V> type of the values.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass}, the {@code
+   *     valueClass} or the {@code optionsConsumer} is null, or if the function key or the function
+   *     value is null.
+   * @throws ClassCastException if the function key or the function value types doesn't match the
+   *     {@code keyClass} or the {@code valueClass}.
+   * @see #memoizer(Function, Class, Class)
+   */
+  public static <K, V> Function<K, V> memoizer(
+      Function<? super K, ? extends V> function,
+      Class<K> keyClass,
+      Class<V> valueClass,
+      Consumer<? super Options> optionsConsumer) {
     Objects.requireNonNull(function);
     Objects.requireNonNull(keyClass);
     Objects.requireNonNull(valueClass);
+    OptionsImpl options = options(optionsConsumer);
     MethodHandle mh =
-        new InliningCacheCallSite<>(methodType(valueClass, keyClass), function)
+        options
+            .createCallSite(methodType(valueClass, keyClass), function)
             .dynamicInvoker()
             .asType(methodType(Object.class, Object.class)); // erase
     return key -> {
@@ -93,9 +433,9 @@ public final class ConstantMemoizer {
    * by key and then cached in a code similar to a cascade of {@code if equals else}.
    *
    * <p>To find if a key was previously seen or not, {@link Object#equals(Object)} will be called to
-   * compare the actual key with possibly all the keys already seen, so if there are a lot of
-   * different keys, the performance in the worst case is like a linear search i.e. O(number of seen
-   * keys).
+   * compare the actual key with possibly all the keys already inlined, at most {@link
+   * Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys are inlined, the
+   * other keys are found using a hash table.
    *
    * @param <K> type of the keys.
    * @param function a function that takes a non null key as argument and return a non null value.
@@ -105,13 +445,40 @@ public final class ConstantMemoizer {
    * @throws NullPointerException if the {@code function}, the {@code keyClass} is null, or if the
    *     function key.
    * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #intMemoizer(ToIntFunction, Class, Consumer)
    */
   public static <K> ToIntFunction<K> intMemoizer(
       ToIntFunction<? super K> function, Class<K> keyClass) {
+    return intMemoizer(function, keyClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each key taken as
+   * argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <K> type of the keys.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass} or the {@code
+   *     optionsConsumer} is null, or if the function key.
+   * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #intMemoizer(ToIntFunction, Class)
+   */
+  public static <K> ToIntFunction<K> intMemoizer(
+      ToIntFunction<? super K> function,
+      Class<K> keyClass,
+      Consumer<? super Options> optionsConsumer) {
     Objects.requireNonNull(function);
     Objects.requireNonNull(keyClass);
+    OptionsImpl options = options(optionsConsumer);
     MethodHandle mh =
-        new InliningCacheCallSite<>(methodType(int.class, keyClass), function::applyAsInt)
+        options
+            .createCallSite(
+                methodType(int.class, keyClass), (Function<K, Object>) function::applyAsInt)
             .dynamicInvoker()
             .asType(methodType(int.class, Object.class)); // erase
     return key -> {
@@ -130,9 +497,9 @@ public final class ConstantMemoizer {
    * by key and then cached in a code similar to a cascade of {@code if equals else}.
    *
    * <p>To find if a key was previously seen or not, {@link Object#equals(Object)} will be called to
-   * compare the actual key with possibly all the keys already seen, so if there are a lot of
-   * different keys, the performance in the worst case is like a linear search i.e. O(number of seen
-   * keys).
+   * compare the actual key with possibly all the keys already inlined, at most {@link
+   * Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys are inlined, the
+   * other keys are found using a hash table.
    *
    * @param <K> type of the keys.
    * @param function a function that takes a non null key as argument and return a non null value.
@@ -142,13 +509,40 @@ public final class ConstantMemoizer {
    * @throws NullPointerException if the {@code function}, the {@code keyClass} is null, or if the
    *     function key.
    * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #longMemoizer(ToLongFunction, Class, Consumer)
    */
   public static <K> ToLongFunction<K> longMemoizer(
       ToLongFunction<? super K> function, Class<K> keyClass) {
+    return longMemoizer(function, keyClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each key taken as
+   * argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <K> type of the keys.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass} or the {@code
+   *     optionsConsumer} is null, or if the function key.
+   * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #longMemoizer(ToLongFunction, Class)
+   */
+  public static <K> ToLongFunction<K> longMemoizer(
+      ToLongFunction<? super K> function,
+      Class<K> keyClass,
+      Consumer<? super Options> optionsConsumer) {
     Objects.requireNonNull(function);
     Objects.requireNonNull(keyClass);
+    OptionsImpl options = options(optionsConsumer);
     MethodHandle mh =
-        new InliningCacheCallSite<>(methodType(long.class, keyClass), function::applyAsLong)
+        options
+            .createCallSite(
+                methodType(long.class, keyClass), (Function<K, Object>) function::applyAsLong)
             .dynamicInvoker()
             .asType(methodType(long.class, Object.class)); // erase
     return key -> {
@@ -167,9 +561,9 @@ public final class ConstantMemoizer {
    * by key and then cached in a code similar to a cascade of {@code if equals else}.
    *
    * <p>To find if a key was previously seen or not, {@link Object#equals(Object)} will be called to
-   * compare the actual key with possibly all the keys already seen, so if there are a lot of
-   * different keys, the performance in the worst case is like a linear search i.e. O(number of seen
-   * keys).
+   * compare the actual key with possibly all the keys already inlined, at most {@link
+   * Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys are inlined, the
+   * other keys are found using a hash table.
    *
    * @param <K> type of the keys.
    * @param function a function that takes a non null key as argument and return a non null value.
@@ -179,13 +573,40 @@ public final class ConstantMemoizer {
    * @throws NullPointerException if the {@code function}, the {@code keyClass} is null, or if the
    *     function key.
    * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #doubleMemoizer(ToDoubleFunction, Class, Consumer)
    */
   public static <K> ToDoubleFunction<K> doubleMemoizer(
       ToDoubleFunction<? super K> function, Class<K> keyClass) {
+    return doubleMemoizer(function, keyClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each key taken as
+   * argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <K> type of the keys.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass} or the {@code
+   *     optionsConsumer} is null, or if the function key.
+   * @throws ClassCastException if the function key types doesn't match the {@code keyClass}.
+   * @see #doubleMemoizer(ToDoubleFunction, Class)
+   */
+  public static <K> ToDoubleFunction<K> doubleMemoizer(
+      ToDoubleFunction<? super K> function,
+      Class<K> keyClass,
+      Consumer<? super Options> optionsConsumer) {
     Objects.requireNonNull(function);
     Objects.requireNonNull(keyClass);
+    OptionsImpl options = options(optionsConsumer);
     MethodHandle mh =
-        new InliningCacheCallSite<>(methodType(double.class, keyClass), function::applyAsDouble)
+        options
+            .createCallSite(
+                methodType(double.class, keyClass), (Function<K, Object>) function::applyAsDouble)
             .dynamicInvoker()
             .asType(methodType(double.class, Object.class)); // erase
     return key -> {
@@ -198,8 +619,618 @@ public final class ConstantMemoizer {
     };
   }
 
-  private static class InliningCacheCallSite<K, V> extends MutableCallSite {
-    private static final MethodHandle FALLBACK, EQUALS;
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each int key
+   * taken as argument. The value corresponding to a key is calculated by calling the {@code
+   * function} once by key and then cached in a code similar to a cascade of {@code if ==
+   * else}, the keys are compared as int, without being boxed.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys
+   * are inlined, the other keys are found using a hash table with int keys.
+   *
+   * @param <V> type of the values.
+   * @param function a function that takes a key as argument and return a non null value.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} or the {@code valueClass} is null, or if
+   *     the function value is null.
+   * @throws ClassCastException if the function value type doesn't match the {@code valueClass}.
+   * @see #intKeyMemoizer(IntFunction, Class, Consumer)
+   */
+  public static <V> IntFunction<V> intKeyMemoizer(
+      IntFunction<? extends V> function, Class<V> valueClass) {
+    return intKeyMemoizer(function, valueClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each int key
+   * taken as argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <V> type of the values.
+   * @param function a function that takes a key as argument and return a non null value.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code valueClass} or the {@code
+   *     optionsConsumer} is null, or if the function value is null.
+   * @throws ClassCastException if the function value type doesn't match the {@code valueClass}.
+   * @see #intKeyMemoizer(IntFunction, Class)
+   */
+  public static <V> IntFunction<V> intKeyMemoizer(
+      IntFunction<? extends V> function,
+      Class<V> valueClass,
+      Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    Objects.requireNonNull(valueClass);
+    OptionsImpl options = options(optionsConsumer);
+    MethodHandle mh =
+        options
+            .createCallSite(
+                methodType(valueClass, int.class), (Function<Integer, V>) function::apply)
+            .dynamicInvoker()
+            .asType(methodType(Object.class, int.class)); // erase
+    return key -> {
+      try {
+        return (V) mh.invokeExact(key);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each long key
+   * taken as argument. The value corresponding to a key is calculated by calling the {@code
+   * function} once by key and then cached in a code similar to a cascade of {@code if ==
+   * else}, the keys are compared as long, without being boxed.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys
+   * are inlined, the other keys are found using a hash table with long keys.
+   *
+   * @param <V> type of the values.
+   * @param function a function that takes a key as argument and return a non null value.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} or the {@code valueClass} is null, or if
+   *     the function value is null.
+   * @throws ClassCastException if the function value type doesn't match the {@code valueClass}.
+   * @see #longKeyMemoizer(LongFunction, Class, Consumer)
+   */
+  public static <V> LongFunction<V> longKeyMemoizer(
+      LongFunction<? extends V> function, Class<V> valueClass) {
+    return longKeyMemoizer(function, valueClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each long key
+   * taken as argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param <V> type of the values.
+   * @param function a function that takes a key as argument and return a non null value.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code valueClass} or the {@code
+   *     optionsConsumer} is null, or if the function value is null.
+   * @throws ClassCastException if the function value type doesn't match the {@code valueClass}.
+   * @see #longKeyMemoizer(LongFunction, Class)
+   */
+  public static <V> LongFunction<V> longKeyMemoizer(
+      LongFunction<? extends V> function,
+      Class<V> valueClass,
+      Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    Objects.requireNonNull(valueClass);
+    OptionsImpl options = options(optionsConsumer);
+    MethodHandle mh =
+        options
+            .createCallSite(
+                methodType(valueClass, long.class), (Function<Long, V>) function::apply)
+            .dynamicInvoker()
+            .asType(methodType(Object.class, long.class)); // erase
+    return key -> {
+      try {
+        return (V) mh.invokeExact(key);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  /**
+   * Return a function that returns a constant int (for the Virtual Machine) for each int key taken
+   * as argument. The value corresponding to a key is calculated by calling the {@code function}
+   * once by key and then cached in a code similar to a cascade of {@code if == else}, neither the
+   * keys nor the values are boxed.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys
+   * are inlined, the other keys are found using a hash table with int keys.
+   *
+   * @param function a function that takes a key as argument and return a value.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} is null.
+   * @see #intToIntMemoizer(IntUnaryOperator, Consumer)
+   */
+  public static IntUnaryOperator intToIntMemoizer(IntUnaryOperator function) {
+    return intToIntMemoizer(function, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant int (for the Virtual Machine) for each int key taken
+   * as argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param function a function that takes a key as argument and return a value.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} or the {@code optionsConsumer} is null.
+   * @see #intToIntMemoizer(IntUnaryOperator)
+   */
+  public static IntUnaryOperator intToIntMemoizer(
+      IntUnaryOperator function, Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    OptionsImpl options = options(optionsConsumer);
+    MethodHandle mh =
+        options
+            .createCallSite(
+                methodType(int.class, int.class), (Function<Integer, Integer>) function::applyAsInt)
+            .dynamicInvoker();
+    return key -> {
+      try {
+        return (int) mh.invokeExact(key);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  /**
+   * Return a function that returns a constant long (for the Virtual Machine) for each long key
+   * taken as argument. The value corresponding to a key is calculated by calling the {@code
+   * function} once by key and then cached in a code similar to a cascade of {@code if == else},
+   * neither the keys nor the values are boxed.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) keys
+   * are inlined, the other keys are found using a hash table with long keys.
+   *
+   * @param function a function that takes a key as argument and return a value.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} is null.
+   * @see #longToLongMemoizer(LongUnaryOperator, Consumer)
+   */
+  public static LongUnaryOperator longToLongMemoizer(LongUnaryOperator function) {
+    return longToLongMemoizer(function, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant long (for the Virtual Machine) for each long key
+   * taken as argument, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * @param function a function that takes a key as argument and return a value.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific key.
+   * @throws NullPointerException if the {@code function} or the {@code optionsConsumer} is null.
+   * @see #longToLongMemoizer(LongUnaryOperator)
+   */
+  public static LongUnaryOperator longToLongMemoizer(
+      LongUnaryOperator function, Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    OptionsImpl options = options(optionsConsumer);
+    MethodHandle mh =
+        options
+            .createCallSite(
+                methodType(long.class, long.class), (Function<Long, Long>) function::applyAsLong)
+            .dynamicInvoker();
+    return key -> {
+      try {
+        return (long) mh.invokeExact(key);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  private static final MethodHandle BI_FUNCTION_APPLY;
+
+  static {
+    try {
+      BI_FUNCTION_APPLY =
+          lookup()
+              .findVirtual(
+                  BiFunction.class,
+                  "apply",
+                  methodType(Object.class, Object.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each pair of keys
+   * taken as arguments. The value corresponding to a pair of keys is calculated by calling the
+   * {@code function} once by pair and then cached in a code similar to a cascade of {@code if
+   * equals && equals else}, each key having its own test, so the keys are never grouped into an
+   * object.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default) pairs
+   * of keys are inlined, the other pairs are found using a hash table that takes the two keys as
+   * separate arguments.
+   *
+   * @param <K1> type of the first keys.
+   * @param <K2> type of the second keys.
+   * @param <V> type of the values.
+   * @param function a function that takes two non null keys as arguments and return a non null
+   *     value.
+   * @param keyClass1 the class of the first key.
+   * @param keyClass2 the class of the second key.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @return a function the function getting the value for a specific pair of keys.
+   * @throws NullPointerException if the {@code function}, one of the classes is null, or if one of
+   *     the keys or the function value is null.
+   * @throws ClassCastException if the keys or the function value types doesn't match the classes.
+   * @see #biMemoizer(BiFunction, Class, Class, Class, Consumer)
+   */
+  public static <K1, K2, V> BiFunction<K1, K2, V> biMemoizer(
+      BiFunction<? super K1, ? super K2, ? extends V> function,
+      Class<K1> keyClass1,
+      Class<K2> keyClass2,
+      Class<V> valueClass) {
+    return biMemoizer(function, keyClass1, keyClass2, valueClass, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that returns a constant value (for the Virtual Machine) for each pair of keys
+   * taken as arguments, the memoizer being configured by the {@code optionsConsumer}.
+   *
+   * <p>Only the option {@link Options#maxDepth(int)} is supported.
+   *
+   * @param <K1> type of the first keys.
+   * @param <K2> type of the second keys.
+   * @param <V> type of the values.
+   * @param function a function that takes two non null keys as arguments and return a non null
+   *     value.
+   * @param keyClass1 the class of the first key.
+   * @param keyClass2 the class of the second key.
+   * @param valueClass the class of the value, if it's a primitive type, the value will be boxed at
+   *     each call.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the value for a specific pair of keys.
+   * @throws NullPointerException if the {@code function}, one of the classes or the {@code
+   *     optionsConsumer} is null, or if one of the keys or the function value is null.
+   * @throws ClassCastException if the keys or the function value types doesn't match the classes.
+   * @throws IllegalStateException if an option other than {@link Options#maxDepth(int)} is used.
+   * @see #biMemoizer(BiFunction, Class, Class, Class)
+   */
+  public static <K1, K2, V> BiFunction<K1, K2, V> biMemoizer(
+      BiFunction<? super K1, ? super K2, ? extends V> function,
+      Class<K1> keyClass1,
+      Class<K2> keyClass2,
+      Class<V> valueClass,
+      Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    Objects.requireNonNull(keyClass1);
+    Objects.requireNonNull(keyClass2);
+    Objects.requireNonNull(valueClass);
+    OptionsImpl options = options(optionsConsumer);
+    MethodHandle mh =
+        options
+            .createMultiKeyInvoker(
+                BI_FUNCTION_APPLY
+                    .bindTo(function)
+                    .asType(methodType(valueClass, keyClass1, keyClass2)))
+            .asType(methodType(Object.class, Object.class, Object.class)); // erase
+    return (key1, key2) -> {
+      Objects.requireNonNull(key1);
+      Objects.requireNonNull(key2);
+      try {
+        return (V) mh.invokeExact(key1, key2);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  /**
+   * Return a method handle with the same type as {@code function} that returns a constant value
+   * (for the Virtual Machine) for each tuple of arguments. The value corresponding to a tuple of
+   * arguments is calculated by calling the {@code function} once by tuple and then cached in a code
+   * similar to a cascade of {@code if equals && ... && equals else}, each argument having its own
+   * test.
+   *
+   * <p>At most {@link Options#maxDepth(int) maxDepth} ({@link #DEFAULT_MAX_DEPTH} by default)
+   * tuples of arguments are inlined, the other tuples are found using a hash table that takes the
+   * arguments separately. The arguments of primitive types are compared without being boxed by the
+   * inlined tests but are boxed to access the hash table.
+   *
+   * @param function a method handle that takes one to four non null arguments and return a non
+   *     null value.
+   * @return a method handle with the same type as {@code function}.
+   * @throws NullPointerException if the {@code function} is null. The returned method handle
+   *     throws a NullPointerException if one of the arguments or the function value is null.
+   * @throws IllegalArgumentException if the {@code function} returns void or doesn't take one to
+   *     four parameters.
+   * @see #memoizer(MethodHandle, Consumer)
+   */
+  public static MethodHandle memoizer(MethodHandle function) {
+    return memoizer(function, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a method handle with the same type as {@code function} that returns a constant value
+   * (for the Virtual Machine) for each tuple of arguments, the memoizer being configured by the
+   * {@code optionsConsumer}.
+   *
+   * <p>If the {@code function} takes several parameters, only the option {@link
+   * Options#maxDepth(int)} is supported.
+   *
+   * @param function a method handle that takes one to four non null arguments and return a non
+   *     null value.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a method handle with the same type as {@code function}.
+   * @throws NullPointerException if the {@code function} or the {@code optionsConsumer} is null.
+   *     The returned method handle throws a NullPointerException if one of the arguments or the
+   *     function value is null.
+   * @throws IllegalArgumentException if the {@code function} returns void or doesn't take one to
+   *     four parameters.
+   * @throws IllegalStateException if the {@code function} takes several parameters and an option
+   *     other than {@link Options#maxDepth(int)} is used.
+   * @see #memoizer(MethodHandle)
+   */
+  public static MethodHandle memoizer(
+      MethodHandle function, Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    MethodType type = function.type();
+    int parameterCount = type.parameterCount();
+    if (parameterCount == 0 || parameterCount > MultiKeyMemoizerCallSite.MAX_ARITY) {
+      throw new IllegalArgumentException("the function should take one to four parameters " + type);
+    }
+    if (type.returnType() == void.class) {
+      throw new IllegalArgumentException("the function should not return void " + type);
+    }
+    OptionsImpl options = options(optionsConsumer);
+    if (parameterCount != 1) {
+      return options.createMultiKeyInvoker(function);
+    }
+    MethodHandle erased = function.asType(methodType(Object.class, Object.class));
+    Function<Object, Object> fun =
+        key -> {
+          try {
+            return erased.invokeExact(Objects.requireNonNull(key));
+          } catch (Throwable e) {
+            throw Thrower.rethrow(e);
+          }
+        };
+    return options.createCallSite(type, fun).dynamicInvoker();
+  }
+
+  /**
+   * Return a function that computes asynchronously the value of each key and returns a future
+   * that is a constant (for the Virtual Machine) for each key taken as argument. The value
+   * corresponding to a key is calculated by calling the {@code function} once by key, the call
+   * being executed by the {@code executor}, by example, an executor that starts a virtual thread
+   * per task.
+   *
+   * <p>Each key is associated to a call site that returns the future of the computation, this
+   * future is created once and shared by all the callers of the same key. If the computation
+   * fails, the future completes exceptionally and the next call with the same key will call the
+   * {@code function} again.
+   *
+   * <p>Because it is shared, the returned future is read-only, the methods that complete it like
+   * {@link CompletableFuture#complete(Object) complete}, {@link CompletableFuture#cancel(boolean)
+   * cancel} or {@link CompletableFuture#obtrudeValue(Object) obtrudeValue} throw an {@link
+   * UnsupportedOperationException}, the futures derived from it are not read-only.
+   *
+   * @param <K> type of the keys.
+   * @param <V> type of the values.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param executor the executor used to call the {@code function}.
+   * @return a function the function getting the future of the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass} or the {@code
+   *     executor} is null, or if a key is null. The future completes with a NullPointerException
+   *     if the function value is null.
+   * @throws ClassCastException if the key type doesn't match the class.
+   * @see #asyncMemoizer(Function, Class, Executor, Consumer)
+   */
+  public static <K, V> Function<K, CompletableFuture<V>> asyncMemoizer(
+      Function<? super K, ? extends V> function, Class<K> keyClass, Executor executor) {
+    return asyncMemoizer(function, keyClass, executor, __ -> { /* empty */ });
+  }
+
+  /**
+   * Return a function that computes asynchronously the value of each key and returns a future
+   * that is a constant (for the Virtual Machine) for each key taken as argument, the memoizer being
+   * configured by the {@code optionsConsumer}.
+   *
+   * @param <K> type of the keys.
+   * @param <V> type of the values.
+   * @param function a function that takes a non null key as argument and return a non null value.
+   * @param keyClass the class of the key, if it's a primitive type, the key value will be boxed
+   *     before calling the {@code function}.
+   * @param executor the executor used to call the {@code function}.
+   * @param optionsConsumer a consumer that will configure the {@link Options options} of the
+   *     memoizer.
+   * @return a function the function getting the future of the value for a specific key.
+   * @throws NullPointerException if the {@code function}, the {@code keyClass}, the {@code
+   *     executor} or the {@code optionsConsumer} is null, or if a key is null. The future completes
+   *     with a NullPointerException if the function value is null.
+   * @throws ClassCastException if the key type doesn't match the class.
+   * @see #asyncMemoizer(Function, Class, Executor)
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> Function<K, CompletableFuture<V>> asyncMemoizer(
+      Function<? super K, ? extends V> function,
+      Class<K> keyClass,
+      Executor executor,
+      Consumer<? super Options> optionsConsumer) {
+    Objects.requireNonNull(function);
+    Objects.requireNonNull(keyClass);
+    Objects.requireNonNull(executor);
+    OptionsImpl options = options(optionsConsumer);
+    Function<Object, Object> fun = (Function<Object, Object>) function;
+    CallSiteStats stats = CallSiteStats.create(ConstantMemoizer.class);
+    Function<Object, MethodHandle> entryFactory =
+        key -> new AsyncEntry(() -> fun.apply(key), executor, stats).dynamicInvoker();
+    MethodHandle mh =
+        filterReturnValue(
+                options
+                    .createCallSite(methodType(MethodHandle.class, keyClass), entryFactory)
+                    .dynamicInvoker(),
+                exactInvoker(methodType(CompletableFuture.class)))
+            .asType(methodType(CompletableFuture.class, Object.class)); // erase
+    return key -> {
+      Objects.requireNonNull(key);
+      try {
+        return (CompletableFuture<V>) mh.invokeExact(key);
+      } catch (Throwable e) {
+        throw Thrower.rethrow(e);
+      }
+    };
+  }
+
+  /**
+   * A call site that returns the future of the value of one key, the computation starts at the
+   * first call.
+   */
+  private static final class AsyncEntry extends MutableCallSite {
+    private static final MethodHandle START;
+
+    static {
+      try {
+        START =
+            lookup().findVirtual(AsyncEntry.class, "start", methodType(CompletableFuture.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final Supplier<?> supplier;
+    private final Executor executor;
+    private final CallSiteStats stats;
+    private ReadOnlyFuture<Object> future; // guarded by this
+
+    AsyncEntry(Supplier<?> supplier, Executor executor, CallSiteStats stats) {
+      super(methodType(CompletableFuture.class));
+      this.supplier = supplier;
+      this.executor = executor;
+      this.stats = stats;
+      setTarget(START.bindTo(this));
+    }
+
+    @SuppressWarnings("unused")
+    private synchronized CompletableFuture<Object> start() {
+      ReadOnlyFuture<Object> future = this.future;
+      if (future != null && !future.isCompletedExceptionally()) {
+        return future; // already started by another thread
+      }
+      ReadOnlyFuture<Object> newFuture = new ReadOnlyFuture<>();
+      this.future = newFuture;
+      setTarget(constant(CompletableFuture.class, newFuture));
+      stats.relink(1);
+      CompletableFuture.supplyAsync(() -> Objects.requireNonNull(supplier.get()), executor)
+          .whenComplete(
+              (value, exception) -> {
+                if (exception == null) {
+                  newFuture.completeValue(value);
+                  return;
+                }
+                synchronized (this) {
+                  if (this.future == newFuture) {
+                    setTarget(START.bindTo(this)); // try again at the next call
+                    stats.relink(0);
+                  }
+                }
+                newFuture.completeException(exception);
+              });
+      return newFuture;
+    }
+  }
+
+  /**
+   * A future that can only be completed by the memoizer, so it can be shared by all the callers,
+   * {@code CompletableFuture.minimalCompletionStage()} is not available in Java 8.
+   */
+  private static final class ReadOnlyFuture<T> extends CompletableFuture<T> {
+    void completeValue(T value) {
+      super.complete(value);
+    }
+
+    void completeException(Throwable exception) {
+      super.completeExceptionally(exception);
+    }
+
+    @Override
+    public boolean complete(T value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable exception) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void obtrudeValue(T value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void obtrudeException(Throwable exception) {
+      throw new UnsupportedOperationException();
+    }
+
+    // override the methods added in Java 9 that complete the future without calling complete()
+
+    public CompletableFuture<T> completeAsync(Supplier<? extends T> supplier, Executor executor) {
+      throw new UnsupportedOperationException();
+    }
+
+    public CompletableFuture<T> completeAsync(Supplier<? extends T> supplier) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class Table<K, V> {
+    private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+    private final Function<? super K, ? extends V> function;
+
+    Table(Function<? super K, ? extends V> function) {
+      this.function = function;
+    }
+
+    V get(K key) {
+      V value = map.get(key);
+      if (value != null) {
+        return value;
+      }
+      // don't use computeIfAbsent, the function may be recursive
+      value = Objects.requireNonNull(function.apply(key));
+      V previous = map.putIfAbsent(key, value);
+      return (previous != null) ? previous : value;
+    }
+  }
+
+  static class InliningCacheCallSite<K, V> extends MutableCallSite {
+    private static final MethodHandle FALLBACK, EQUALS, SAME, WEAK_SAME;
+    private static final MethodHandle SAME_BOOLEAN, SAME_BYTE, SAME_SHORT, SAME_CHAR, SAME_INT;
+    private static final MethodHandle SAME_LONG, SAME_FLOAT, SAME_DOUBLE;
+    private static final MethodHandle GET, SINGLE_FLIGHT_GET, LONG_GET, IDENTITY_GET;
 
     static {
       Lookup lookup = lookup();
@@ -211,16 +1242,76 @@ public final class ConstantMemoizer {
                 methodType(MethodHandle.class, Object.class));
         EQUALS =
             lookup.findVirtual(Object.class, "equals", methodType(boolean.class, Object.class));
+        SAME =
+            lookup.findStatic(
+                InliningCacheCallSite.class,
+                "same",
+                methodType(boolean.class, Object.class, Object.class));
+        WEAK_SAME =
+            lookup.findStatic(
+                InliningCacheCallSite.class,
+                "same",
+                methodType(boolean.class, WeakReference.class, Object.class));
+        SAME_BOOLEAN = findSame(lookup, boolean.class);
+        SAME_BYTE = findSame(lookup, byte.class);
+        SAME_SHORT = findSame(lookup, short.class);
+        SAME_CHAR = findSame(lookup, char.class);
+        SAME_INT = findSame(lookup, int.class);
+        SAME_LONG = findSame(lookup, long.class);
+        SAME_FLOAT = findSame(lookup, float.class);
+        SAME_DOUBLE = findSame(lookup, double.class);
+        GET = lookup.findVirtual(Table.class, "get", methodType(Object.class, Object.class));
+        SINGLE_FLIGHT_GET =
+            lookup.findVirtual(SingleFlight.class, "get", methodType(Object.class, Object.class));
+        LONG_GET =
+            lookup.findVirtual(LongKeyTable.class, "get", methodType(Object.class, long.class));
+        IDENTITY_GET =
+            lookup.findVirtual(
+                IdentityKeyTable.class, "get", methodType(Object.class, Object.class));
       } catch (NoSuchMethodException | IllegalAccessException e) {
         throw new AssertionError(e);
       }
     }
 
+    private final int depth;
+    private final int maxDepth;
+    private final boolean identityKeys;
     private final Function<? super K, ? extends V> function;
+    private final SingleFlight singleFlight; // null if not single flight
+    private final CallSiteStats stats;
+    private boolean linked; // guarded by this, only used in single flight mode
+
+    InliningCacheCallSite(
+        MethodType type,
+        Function<? super K, ? extends V> function,
+        int maxDepth,
+        boolean identityKeys,
+        boolean singleFlight) {
+      this(
+          type,
+          function,
+          0,
+          maxDepth,
+          identityKeys,
+          singleFlight ? new SingleFlight(function) : null,
+          CallSiteStats.create(ConstantMemoizer.class));
+    }
 
-    InliningCacheCallSite(MethodType type, Function<? super K, ? extends V> function) {
+    private InliningCacheCallSite(
+        MethodType type,
+        Function<? super K, ? extends V> function,
+        int depth,
+        int maxDepth,
+        boolean identityKeys,
+        SingleFlight singleFlight,
+        CallSiteStats stats) {
       super(type);
+      this.depth = depth;
+      this.maxDepth = maxDepth;
+      this.identityKeys = identityKeys;
       this.function = function;
+      this.singleFlight = singleFlight;
+      this.stats = stats;
       setTarget(
           foldArguments(
               exactInvoker(type),
@@ -229,17 +1320,200 @@ public final class ConstantMemoizer {
 
     @SuppressWarnings("unused")
     private MethodHandle fallback(K key) {
+      long start = stats.enter();
+      try {
+        return link(key);
+      } finally {
+        stats.exit(start);
+      }
+    }
+
+    private MethodHandle link(K key) {
+      if (singleFlight != null) {
+        return singleFlightFallback(key);
+      }
+      MethodType type = type();
+      if (depth == maxDepth) {
+        // megamorphic, the keys already seen stay inlined in front of the table
+        MethodHandle target = table(type.parameterType(0), function, identityKeys).asType(type);
+        setTarget(target);
+        stats.megamorphic();
+        return target;
+      }
+
       V value = Objects.requireNonNull(function.apply(key));
+      return linkValue(key, value);
+    }
+
+    private MethodHandle singleFlightFallback(K key) {
+      MethodType type = type();
+      if (depth == maxDepth) {
+        // megamorphic, the table is the one used to compute the values only once
+        synchronized (this) {
+          if (!linked) {
+            linked = true;
+            setTarget(SINGLE_FLIGHT_GET.bindTo(singleFlight).asType(type));
+            stats.megamorphic();
+          }
+          return getTarget();
+        }
+      }
+
+      // compute outside of the lock, the function may be recursive
+      @SuppressWarnings("unchecked")
+      V value = (V) singleFlight.get(key);
+      synchronized (this) {
+        if (linked) {
+          // another thread has linked this call site, either with the same key or with another key,
+          // dispatch again, in the later case, the value will be linked by the next call site
+          return getTarget();
+        }
+        linked = true;
+        return linkValue(key, value);
+      }
+    }
+
+    private MethodHandle linkValue(K key, V value) {
       MethodType type = type();
       Class<?> keyClass = type.parameterType(0);
       Class<?> valueClass = type.returnType();
       MethodHandle target = dropArguments(constant(valueClass, value), 0, keyClass);
       setTarget(
           guardWithTest(
-              EQUALS.bindTo(key).asType(methodType(boolean.class, keyClass)),
+              identityKeys ? identityGuard(keyClass, key) : guard(keyClass, key),
               target,
-              new InliningCacheCallSite<>(type, function).dynamicInvoker()));
+              new InliningCacheCallSite<>(
+                      type, function, depth + 1, maxDepth, identityKeys, singleFlight, stats)
+                  .dynamicInvoker()));
+      stats.link();
       return target;
     }
+
+    @SuppressWarnings("unchecked")
+    private static MethodHandle table(
+        Class<?> keyClass, Function<?, ?> function, boolean identityKeys) {
+      Function<Object, ?> fun = (Function<Object, ?>) function;
+      if (keyClass == int.class) {
+        return LONG_GET.bindTo(new LongKeyTable(key -> fun.apply((int) key)));
+      }
+      if (keyClass == long.class) {
+        return LONG_GET.bindTo(new LongKeyTable(fun::apply));
+      }
+      if (identityKeys && !keyClass.isPrimitive()) {
+        return IDENTITY_GET.bindTo(new IdentityKeyTable(fun));
+      }
+      return GET.bindTo(new Table<>(fun));
+    }
+
+    private static MethodHandle findSame(Lookup lookup, Class<?> primitive)
+        throws NoSuchMethodException, IllegalAccessException {
+      return lookup.findStatic(
+          InliningCacheCallSite.class, "same", methodType(boolean.class, primitive, primitive));
+    }
+
+    /**
+     * Returns a method handle that test if its argument is equals to the {@code key}, the keys of a
+     * primitive type are compared without being boxed, floats and doubles are compared like {@link
+     * Float#equals(Object)} and {@link Double#equals(Object)} so the inlined keys and the hash
+     * table agree.
+     */
+    static MethodHandle guard(Class<?> keyClass, Object key) {
+      if (keyClass.isPrimitive()) {
+        return insertArguments(samePrimitive(keyClass), 0, key);
+      }
+      return EQUALS.bindTo(key).asType(methodType(boolean.class, keyClass));
+    }
+
+    private static MethodHandle samePrimitive(Class<?> keyClass) {
+      if (keyClass == int.class) {
+        return SAME_INT;
+      }
+      if (keyClass == long.class) {
+        return SAME_LONG;
+      }
+      if (keyClass == double.class) {
+        return SAME_DOUBLE;
+      }
+      if (keyClass == float.class) {
+        return SAME_FLOAT;
+      }
+      if (keyClass == char.class) {
+        return SAME_CHAR;
+      }
+      if (keyClass == short.class) {
+        return SAME_SHORT;
+      }
+      if (keyClass == byte.class) {
+        return SAME_BYTE;
+      }
+      return SAME_BOOLEAN;
+    }
+
+    /**
+     * Returns a method handle that test if its argument is the same as the {@code key}, a class is
+     * referenced weakly.
+     */
+    private static MethodHandle identityGuard(Class<?> keyClass, Object key) {
+      if (keyClass.isPrimitive()) {
+        return guard(keyClass, key);
+      }
+      MethodHandle guard =
+          (key instanceof Class<?>)
+              ? WEAK_SAME.bindTo(new WeakReference<>(key))
+              : SAME.bindTo(key);
+      return guard.asType(methodType(boolean.class, keyClass));
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(Object key, Object value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(WeakReference<?> ref, Object value) {
+      return ref.get() == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(int key, int value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(long key, long value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(boolean key, boolean value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(byte key, byte value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(short key, short value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(char key, char value) {
+      return key == value;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(float key, float value) {
+      // NaN is equal to NaN and 0.0f is not equal to -0.0f, like Float.equals()
+      return Float.floatToIntBits(key) == Float.floatToIntBits(value);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean same(double key, double value) {
+      // NaN is equal to NaN and 0.0 is not equal to -0.0, like Double.equals()
+      return Double.doubleToLongBits(key) == Double.doubleToLongBits(value);
+    }
   }
 }
@@ -0,0 +1,28 @@
+package com.github.forax.exotic;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * The scheduler shared by the call sites that have to do some work in the background, it uses one
+ * daemon thread so it never prevents the VM to exit.
+ */
+final class DaemonScheduler {
+  private DaemonScheduler() {
+    throw new AssertionError();
+  }
+
+  static final ScheduledThreadPoolExecutor SCHEDULER;
+
+  static {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+              Thread thread = new Thread(runnable, "exotic-scheduler");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.setRemoveOnCancelPolicy(true);
+    SCHEDULER = scheduler;
+  }
+}
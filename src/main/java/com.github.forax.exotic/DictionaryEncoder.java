@@ -0,0 +1,331 @@
+package com.github.forax.exotic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A dictionary encoder that associates to each different value of a column of a text file (a CSV
+ * or a TSV file by example) an int code, the values are never decoded into strings.
+ *
+ * <p>The encoder is created with the values that are known in advance (the countries, the status,
+ * the currencies, etc), their codes are their indexes and they are recognized by a {@link
+ * ByteStringSwitch} (a {@link ByteBufferSwitch} when a file is encoded). The other values are
+ * appended to the dictionary when they are seen for the first time and are recognized by a hash
+ * table on the bytes.
+ *
+ * <pre>
+ * DictionaryEncoder encoder = DictionaryEncoder.create("FR", "US", "DE");
+ * int[] codes = encoder.encodeColumn(path, (byte) ',', 2, true);
+ * String country = encoder.value(codes[0]);
+ * </pre>
+ *
+ * The file is memory mapped by windows and the fields are matched directly on the mapped bytes,
+ * they are never copied. The fields of a window are first located, then encoded in batches, so the
+ * switch is called in a tight loop. The next window starts at the beginning of the last incomplete
+ * line, so a line is never split between two windows.
+ *
+ * <p>The lines are separated by {@code '\n'} (a trailing {@code '\r'} is removed), the blank
+ * lines are skipped, the fields are separated by a separator byte, quoted fields are not supported.
+ *
+ * <p>This class is not thread safe.
+ */
+public final class DictionaryEncoder {
+  private static final long MAP_SIZE = 1L << 26;
+  private static final int BATCH_SIZE = 1 << 10;
+
+  private final ByteStringSwitch knownSwitch;
+  private final ByteBufferSwitch knownBufferSwitch;
+  private final int knownCount;
+  private final ArrayList<byte[]> values = new ArrayList<>();
+
+  // open addressing hash table of the values that are not known, contains the code + 1 or 0
+  private int[] table = new int[16];
+  private int[] hashes = new int[8];
+
+  // state of the column being encoded
+  private int[] codes;
+  private int codeCount;
+  private long lineNumber;
+  private final int[] fieldStarts = new int[BATCH_SIZE];
+  private final int[] fieldEnds = new int[BATCH_SIZE];
+
+  private DictionaryEncoder(String[] knownValues) {
+    this.knownSwitch = ByteStringSwitch.create(knownValues);
+    this.knownBufferSwitch = ByteBufferSwitch.create(knownValues);
+    this.knownCount = knownValues.length;
+    for (String knownValue : knownValues) {
+      values.add(knownValue.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Creates a dictionary encoder with the values known in advance, the code of a known value is
+   * its index in the array.
+   *
+   * @param knownValues the values known in advance.
+   * @return a new dictionary encoder.
+   * @throws NullPointerException if {@code knownValues} is null or a value is null.
+   * @throws IllegalStateException if the same value appears several times in the array.
+   */
+  public static DictionaryEncoder create(String... knownValues) {
+    return new DictionaryEncoder(knownValues.clone());
+  }
+
+  /**
+   * Returns the number of values of the dictionary.
+   *
+   * @return the number of values of the dictionary.
+   */
+  public int size() {
+    return values.size();
+  }
+
+  /**
+   * Returns the value associated with a code.
+   *
+   * @param code a code returned by this encoder.
+   * @return the value associated with the code.
+   * @throws IndexOutOfBoundsException if the code is not a code of the dictionary.
+   */
+  public String value(int code) {
+    return new String(values.get(code), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the values of the dictionary, the index of a value is its code.
+   *
+   * @return the values of the dictionary.
+   */
+  public List<String> dictionary() {
+    ArrayList<String> dictionary = new ArrayList<>(values.size());
+    for (byte[] value : values) {
+      dictionary.add(new String(value, StandardCharsets.UTF_8));
+    }
+    return dictionary;
+  }
+
+  /**
+   * Returns the code of the value encoded in UTF-8 in {@code bytes} from {@code offset} to {@code
+   * offset + length}, if the value is not in the dictionary, it is added.
+   *
+   * @param bytes an array of bytes.
+   * @param offset the offset of the first byte.
+   * @param length the number of bytes.
+   * @return the code of the value.
+   * @throws NullPointerException if {@code bytes} is null.
+   * @throws IndexOutOfBoundsException if the range is not inside the array.
+   */
+  public int encode(byte[] bytes, int offset, int length) {
+    int index = knownSwitch.byteSwitch(bytes, offset, length);
+    if (index != ByteStringSwitch.NO_MATCH) {
+      return index;
+    }
+    return encodeUnknown(bytes, offset, length);
+  }
+
+  private int encodeUnknown(byte[] bytes, int offset, int length) {
+    int hash = ByteStringSwitchCallSite.hash(bytes, offset, length);
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    for (; ; slot = (slot + 1) & mask) {
+      int entry = table[slot];
+      if (entry == 0) {
+        break;
+      }
+      int code = entry - 1;
+      if (hashes[code - knownCount] == hash
+          && ByteStringSwitchCallSite.equals(values.get(code), bytes, offset, length)) {
+        return code;
+      }
+    }
+    return append(Arrays.copyOfRange(bytes, offset, offset + length), hash, slot);
+  }
+
+  private int encodeUnknown(ByteBuffer buffer) {
+    int hash = ByteStringSwitchCallSite.hash(buffer);
+    int mask = table.length - 1;
+    int slot = mix(hash) & mask;
+    for (; ; slot = (slot + 1) & mask) {
+      int entry = table[slot];
+      if (entry == 0) {
+        break;
+      }
+      int code = entry - 1;
+      if (hashes[code - knownCount] == hash
+          && ByteStringSwitchCallSite.equals(values.get(code), buffer)) {
+        return code;
+      }
+    }
+    byte[] value = new byte[buffer.remaining()];
+    buffer.duplicate().get(value);
+    return append(value, hash, slot);
+  }
+
+  /** Appends a value to the dictionary, {@code slot} is the empty slot found for its hash. */
+  private int append(byte[] value, int hash, int slot) {
+    int code = values.size();
+    values.add(value);
+    int unknownCount = code - knownCount;
+    if (unknownCount == hashes.length) {
+      hashes = Arrays.copyOf(hashes, unknownCount << 1);
+    }
+    hashes[unknownCount] = hash;
+    table[slot] = code + 1;
+    if ((unknownCount + 1) << 1 > table.length) { // load factor 0.5
+      rehash();
+    }
+    return code;
+  }
+
+  private void rehash() {
+    int[] newTable = new int[table.length << 1];
+    int mask = newTable.length - 1;
+    for (int entry : table) {
+      if (entry == 0) {
+        continue;
+      }
+      int slot = mix(hashes[entry - 1 - knownCount]) & mask;
+      while (newTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newTable[slot] = entry;
+    }
+    table = newTable;
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Returns the codes of the fields of a column of a text file, the values of the column that are
+   * not in the dictionary are added. The blank lines are skipped, so they have no code.
+   *
+   * @param path the path of the file.
+   * @param separator the byte that separates the fields of a line.
+   * @param column the index of the column, starting at 0.
+   * @param skipHeader true if the first line of the file should be skipped.
+   * @return an array containing the code of the field for each line that is not blank.
+   * @throws IOException if an I/O error occurs or if a line has no field for the column.
+   * @throws IllegalArgumentException if the column is negative.
+   */
+  public int[] encodeColumn(Path path, byte separator, int column, boolean skipHeader)
+      throws IOException {
+    return encodeColumn(path, separator, column, skipHeader, MAP_SIZE);
+  }
+
+  // the size of the windows is a parameter for the tests
+  int[] encodeColumn(Path path, byte separator, int column, boolean skipHeader, long mapSize)
+      throws IOException {
+    Objects.requireNonNull(path);
+    if (column < 0) {
+      throw new IllegalArgumentException("column < 0");
+    }
+    codes = new int[1_024];
+    codeCount = 0;
+    lineNumber = 1;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; ) {
+        long windowSize = Math.min(mapSize, size - position);
+        boolean last = position + windowSize == size;
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+        int end = encodeWindow(window, last, separator, column, skipHeader);
+        if (end == 0 && !last) { // a line is bigger than the window
+          if (mapSize == Integer.MAX_VALUE) {
+            throw new IOException("line " + lineNumber + " is too long");
+          }
+          mapSize = Math.min(mapSize << 1, Integer.MAX_VALUE);
+          continue;
+        }
+        position += end;
+      }
+    }
+    int[] result = Arrays.copyOf(codes, codeCount);
+    codes = null;
+    return result;
+  }
+
+  /**
+   * Encodes the complete lines of a window (all the lines if the window is the last one) and
+   * returns the offset of the first line not encoded.
+   */
+  private int encodeWindow(
+      ByteBuffer window, boolean last, byte separator, int column, boolean skipHeader)
+      throws IOException {
+    int limit = window.limit();
+    int batchCount = 0;
+    int start = 0;
+    while (start < limit) {
+      int newline = indexOf(window, start, limit, (byte) '\n');
+      if (newline == -1 && !last) {
+        break; // the line continues in the next window
+      }
+      int lineStart = start;
+      int lineEnd = (newline == -1) ? limit : newline;
+      start = lineEnd + 1;
+      long lineNumber = this.lineNumber++;
+      if (skipHeader && lineNumber == 1) {
+        continue;
+      }
+      if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      if (lineEnd == lineStart) { // blank line
+        continue;
+      }
+      int fieldStart = lineStart;
+      for (int i = 0; i < column; i++) {
+        int index = indexOf(window, fieldStart, lineEnd, separator);
+        if (index == -1) {
+          throw new IOException("line " + lineNumber + " has no column " + column);
+        }
+        fieldStart = index + 1;
+      }
+      int fieldEnd = indexOf(window, fieldStart, lineEnd, separator);
+      fieldStarts[batchCount] = fieldStart;
+      fieldEnds[batchCount] = (fieldEnd == -1) ? lineEnd : fieldEnd;
+      if (++batchCount == BATCH_SIZE) {
+        encodeBatch(window, batchCount);
+        batchCount = 0;
+      }
+    }
+    encodeBatch(window, batchCount);
+    return Math.min(start, limit);
+  }
+
+  /** Encodes the fields of a batch, the field are matched in place in the window. */
+  private void encodeBatch(ByteBuffer window, int batchCount) {
+    if (codeCount + batchCount > codes.length) {
+      codes = Arrays.copyOf(codes, Math.max(codes.length << 1, codeCount + batchCount));
+    }
+    ByteBuffer field = window.duplicate();
+    for (int i = 0; i < batchCount; i++) {
+      field.limit(fieldEnds[i]);
+      field.position(fieldStarts[i]);
+      int code = knownBufferSwitch.byteSwitch(field);
+      if (code == ByteBufferSwitch.NO_MATCH) {
+        code = encodeUnknown(field);
+      }
+      codes[codeCount++] = code;
+    }
+  }
+
+  private static int indexOf(ByteBuffer buffer, int start, int end, byte value) {
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
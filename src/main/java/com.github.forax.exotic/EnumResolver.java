@@ -0,0 +1,117 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Resolve the constant of an enum from its name, like {@link Enum#valueOf(Class, String)} but
+ * faster, returning null instead of throwing an exception if there is no constant with that name,
+ * and with the possibility to {@link Options#ignoreCase() ignore the case} of the names or to add
+ * {@link Options#alias(String, Enum) aliases}.
+ *
+ * <pre>
+ * private static final EnumResolver&lt;TimeUnit&gt; TIME_UNITS =
+ *     EnumResolver.of(
+ *         TimeUnit.class, options -&gt; options.ignoreCase().alias("ms", TimeUnit.MILLISECONDS));
+ *
+ * public static TimeUnit timeUnit(String name) {
+ *   return TIME_UNITS.resolve(name);  // "seconds", "MS", etc.
+ * }
+ * </pre>
+ *
+ * The names already seen are recognized by an inlining cache that returns the enum constant as a
+ * constant, the other names are found using a perfect hash, in both cases, a name that doesn't
+ * match doesn't allocate.
+ *
+ * @param <E> the type of the enum.
+ */
+@FunctionalInterface
+public interface EnumResolver<E extends Enum<E>> {
+  /**
+   * Returns the enum constant with the name or the alias {@code name} or null if no constant
+   * match.
+   *
+   * @param name the name of the constant.
+   * @return the enum constant or null if no constant match.
+   * @throws NullPointerException if {@code name} is null.
+   */
+  E resolve(String name);
+
+  /**
+   * The options used to configure an enum resolver.
+   *
+   * @param <E> the type of the enum.
+   * @see EnumResolver#of(Class, Consumer)
+   */
+  interface Options<E extends Enum<E>> {
+    /**
+     * Compare the names ignoring the case, the same way {@link String#equalsIgnoreCase(String)}
+     * does.
+     *
+     * @return itself so calls to the options can be chained.
+     * @see StringSwitch#createCaseInsensitive(boolean, String...)
+     */
+    Options<E> ignoreCase();
+
+    /**
+     * Add another name for an enum constant.
+     *
+     * @param alias the other name of the constant.
+     * @param constant the enum constant.
+     * @return itself so calls to the options can be chained.
+     * @throws NullPointerException if {@code alias} or {@code constant} is null.
+     * @throws IllegalStateException if {@code alias} is already a name or an alias.
+     */
+    Options<E> alias(String alias, E constant);
+  }
+
+  /**
+   * Creates an enum resolver that resolves the names of the constants of an enum.
+   *
+   * @param <E> the type of the enum.
+   * @param enumType the class of the enum.
+   * @return a new enum resolver.
+   * @throws NullPointerException if {@code enumType} is null.
+   * @throws IllegalArgumentException if {@code enumType} is not an enum.
+   */
+  static <E extends Enum<E>> EnumResolver<E> of(Class<E> enumType) {
+    return of(enumType, __ -> {});
+  }
+
+  /**
+   * Creates an enum resolver that resolves the names of the constants of an enum, configured by
+   * the {@code optionsConsumer}.
+   *
+   * @param <E> the type of the enum.
+   * @param enumType the class of the enum.
+   * @param optionsConsumer a function that configures the options.
+   * @return a new enum resolver.
+   * @throws NullPointerException if {@code enumType} or {@code optionsConsumer} is null.
+   * @throws IllegalArgumentException if {@code enumType} is not an enum.
+   * @throws IllegalStateException if two names or aliases are equal ignoring case and the case is
+   *     ignored.
+   */
+  static <E extends Enum<E>> EnumResolver<E> of(
+      Class<E> enumType, Consumer<? super Options<E>> optionsConsumer) {
+    if (!enumType.isEnum()) {
+      throw new IllegalArgumentException(enumType.getName() + " is not an enum");
+    }
+    Objects.requireNonNull(optionsConsumer);
+    EnumResolverOptions<E> options = new EnumResolverOptions<>(enumType);
+    optionsConsumer.accept(options);
+    MethodHandle mh =
+        StringMapCallSite.create(
+                EnumResolver.class, Object.class, options.names, null, options.ignoreCase)
+            .dynamicInvoker();
+    return name -> {
+      try {
+        @SuppressWarnings("unchecked")
+        E constant = (E) (Object) mh.invokeExact(name);
+        return constant;
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,32 @@
+package com.github.forax.exotic;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/** The options of an {@link EnumResolver}, the names and the aliases of the enum constants. */
+final class EnumResolverOptions<E extends Enum<E>> implements EnumResolver.Options<E> {
+  final LinkedHashMap<String, E> names = new LinkedHashMap<>();
+  boolean ignoreCase;
+
+  EnumResolverOptions(Class<E> enumType) {
+    for (E constant : enumType.getEnumConstants()) {
+      names.put(constant.name(), constant);
+    }
+  }
+
+  @Override
+  public EnumResolver.Options<E> ignoreCase() {
+    ignoreCase = true;
+    return this;
+  }
+
+  @Override
+  public EnumResolver.Options<E> alias(String alias, E constant) {
+    Objects.requireNonNull(alias);
+    Objects.requireNonNull(constant);
+    if (names.putIfAbsent(alias, constant) != null) {
+      throw new IllegalStateException("alias " + alias + " is already a name or an alias");
+    }
+    return this;
+  }
+}
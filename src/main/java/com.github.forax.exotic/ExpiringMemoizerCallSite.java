@@ -0,0 +1,261 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.github.forax.exotic.ConstantMemoizer.InliningCacheCallSite;
+
+/**
+ * A memoizer that forgets or refreshes an entry once a duration has elapsed since the value was
+ * computed.
+ *
+ * <p>Each entry is a call site that returns its value as a constant, the first {@code maxDepth}
+ * entries are inlined as a cascade of {@code if equals else} in front of a hash table. Reading an
+ * entry never checks the time, a background thread sweeps the entries periodically, removes the
+ * entries that have expired and submits the values that should be refreshed to the common
+ * fork/join pool, so a slow function never delays the other memoizers sharing the {@link
+ * DaemonScheduler}. The refreshed values are published by the next sweep, all the call sites
+ * changed by a sweep are published with one call to {@link MutableCallSite#syncAll}.
+ *
+ * <p>Because the entries are swept periodically, an entry can be seen a little after its
+ * expiration or its refresh, at most the duration between two sweeps. If only the refresh is
+ * configured ({@code expireAfterWrite == 0}), the entries are never removed.
+ *
+ * <p>An exception thrown by a sweep is reported to the uncaught exception handler of the scheduler
+ * thread, the next sweeps are still done.
+ */
+final class ExpiringMemoizerCallSite extends MutableCallSite {
+  private static final MethodHandle LOOKUP;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      LOOKUP =
+          lookup.findVirtual(
+              ExpiringMemoizerCallSite.class, "lookup", methodType(Object.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final long MIN_SWEEP_PERIOD = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final class Entry extends MutableCallSite {
+    final Object key;
+    volatile Object value;
+    volatile long writeTime;
+    volatile boolean refreshing; // a refresh has been submitted and not yet published
+    volatile Object refreshed; // the value computed by the refresh, null if not yet computed
+    boolean inlined; // guarded by the memoizer call site lock
+
+    Entry(Class<?> valueClass, Object key, Object value, long writeTime) {
+      super(methodType(valueClass));
+      this.key = key;
+      update(value, writeTime);
+    }
+
+    void update(Object value, long writeTime) {
+      this.value = value;
+      this.writeTime = writeTime;
+      setTarget(constant(type().returnType(), value));
+    }
+  }
+
+  /** Sweep a memoizer periodically, the memoizer is referenced weakly. */
+  private static final class Sweeper implements Runnable {
+    private final WeakReference<ExpiringMemoizerCallSite> callSiteRef;
+    volatile ScheduledFuture<?> future;
+
+    Sweeper(ExpiringMemoizerCallSite callSite) {
+      this.callSiteRef = new WeakReference<>(callSite);
+    }
+
+    @Override
+    public void run() {
+      ExpiringMemoizerCallSite callSite = callSiteRef.get();
+      if (callSite == null) { // the memoizer is not used anymore
+        future.cancel(false);
+        return;
+      }
+      try {
+        callSite.sweep();
+      } catch (Throwable e) {
+        // an exception escaping run() would cancel all the next sweeps, so only report it
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+      }
+    }
+  }
+
+  private final Function<Object, Object> function;
+  private final int maxDepth;
+  private final long expireAfterWrite; // 0 means never
+  private final long refreshAfterWrite; // 0 means never
+  private final ConcurrentHashMap<Object, Entry> map = new ConcurrentHashMap<>();
+  private final MethodHandle lookupTarget;
+  private final CallSiteStats stats = CallSiteStats.create(ConstantMemoizer.class);
+
+  // guarded by this
+  private final ArrayList<Entry> inlined = new ArrayList<>();
+  private boolean megamorphic;
+
+  @SuppressWarnings("unchecked")
+  ExpiringMemoizerCallSite(
+      MethodType type,
+      Function<?, ?> function,
+      int maxDepth,
+      long expireAfterWrite,
+      long refreshAfterWrite) {
+    super(type);
+    this.function = (Function<Object, Object>) function;
+    this.maxDepth = maxDepth;
+    this.expireAfterWrite = expireAfterWrite;
+    this.refreshAfterWrite = refreshAfterWrite;
+    MethodHandle lookupTarget = LOOKUP.bindTo(this).asType(type);
+    this.lookupTarget = lookupTarget;
+    setTarget(lookupTarget);
+
+    long period =
+        Math.max(
+            MIN_SWEEP_PERIOD,
+            Math.min(
+                    (expireAfterWrite == 0) ? Long.MAX_VALUE : expireAfterWrite,
+                    (refreshAfterWrite == 0) ? Long.MAX_VALUE : refreshAfterWrite)
+                / 8);
+    Sweeper sweeper = new Sweeper(this);
+    sweeper.future =
+        DaemonScheduler.SCHEDULER.scheduleAtFixedRate(
+            sweeper, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  @SuppressWarnings("unused")
+  private Object lookup(Object key) {
+    Entry entry = map.get(key);
+    if (entry != null) {
+      return entry.value;
+    }
+    long start = stats.enter();
+    try {
+      // call the function outside of the lock, the function may be recursive
+      Object value = Objects.requireNonNull(function.apply(key));
+      return insert(key, value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private synchronized Object insert(Object key, Object value) {
+    Entry entry = map.get(key);
+    if (entry != null) { // inserted by another thread
+      return entry.value;
+    }
+    entry = new Entry(type().returnType(), key, value, System.nanoTime());
+    map.put(key, entry);
+    if (inlined.size() < maxDepth) {
+      entry.inlined = true;
+      inlined.add(entry);
+      relink();
+    } else if (!megamorphic) {
+      megamorphic = true;
+      stats.megamorphic();
+    }
+    return value;
+  }
+
+  private void relink() {
+    MethodType type = type();
+    Class<?> keyClass = type.parameterType(0);
+    MethodHandle target = lookupTarget;
+    for (int i = inlined.size(); --i >= 0; ) {
+      Entry entry = inlined.get(i);
+      target =
+          guardWithTest(
+              InliningCacheCallSite.guard(keyClass, entry.key),
+              dropArguments(entry.dynamicInvoker(), 0, keyClass),
+              target);
+    }
+    setTarget(target);
+    stats.relink(inlined.size());
+  }
+
+  private void refresh(Entry entry) {
+    Object value = null;
+    try {
+      value = Objects.requireNonNull(function.apply(entry.key));
+    } catch (RuntimeException e) {
+      // keep the old value until it expires
+    } finally {
+      if (value != null) {
+        entry.refreshed = value; // published by the next sweep
+      } else {
+        entry.refreshing = false;
+      }
+    }
+  }
+
+  void sweep() {
+    ArrayList<MutableCallSite> changed = new ArrayList<>();
+    ArrayList<Entry> expired = new ArrayList<>();
+    for (Entry entry : map.values()) {
+      Object refreshed = entry.refreshed;
+      if (refreshed != null) {
+        entry.refreshed = null;
+        entry.refreshing = false;
+        entry.update(refreshed, System.nanoTime());
+        changed.add(entry);
+        continue;
+      }
+      long elapsed = System.nanoTime() - entry.writeTime;
+      if (refreshAfterWrite != 0 && elapsed >= refreshAfterWrite && !entry.refreshing) {
+        // never call the function on the scheduler thread, it is shared by all the memoizers
+        entry.refreshing = true;
+        try {
+          ForkJoinPool.commonPool().execute(() -> refresh(entry));
+        } catch (RejectedExecutionException e) {
+          entry.refreshing = false; // try again at the next sweep
+        }
+      }
+      if (expireAfterWrite != 0 && elapsed >= expireAfterWrite) {
+        expired.add(entry);
+      }
+    }
+    if (!expired.isEmpty()) {
+      synchronized (this) {
+        boolean relink = false;
+        for (Entry entry : expired) {
+          map.remove(entry.key, entry);
+          if (entry.inlined) {
+            entry.inlined = false;
+            inlined.remove(entry);
+            relink = true;
+          }
+        }
+        if (relink) {
+          relink();
+          changed.add(this);
+        }
+      }
+    }
+    if (!changed.isEmpty()) {
+      MutableCallSite.syncAll(changed.toArray(new MutableCallSite[0]));
+      CallSiteEvents.INSTANCE.syncAll(ConstantMemoizer.class, changed.size());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.github.forax.exotic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Define classes at runtime, using {@code Lookup.defineHiddenClass} (Java 15+) or {@code
+ * Unsafe.defineAnonymousClass} (Java < 15), both are called by reflection so this class can be
+ * compiled with Java 8.
+ */
+final class HiddenClasses {
+  private HiddenClasses() {
+    throw new AssertionError();
+  }
+
+  private static final Object[] STRONG_CLASS_OPTIONS;
+  private static final Object[] CLASS_OPTIONS;
+  private static final Method DEFINE_HIDDEN_CLASS;
+  private static final Object UNSAFE;
+  private static final Method DEFINE_ANONYMOUS_CLASS;
+
+  static {
+    Object[] strongClassOptions = null;
+    Object[] classOptions = null;
+    Method defineHiddenClass = null;
+    Object unsafe = null;
+    Method defineAnonymousClass = null;
+    try {
+      // check defineHiddenClass (Java 15+)
+      Class<?> classOptionClass =
+          Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+      strongClassOptions = (Object[]) Array.newInstance(classOptionClass, 2);
+      strongClassOptions[0] = classOptionClass.getField("NESTMATE").get(null);
+      strongClassOptions[1] = classOptionClass.getField("STRONG").get(null);
+      classOptions = (Object[]) Array.newInstance(classOptionClass, 1);
+      classOptions[0] = strongClassOptions[0];
+      defineHiddenClass =
+          Lookup.class.getMethod(
+              "defineHiddenClass", byte[].class, boolean.class, classOptions.getClass());
+    } catch (ClassNotFoundException
+        | NoSuchFieldException
+        | IllegalAccessException
+        | NoSuchMethodException e) {
+      // check if Unsafe is available and use defineAnonymousClass (Java < 15)
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        defineAnonymousClass =
+            unsafeClass.getMethod(
+                "defineAnonymousClass", Class.class, byte[].class, Object[].class);
+        unsafe = unsafeField.get(null);
+      } catch (ClassNotFoundException
+          | NoSuchFieldException
+          | NoSuchMethodException
+          | IllegalAccessException e2) {
+        throw new AssertionError(e2);
+      }
+    }
+    STRONG_CLASS_OPTIONS = strongClassOptions;
+    CLASS_OPTIONS = classOptions;
+    DEFINE_HIDDEN_CLASS = defineHiddenClass;
+    UNSAFE = unsafe;
+    DEFINE_ANONYMOUS_CLASS = defineAnonymousClass;
+  }
+
+  /**
+   * Defines a class from its bytecode in the package of the lookup class.
+   *
+   * @param lookup a lookup with full privilege access used to define a hidden class.
+   * @param hostClass the host class used to define an anonymous class.
+   * @param data the bytecode of the class.
+   * @param strong true if the class should live as long as the class loader of the lookup class,
+   *     false if the class can be unloaded once it is not reachable anymore, by example for a class
+   *     created per instance. An anonymous class is always unloadable.
+   * @return a lookup that can access the public and package private members of the new class.
+   */
+  static Lookup define(Lookup lookup, Class<?> hostClass, byte[] data, boolean strong) {
+    try {
+      if (DEFINE_HIDDEN_CLASS != null) {
+        Object[] classOptions = strong ? STRONG_CLASS_OPTIONS : CLASS_OPTIONS;
+        return (Lookup) DEFINE_HIDDEN_CLASS.invoke(lookup, data, true, classOptions);
+      }
+      Class<?> impl = (Class<?>) DEFINE_ANONYMOUS_CLASS.invoke(UNSAFE, hostClass, data, null);
+      return lookup.in(impl);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    } catch (InvocationTargetException e) {
+      throw Thrower.rethrow(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the bytecode of a class compiled with the library, used as a template to define
+   * several classes with the same code.
+   *
+   * @param template a class of the library.
+   * @return the content of the class file of the class.
+   */
+  static byte[] bytecode(Class<?> template) {
+    String name = "/" + template.getName().replace('.', '/') + ".class";
+    try (InputStream input = template.getResourceAsStream(name)) {
+      byte[] buffer = new byte[8192];
+      int total = 0;
+      int read;
+      while ((read = input.read(buffer, total, buffer.length - total)) != -1) {
+        total += read;
+        if (total == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length << 1);
+        }
+      }
+      return Arrays.copyOf(buffer, total);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.github.forax.exotic;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A hash table using open addressing (linear probing) that compares the keys using {@code ==}
+ * instead of {@code equals}, like {@link java.util.IdentityHashMap}.
+ *
+ * <p>The keys that are classes are not stored in the table but in a {@link ClassValue}, so the
+ * table doesn't prevent their class loader to be collected.
+ *
+ * @see OpenAddressingTable
+ */
+final class IdentityKeyTable extends OpenAddressingTable<Object[]> {
+  private final Function<Object, ?> function;
+  private final ClassValue<Object> classValue;
+
+  @SuppressWarnings("unchecked")
+  IdentityKeyTable(Function<?, ?> function) {
+    super(Object[]::new);
+    Function<Object, ?> fun = (Function<Object, ?>) function;
+    this.function = fun;
+    this.classValue =
+        new ClassValue<Object>() {
+          @Override
+          protected Object computeValue(Class<?> type) {
+            return Objects.requireNonNull(fun.apply(type));
+          }
+        };
+  }
+
+  private static int hash(Object key) {
+    int hash = System.identityHashCode(key);
+    return hash ^ (hash >>> 16);
+  }
+
+  @Override
+  int hashAt(Object[] keys, int index) {
+    return hash(keys[index]);
+  }
+
+  @Override
+  void copyKey(Object[] keys, int index, Object[] newKeys, int newIndex) {
+    newKeys[newIndex] = keys[index];
+  }
+
+  Object get(Object key) {
+    if (key instanceof Class<?>) {
+      return classValue.get((Class<?>) key);
+    }
+    Table<Object[]> table = table();
+    Object[] keys = table.keys;
+    AtomicReferenceArray<Object> values = table.values;
+    int mask = table.mask;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object value = values.get(i);
+      if (value == null) {
+        // call the function outside of the lock, the function may be recursive
+        return insert(key, Objects.requireNonNull(function.apply(key)));
+      }
+      if (keys[i] == key) {
+        return value;
+      }
+    }
+  }
+
+  private synchronized Object insert(Object key, Object value) {
+    Table<Object[]> table = tableForInsert();
+    Object[] keys = table.keys;
+    AtomicReferenceArray<Object> values = table.values;
+    int mask = table.mask;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object existing = values.get(i);
+      if (existing == null) {
+        keys[i] = key;
+        publish(table, i, value);
+        return value;
+      }
+      if (keys[i] == key) { // inserted by another thread
+        return existing;
+      }
+    }
+  }
+}
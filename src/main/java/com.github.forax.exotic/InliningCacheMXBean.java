@@ -0,0 +1,68 @@
+package com.github.forax.exotic;
+
+/**
+ * Statistics of an inlining cache, the tree of method handles created by a {@link
+ * ConstantMemoizer}, a {@link StringSwitch}, a {@link TypeSwitch}, a {@link Visitor} or a {@link
+ * StructuralCall} to recognize the values already seen.
+ *
+ * <p>The statistics are only collected if the system property {@value #ENABLE_PROPERTY} is set to
+ * {@code true} when the library is initialized, in that case, one MXBean is registered in the
+ * {@link java.lang.management.ManagementFactory#getPlatformMBeanServer() platform MBean server}
+ * for each instance of the classes above with the object name {@code
+ * com.github.forax.exotic:type=InliningCache,kind=kind,id=id}. The MXBean of an instance that has
+ * been garbage collected is unregistered the next time an MXBean is registered, the statistics
+ * should still only be enabled to diagnose an application.
+ *
+ * <p>When the statistics are not enabled, the code of the inlining caches is unchanged, only the
+ * code that runs when a new value is seen checks if the statistics are enabled.
+ */
+public interface InliningCacheMXBean {
+  /** Name of the system property that enables the statistics. */
+  String ENABLE_PROPERTY = "com.github.forax.exotic.stats";
+
+  /**
+   * Returns the kind of the inlining cache, the simple name of the class that created it.
+   *
+   * @return the kind of the inlining cache.
+   */
+  String getKind();
+
+  /**
+   * Returns the number of times the inlining cache has been called with a value not already
+   * recognized.
+   *
+   * @return the number of calls to the fallback.
+   */
+  long getFallbackCount();
+
+  /**
+   * Returns the total time spent in the fallback, this includes the time to compute the result for
+   * the new value.
+   *
+   * @return the time spent in the fallback in nanoseconds.
+   */
+  long getFallbackTime();
+
+  /**
+   * Returns the number of times the inlining cache has been re-linked, each re-link may
+   * de-optimize the codes that use the inlining cache.
+   *
+   * @return the number of re-links.
+   */
+  long getRelinkCount();
+
+  /**
+   * Returns the number of values currently recognized by the tests of the inlining cache.
+   *
+   * @return the depth of the inlining cache.
+   */
+  int getDepth();
+
+  /**
+   * Returns true if the inlining cache has stopped to add new tests and uses a generic strategy
+   * (a hash table by example) instead.
+   *
+   * @return true if the inlining cache is megamorphic.
+   */
+  boolean isMegamorphic();
+}
@@ -0,0 +1,88 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An IntSwitch allows to encode a switch on int values known at runtime (opcodes, error codes,
+ * message ids, etc) as a plain old switch on the indexes of the values. For that, an IntSwitch is
+ * {@link #create(int...) created} with an array of ints and will find for an int the index of the
+ * same int in the array.
+ *
+ * <pre>
+ * private static final IntSwitch OPCODE_SWITCH = IntSwitch.create(config.loadOpcodes());
+ *
+ * public static void execute(int opcode) {
+ *   switch(OPCODE_SWITCH.intSwitch(opcode)) {
+ *   case 0:
+ *     ...
+ *   case 1:
+ *     ...
+ *   default: // IntSwitch.NO_MATCH
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * The values already seen are recognized by an inlining cache, the other values are found using a
+ * jump table if the ints of the array are dense or using a perfect hash otherwise.
+ *
+ * @see LongSwitch
+ */
+@FunctionalInterface
+public interface IntSwitch {
+  /**
+   * Returns the index of {@code value} in {@code intcases}.
+   *
+   * @param value the value.
+   * @return the index of {@code value} in the array or {@link #NO_MATCH} if no int match.
+   * @see #create(int...)
+   */
+  int intSwitch(int value);
+
+  /**
+   * Stores in {@code indexes} the index returned by {@link #intSwitch(int)} for each int of {@code
+   * values} from {@code from} (inclusive) to {@code to} (exclusive), the index of {@code values[i]}
+   * is stored in {@code indexes[i]}.
+   *
+   * <p>The loop calls {@link #intSwitch(int)} of the same IntSwitch, so if the IntSwitch is a
+   * constant (stored in a static final field), the JIT sees one hot loop around the inlining cache.
+   *
+   * @param values an array of ints.
+   * @param indexes the array of the indexes.
+   * @param from the index of the first int, inclusive.
+   * @param to the index of the last int, exclusive.
+   * @throws NullPointerException if {@code values} or {@code indexes} is null.
+   * @throws IndexOutOfBoundsException if the range is not inside the two arrays.
+   * @see StringSwitch#stringSwitch(String[], int[], int, int)
+   */
+  default void intSwitch(int[] values, int[] indexes, int from, int to) {
+    BatchSwitches.checkRange(values.length, indexes.length, from, to);
+    for (int i = from; i < to; i++) {
+      indexes[i] = intSwitch(values[i]);
+    }
+  }
+
+  /** Return value of {@link #intSwitch(int)} that indicates that no match is found. */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /**
+   * Creates an IntSwitch that returns for an int the index in the {@code intcases} array or {@link
+   * #NO_MATCH} if no int match.
+   *
+   * @param intcases an array of ints.
+   * @return an IntSwitch configured with the array of intcases.
+   * @throws NullPointerException is {@code intcases is null}.
+   * @throws IllegalStateException if the same int appears several times in the array.
+   * @see #intSwitch(int)
+   */
+  static IntSwitch create(int... intcases) {
+    MethodHandle mh = IntSwitchCallSite.create(intcases).dynamicInvoker();
+    return value -> {
+      try {
+        return (int) mh.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,196 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * The inlining cache of an {@link IntSwitch} or a {@link LongSwitch}, the ints are widened to
+ * longs so the same code is used for both.
+ *
+ * <p>The values already seen are checked with {@code ==}, once the inlining cache is megamorphic
+ * or once all the cases have been seen (if there are more than a few cases), a jump table indexed
+ * by {@code value - min} is used if the cases are dense enough, otherwise a perfect hash is used.
+ */
+class IntSwitchCallSite extends MutableCallSite {
+  private static final int NO_MATCH = IntSwitch.NO_MATCH;
+  private static final MethodHandle FALLBACK, EQUALS, DENSE_INDEX_OF, HASH_INDEX_OF;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK =
+          lookup.findVirtual(
+              IntSwitchCallSite.class, "fallback", methodType(int.class, long.class));
+      EQUALS =
+          lookup.findStatic(
+              IntSwitchCallSite.class, "equals", methodType(boolean.class, long.class, long.class));
+      DENSE_INDEX_OF =
+          lookup.findStatic(
+              IntSwitchCallSite.class,
+              "denseIndexOf",
+              methodType(int.class, int[].class, long.class, long.class, long.class));
+      HASH_INDEX_OF =
+          lookup.findStatic(
+              IntSwitchCallSite.class,
+              "hashIndexOf",
+              methodType(int.class, PerfectHash.class, long[].class, long.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 32;
+  private static final int MAX_CASCADE_LENGTH = 8;
+
+  private final int depth;
+  private final IntSwitchCallSite callsite;
+  private final long[] cases;
+  private final PerfectHash perfectHash;
+  private final MethodHandle indexOf; // (long)int, dense jump table or perfect hash
+  private final CallSiteStats stats;
+
+  private IntSwitchCallSite(
+      MethodType type,
+      int depth,
+      IntSwitchCallSite callsite,
+      long[] cases,
+      PerfectHash perfectHash,
+      MethodHandle indexOf,
+      CallSiteStats stats) {
+    super(type);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.cases = cases;
+    this.perfectHash = perfectHash;
+    this.indexOf = indexOf;
+    this.stats = stats;
+    setTarget(FALLBACK.bindTo(this).asType(type));
+  }
+
+  static IntSwitchCallSite create(int[] intcases) {
+    long[] cases = new long[intcases.length];
+    for (int i = 0; i < intcases.length; i++) {
+      cases[i] = intcases[i];
+    }
+    return create(methodType(int.class, int.class), cases, IntSwitch.class);
+  }
+
+  static IntSwitchCallSite create(long[] longcases) {
+    return create(methodType(int.class, long.class), longcases.clone(), LongSwitch.class);
+  }
+
+  private static IntSwitchCallSite create(MethodType type, long[] cases, Class<?> owner) {
+    HashSet<Long> set = new HashSet<>();
+    int[] hashes = new int[cases.length];
+    for (int i = 0; i < cases.length; i++) {
+      if (!set.add(cases[i])) {
+        throw new IllegalStateException(cases[i] + " value appear more than once");
+      }
+      hashes[i] = Long.hashCode(cases[i]);
+    }
+    PerfectHash perfectHash = PerfectHash.create(hashes);
+    MethodHandle indexOf = createIndexOf(cases, perfectHash);
+    return new IntSwitchCallSite(
+        type, 0, null, cases, perfectHash, indexOf, CallSiteStats.create(owner));
+  }
+
+  private static MethodHandle createIndexOf(long[] cases, PerfectHash perfectHash) {
+    if (cases.length != 0) {
+      long min = Arrays.stream(cases).min().getAsLong();
+      long max = Arrays.stream(cases).max().getAsLong();
+      long range = max - min; // negative if it overflows
+      if (range >= 0 && range < 2L * cases.length) { // at least half of the slots are used
+        int[] table = new int[(int) range + 1];
+        Arrays.fill(table, NO_MATCH);
+        for (int i = 0; i < cases.length; i++) {
+          table[(int) (cases[i] - min)] = i;
+        }
+        return insertArguments(DENSE_INDEX_OF, 0, table, min, max);
+      }
+    }
+    return insertArguments(HASH_INDEX_OF, 0, perfectHash, cases);
+  }
+
+  private static boolean equals(long expected, long value) {
+    return expected == value;
+  }
+
+  static int denseIndexOf(int[] table, long min, long max, long value) {
+    if (value < min || value > max) {
+      return NO_MATCH;
+    }
+    return table[(int) (value - min)];
+  }
+
+  static int hashIndexOf(PerfectHash perfectHash, long[] cases, long value) {
+    int hash = Long.hashCode(value);
+    for (int index = perfectHash.index(hash); index != -1; index = perfectHash.next(index)) {
+      if (cases[index] == value) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(long value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private int link(long value) {
+    int index = hashIndexOf(perfectHash, cases, value);
+    MethodType type = type();
+
+    if (depth == cases.length) {
+      callsite.setTarget(createAllCases().asType(type));
+      stats.relink(cases.length);
+      return index;
+    }
+
+    if (depth == MAX_DEPTH) {
+      callsite.setTarget(indexOf.asType(type));
+      stats.megamorphic();
+      return index;
+    }
+
+    setTarget(
+        guardWithTest(
+            insertArguments(EQUALS, 0, value).asType(type.changeReturnType(boolean.class)),
+            dropArguments(constant(int.class, index), 0, type.parameterType(0)),
+            new IntSwitchCallSite(type, depth + 1, callsite, cases, perfectHash, indexOf, stats)
+                .dynamicInvoker()));
+    stats.link();
+    return index;
+  }
+
+  private MethodHandle createAllCases() {
+    if (cases.length > MAX_CASCADE_LENGTH) {
+      return indexOf;
+    }
+    MethodHandle target = dropArguments(constant(int.class, NO_MATCH), 0, long.class);
+    for (int i = cases.length; --i >= 0; ) {
+      target =
+          guardWithTest(
+              insertArguments(EQUALS, 0, cases[i]),
+              dropArguments(constant(int.class, i), 0, long.class),
+              target);
+    }
+    return target;
+  }
+}
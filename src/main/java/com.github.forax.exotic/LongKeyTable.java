@@ -0,0 +1,70 @@
+package com.github.forax.exotic;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * A hash table using open addressing (linear probing) with primitive keys, int keys are stored as
+ * long.
+ *
+ * @see OpenAddressingTable
+ */
+final class LongKeyTable extends OpenAddressingTable<long[]> {
+  private final LongFunction<?> function;
+
+  LongKeyTable(LongFunction<?> function) {
+    super(long[]::new);
+    this.function = function;
+  }
+
+  private static int hash(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  int hashAt(long[] keys, int index) {
+    return hash(keys[index]);
+  }
+
+  @Override
+  void copyKey(long[] keys, int index, long[] newKeys, int newIndex) {
+    newKeys[newIndex] = keys[index];
+  }
+
+  Object get(long key) {
+    Table<long[]> table = table();
+    long[] keys = table.keys;
+    AtomicReferenceArray<Object> values = table.values;
+    int mask = table.mask;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object value = values.get(i);
+      if (value == null) {
+        // call the function outside of the lock, the function may be recursive
+        return insert(key, Objects.requireNonNull(function.apply(key)));
+      }
+      if (keys[i] == key) {
+        return value;
+      }
+    }
+  }
+
+  private synchronized Object insert(long key, Object value) {
+    Table<long[]> table = tableForInsert();
+    long[] keys = table.keys;
+    AtomicReferenceArray<Object> values = table.values;
+    int mask = table.mask;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      Object existing = values.get(i);
+      if (existing == null) {
+        keys[i] = key;
+        publish(table, i, value);
+        return value;
+      }
+      if (keys[i] == key) { // inserted by another thread
+        return existing;
+      }
+    }
+  }
+}
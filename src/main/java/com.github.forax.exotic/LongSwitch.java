@@ -0,0 +1,45 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A LongSwitch allows to encode a switch on long values known at runtime as a plain old switch on
+ * the indexes of the values, like an {@link IntSwitch}.
+ *
+ * @see IntSwitch
+ */
+@FunctionalInterface
+public interface LongSwitch {
+  /**
+   * Returns the index of {@code value} in {@code longcases}.
+   *
+   * @param value the value.
+   * @return the index of {@code value} in the array or {@link #NO_MATCH} if no long match.
+   * @see #create(long...)
+   */
+  int longSwitch(long value);
+
+  /** Return value of {@link #longSwitch(long)} that indicates that no match is found. */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /**
+   * Creates a LongSwitch that returns for a long the index in the {@code longcases} array or
+   * {@link #NO_MATCH} if no long match.
+   *
+   * @param longcases an array of longs.
+   * @return a LongSwitch configured with the array of longcases.
+   * @throws NullPointerException is {@code longcases is null}.
+   * @throws IllegalStateException if the same long appears several times in the array.
+   * @see #longSwitch(long)
+   */
+  static LongSwitch create(long... longcases) {
+    MethodHandle mh = IntSwitchCallSite.create(longcases).dynamicInvoker();
+    return value -> {
+      try {
+        return (int) mh.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
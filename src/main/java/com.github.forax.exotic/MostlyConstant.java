@@ -74,6 +74,7 @@ public final class MostlyConstant<T> {
     MethodHandle target = constant(type, constant);
     callSite.setTarget(target.asType(callSite.type()));
     MutableCallSite.syncAll(new MutableCallSite[] { callSite });
+    CallSiteEvents.INSTANCE.syncAll(MostlyConstant.class, 1);
   }
 
   /**
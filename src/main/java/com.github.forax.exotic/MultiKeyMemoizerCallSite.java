@@ -0,0 +1,123 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.exactInvoker;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.List;
+import java.util.Objects;
+
+import com.github.forax.exotic.ConstantMemoizer.InliningCacheCallSite;
+
+/**
+ * An inlining cache for a function with 2 to 4 keys, each key is checked by its own guard, so there
+ * is no need to group the keys into one object. Once {@code maxDepth} tuples of keys are inlined,
+ * the other tuples are stored in a {@link MultiKeyTable}.
+ */
+final class MultiKeyMemoizerCallSite extends MutableCallSite {
+  private static final MethodHandle FALLBACK;
+  private static final MethodHandle[] GETS = new MethodHandle[5];
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK =
+          lookup.findVirtual(
+              MultiKeyMemoizerCallSite.class,
+              "fallback",
+              methodType(MethodHandle.class, Object[].class));
+      for (int i = 2; i < GETS.length; i++) {
+        GETS[i] = lookup.findVirtual(MultiKeyTable.class, "get", MethodType.genericMethodType(i));
+      }
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  static final int MAX_ARITY = GETS.length - 1;
+
+  private final int depth;
+  private final int maxDepth;
+  private final MethodHandle function;
+  private final CallSiteStats stats;
+
+  MultiKeyMemoizerCallSite(MethodHandle function, int maxDepth) {
+    this(function, 0, maxDepth, CallSiteStats.create(ConstantMemoizer.class));
+  }
+
+  private MultiKeyMemoizerCallSite(
+      MethodHandle function, int depth, int maxDepth, CallSiteStats stats) {
+    super(function.type());
+    this.depth = depth;
+    this.maxDepth = maxDepth;
+    this.function = function;
+    this.stats = stats;
+    MethodType type = type();
+    setTarget(
+        foldArguments(
+            exactInvoker(type),
+            FALLBACK
+                .bindTo(this)
+                .asCollector(Object[].class, type.parameterCount())
+                .asType(type.changeReturnType(MethodHandle.class))));
+  }
+
+  private Object apply(Object[] keys) {
+    try {
+      return Objects.requireNonNull(function.invokeWithArguments(keys));
+    } catch (Throwable e) {
+      throw Thrower.rethrow(e);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private MethodHandle fallback(Object[] keys) {
+    long start = stats.enter();
+    try {
+      return link(keys);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private MethodHandle link(Object[] keys) {
+    for (Object key : keys) {
+      Objects.requireNonNull(key);
+    }
+    MethodType type = type();
+    if (depth == maxDepth) {
+      // megamorphic, the tuples of keys already seen stay inlined in front of the table
+      MultiKeyTable table = new MultiKeyTable(this::apply);
+      MethodHandle target = GETS[type.parameterCount()].bindTo(table).asType(type);
+      setTarget(target);
+      stats.megamorphic();
+      return target;
+    }
+
+    Object value = apply(keys);
+    List<Class<?>> parameterTypes = type.parameterList();
+    MethodHandle target = dropArguments(constant(type.returnType(), value), 0, parameterTypes);
+    MethodHandle next =
+        new MultiKeyMemoizerCallSite(function, depth + 1, maxDepth, stats).dynamicInvoker();
+    MethodHandle guard = target;
+    for (int i = keys.length; --i >= 0; ) {
+      MethodHandle test =
+          dropArguments(
+              InliningCacheCallSite.guard(parameterTypes.get(i), keys[i]),
+              0,
+              parameterTypes.subList(0, i));
+      guard = guardWithTest(test, guard, next);
+    }
+    setTarget(guard);
+    stats.link();
+    return target;
+  }
+}
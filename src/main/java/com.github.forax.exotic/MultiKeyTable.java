@@ -0,0 +1,127 @@
+package com.github.forax.exotic;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A hash table with 2 to 4 keys compared using {@code equals}, the lookup methods take the keys as
+ * separate arguments so there is no need to allocate an object that groups the keys.
+ *
+ * <p>The buckets contain immutable linked entries, the lookup is lock free, an insertion is done
+ * under a lock and publishes a new entry at the head of its bucket. When the table is resized, a
+ * new array of buckets is created and published at once.
+ */
+final class MultiKeyTable {
+  private static final class Entry {
+    final int hash;
+    final Object[] keys;
+    final Object value;
+    final Entry next;
+
+    Entry(int hash, Object[] keys, Object value, Entry next) {
+      this.hash = hash;
+      this.keys = keys;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  private final Function<Object[], ?> function;
+  private volatile AtomicReferenceArray<Entry> buckets = new AtomicReferenceArray<>(16);
+  private int size; // guarded by this
+
+  MultiKeyTable(Function<Object[], ?> function) {
+    this.function = function;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  Object get(Object key1, Object key2) {
+    int hash = spread(key1.hashCode() * 31 + key2.hashCode());
+    AtomicReferenceArray<Entry> buckets = this.buckets;
+    for (Entry entry = buckets.get(hash & (buckets.length() - 1));
+        entry != null;
+        entry = entry.next) {
+      Object[] keys = entry.keys;
+      if (entry.hash == hash && keys[0].equals(key1) && keys[1].equals(key2)) {
+        return entry.value;
+      }
+    }
+    return insert(hash, new Object[] {key1, key2});
+  }
+
+  Object get(Object key1, Object key2, Object key3) {
+    int hash = spread((key1.hashCode() * 31 + key2.hashCode()) * 31 + key3.hashCode());
+    AtomicReferenceArray<Entry> buckets = this.buckets;
+    for (Entry entry = buckets.get(hash & (buckets.length() - 1));
+        entry != null;
+        entry = entry.next) {
+      Object[] keys = entry.keys;
+      if (entry.hash == hash
+          && keys[0].equals(key1)
+          && keys[1].equals(key2)
+          && keys[2].equals(key3)) {
+        return entry.value;
+      }
+    }
+    return insert(hash, new Object[] {key1, key2, key3});
+  }
+
+  Object get(Object key1, Object key2, Object key3, Object key4) {
+    int hash =
+        spread(
+            ((key1.hashCode() * 31 + key2.hashCode()) * 31 + key3.hashCode()) * 31
+                + key4.hashCode());
+    AtomicReferenceArray<Entry> buckets = this.buckets;
+    for (Entry entry = buckets.get(hash & (buckets.length() - 1));
+        entry != null;
+        entry = entry.next) {
+      Object[] keys = entry.keys;
+      if (entry.hash == hash
+          && keys[0].equals(key1)
+          && keys[1].equals(key2)
+          && keys[2].equals(key3)
+          && keys[3].equals(key4)) {
+        return entry.value;
+      }
+    }
+    return insert(hash, new Object[] {key1, key2, key3, key4});
+  }
+
+  private Object insert(int hash, Object[] keys) {
+    // call the function outside of the lock, the function may be recursive
+    Object value = Objects.requireNonNull(function.apply(keys));
+    synchronized (this) {
+      AtomicReferenceArray<Entry> buckets = this.buckets;
+      int index = hash & (buckets.length() - 1);
+      Entry head = buckets.get(index);
+      for (Entry entry = head; entry != null; entry = entry.next) {
+        if (entry.hash == hash && Arrays.equals(entry.keys, keys)) {
+          return entry.value; // inserted by another thread
+        }
+      }
+      buckets.set(index, new Entry(hash, keys, value, head));
+      if (++size > buckets.length() - (buckets.length() >> 2)) {
+        this.buckets = resize(buckets);
+      }
+      return value;
+    }
+  }
+
+  private static AtomicReferenceArray<Entry> resize(AtomicReferenceArray<Entry> buckets) {
+    AtomicReferenceArray<Entry> newBuckets = new AtomicReferenceArray<>(buckets.length() << 1);
+    int mask = newBuckets.length() - 1;
+    for (int i = 0; i < buckets.length(); i++) {
+      for (Entry entry = buckets.get(i); entry != null; entry = entry.next) {
+        int index = entry.hash & mask;
+        newBuckets.lazySet(
+            index, new Entry(entry.hash, entry.keys, entry.value, newBuckets.get(index)));
+      }
+    }
+    return newBuckets;
+  }
+}
@@ -0,0 +1,95 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An ObjectSwitch allows to encode a switch on value objects (a currency pair, a composite key,
+ * etc) as a plain old switch on integers. For that, an ObjectSwitch is {@link #create(boolean,
+ * Object...) created} with an array of objects and will find for an object the index of the equal
+ * object in the array.
+ *
+ * <pre>
+ * private static final ObjectSwitch&lt;CurrencyPair&gt; PAIR_SWITCH =
+ *     ObjectSwitch.create(false, new CurrencyPair("EUR", "USD"), new CurrencyPair("USD", "JPY"));
+ *
+ * public static double spread(CurrencyPair pair) {
+ *   switch(PAIR_SWITCH.objectSwitch(pair)) {
+ *   case 0:
+ *     return 0.0001;
+ *   case 1:
+ *     return 0.01;
+ *   default: // ObjectSwitch.NO_MATCH
+ *     return 0.1;
+ *   }
+ * }
+ * </pre>
+ *
+ * The objects are compared using {@link Object#equals(Object)} and {@link Object#hashCode()} or
+ * using an {@link ObjectSupport} if one is {@link #create(boolean, ObjectSupport, Object...)
+ * provided}. The objects already seen are recognized by an inlining cache that keeps a reference
+ * on them, so the objects should be immutable, the other objects are found using a perfect hash.
+ *
+ * @param <T> the type of the objects.
+ */
+@FunctionalInterface
+public interface ObjectSwitch<T> {
+  /**
+   * Returns the index of the object in {@code cases} that is equal to {@code value}.
+   *
+   * @param value the value.
+   * @return the index of the object equal to {@code value}, {@value #NULL_MATCH} if {@code value}
+   *     is null or {@link #NO_MATCH} if no object match.
+   * @see #create(boolean, Object...)
+   */
+  int objectSwitch(T value);
+
+  /** Return value of {@link #objectSwitch(Object)} that indicates that no match is found. */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /** Return value of {@link #objectSwitch(Object)} that indicates that null is found. */
+  int NULL_MATCH = StringSwitch.NULL_MATCH;
+
+  /**
+   * Creates an ObjectSwitch that returns for an object the index of the equal object in the {@code
+   * cases} array or {@link #NO_MATCH} if no object match.
+   *
+   * @param <T> the type of the objects.
+   * @param nullMatch true is the ObjectSwitch should allow null.
+   * @param cases an array of objects.
+   * @return an ObjectSwitch configured with the array of cases.
+   * @throws NullPointerException is {@code cases is null} or one object of the array is null.
+   * @throws IllegalStateException if the same object appears several times in the array.
+   */
+  @SafeVarargs
+  static <T> ObjectSwitch<T> create(boolean nullMatch, T... cases) {
+    return create(nullMatch, null, cases);
+  }
+
+  /**
+   * Creates an ObjectSwitch that returns for an object the index of the equal object in the {@code
+   * cases} array or {@link #NO_MATCH} if no object match, the objects are compared using the
+   * {@code support}.
+   *
+   * @param <T> the type of the objects.
+   * @param nullMatch true is the ObjectSwitch should allow null.
+   * @param support the object support used to compare the objects or null to use {@link
+   *     Object#equals(Object)} and {@link Object#hashCode()}.
+   * @param cases an array of objects.
+   * @return an ObjectSwitch configured with the array of cases.
+   * @throws NullPointerException is {@code cases is null} or one object of the array is null.
+   * @throws IllegalStateException if the same object appears several times in the array.
+   */
+  @SafeVarargs
+  static <T> ObjectSwitch<T> create(boolean nullMatch, ObjectSupport<T> support, T... cases) {
+    MethodHandle mh =
+        ObjectSwitchCallSite.wrapNullIfNecessary(
+            nullMatch, ObjectSwitchCallSite.create(cases.clone(), support).dynamicInvoker());
+    return value -> {
+      try {
+        return (int) mh.invokeExact((Object) value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,175 @@
+package com.github.forax.exotic;
+
+import static com.github.forax.exotic.StringSwitch.NO_MATCH;
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Objects;
+
+/**
+ * The inlining cache of an {@link ObjectSwitch}, the strategy is the same as {@link
+ * StringSwitchCallSite}, the guards call {@code equals} on the case objects or {@link
+ * ObjectSupport#equals(Object, Object)} if an object support is provided.
+ */
+class ObjectSwitchCallSite extends MutableCallSite {
+  private static final MethodType OBJECT_TO_INT = methodType(int.class, Object.class);
+  private static final MethodHandle FALLBACK, EQUALS, SUPPORT_EQUALS, INDEX_OF, NULLCHECK;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK = lookup.findVirtual(ObjectSwitchCallSite.class, "fallback", OBJECT_TO_INT);
+      EQUALS = lookup.findVirtual(Object.class, "equals", methodType(boolean.class, Object.class));
+      SUPPORT_EQUALS =
+          lookup.findVirtual(
+              ObjectSupport.class,
+              "equals",
+              methodType(boolean.class, Object.class, Object.class));
+      INDEX_OF =
+          lookup.findStatic(
+              ObjectSwitchCallSite.class,
+              "indexOf",
+              methodType(
+                  int.class, PerfectHash.class, Object[].class, ObjectSupport.class, Object.class));
+      NULLCHECK =
+          lookup.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 32;
+
+  private final int depth;
+  private final ObjectSwitchCallSite callsite;
+  private final Object[] cases;
+  private final ObjectSupport<Object> support; // or null
+  private final PerfectHash perfectHash;
+  private final CallSiteStats stats;
+
+  private ObjectSwitchCallSite(
+      int depth,
+      ObjectSwitchCallSite callsite,
+      Object[] cases,
+      ObjectSupport<Object> support,
+      PerfectHash perfectHash,
+      CallSiteStats stats) {
+    super(OBJECT_TO_INT);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.cases = cases;
+    this.support = support;
+    this.perfectHash = perfectHash;
+    this.stats = stats;
+    setTarget(FALLBACK.bindTo(this));
+  }
+
+  @SuppressWarnings("unchecked")
+  static ObjectSwitchCallSite create(Object[] cases, ObjectSupport<?> objectSupport) {
+    ObjectSupport<Object> support = (ObjectSupport<Object>) objectSupport;
+    int[] hashes = new int[cases.length];
+    for (int i = 0; i < cases.length; i++) {
+      Object objectcase = Objects.requireNonNull(cases[i]);
+      hashes[i] = hash(support, objectcase);
+    }
+    PerfectHash perfectHash = PerfectHash.create(hashes);
+    for (int i = 0; i < cases.length; i++) {
+      // the first case equals to the case is the case itself
+      if (indexOf(perfectHash, cases, support, cases[i]) != i) {
+        throw new IllegalStateException(cases[i] + " value appear more than once");
+      }
+    }
+    return new ObjectSwitchCallSite(
+        0, null, cases, support, perfectHash, CallSiteStats.create(ObjectSwitch.class));
+  }
+
+  private static int hash(ObjectSupport<Object> support, Object value) {
+    return (support == null) ? value.hashCode() : support.hashCode(value);
+  }
+
+  private static boolean equals(ObjectSupport<Object> support, Object objectcase, Object value) {
+    return (support == null) ? objectcase.equals(value) : support.equals(objectcase, value);
+  }
+
+  static int indexOf(
+      PerfectHash perfectHash, Object[] cases, ObjectSupport<Object> support, Object value) {
+    int hash = hash(support, value);
+    for (int index = perfectHash.index(hash); index != -1; index = perfectHash.next(index)) {
+      if (equals(support, cases[index], value)) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(Object value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private int link(Object value) {
+    Objects.requireNonNull(value);
+    int index = indexOf(perfectHash, cases, support, value);
+
+    if (depth == MAX_DEPTH) {
+      callsite.setTarget(insertArguments(INDEX_OF, 0, perfectHash, cases, support));
+      stats.megamorphic();
+      return index;
+    }
+
+    if (depth == cases.length) {
+      callsite.setTarget(createCascadeIfEquals());
+      stats.relink(cases.length);
+      return index;
+    }
+
+    setTarget(
+        guardWithTest(
+            test((index == NO_MATCH) ? value : cases[index]),
+            dropArguments(constant(int.class, index), 0, Object.class),
+            new ObjectSwitchCallSite(depth + 1, callsite, cases, support, perfectHash, stats)
+                .dynamicInvoker()));
+    stats.link();
+    return index;
+  }
+
+  private MethodHandle test(Object objectcase) {
+    if (support == null) {
+      return EQUALS.bindTo(objectcase);
+    }
+    return insertArguments(SUPPORT_EQUALS, 0, support, objectcase);
+  }
+
+  private MethodHandle createCascadeIfEquals() {
+    MethodHandle target = dropArguments(constant(int.class, NO_MATCH), 0, Object.class);
+    for (int i = cases.length; --i >= 0; ) {
+      target =
+          guardWithTest(
+              test(cases[i]), dropArguments(constant(int.class, i), 0, Object.class), target);
+    }
+    return target;
+  }
+
+  static MethodHandle wrapNullIfNecessary(boolean nullMatch, MethodHandle mh) {
+    if (!nullMatch) {
+      return mh;
+    }
+    return guardWithTest(
+        NULLCHECK,
+        dropArguments(constant(int.class, ObjectSwitch.NULL_MATCH), 0, Object.class),
+        mh);
+  }
+}
@@ -0,0 +1,91 @@
+package com.github.forax.exotic;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * The part shared by {@link LongKeyTable} and {@link IdentityKeyTable}, a hash table using open
+ * addressing (linear probing), the subclasses define how the keys are stored, hashed and compared
+ * so the primitive keys are not boxed.
+ *
+ * <p>The lookup is lock free, an insertion is done under the lock of the table, it writes the key
+ * before publishing the value (with a release semantics), so a reader that sees a non null value
+ * also see the corresponding key. When the table is resized, a new table is created and published
+ * at once.
+ *
+ * @param <K> the type of the array of keys.
+ */
+abstract class OpenAddressingTable<K> {
+  static final class Table<K> {
+    final K keys;
+    final AtomicReferenceArray<Object> values;
+    final int mask;
+
+    Table(K keys, int capacity) {
+      this.keys = keys;
+      this.values = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+    }
+  }
+
+  private final IntFunction<K> keysFactory;
+  private volatile Table<K> table;
+  private int size; // guarded by this
+
+  OpenAddressingTable(IntFunction<K> keysFactory) {
+    this.keysFactory = keysFactory;
+    this.table = new Table<>(keysFactory.apply(16), 16);
+  }
+
+  /** Returns the hash of the key at {@code index} in {@code keys}. */
+  abstract int hashAt(K keys, int index);
+
+  /** Copies the key at {@code index} in {@code keys} to {@code newIndex} in {@code newKeys}. */
+  abstract void copyKey(K keys, int index, K newKeys, int newIndex);
+
+  /** Returns the current table, to be used by a lookup. */
+  final Table<K> table() {
+    return table;
+  }
+
+  /**
+   * Returns the table a new key should be inserted into, the table is resized if necessary. Must be
+   * called under the lock of this table, the key should then be written before calling {@link
+   * #publish(Table, int, Object)}.
+   */
+  final Table<K> tableForInsert() {
+    Table<K> table = this.table;
+    if (size + 1 > table.values.length() >> 1) {
+      table = resize(table);
+      this.table = table;
+    }
+    return table;
+  }
+
+  /** Publishes the value of the key already written at {@code index}, under the lock. */
+  final void publish(Table<K> table, int index, Object value) {
+    table.values.lazySet(index, value); // publish the key
+    size++;
+  }
+
+  private Table<K> resize(Table<K> table) {
+    AtomicReferenceArray<Object> values = table.values;
+    int capacity = values.length() << 1;
+    Table<K> newTable = new Table<>(keysFactory.apply(capacity), capacity);
+    AtomicReferenceArray<Object> newValues = newTable.values;
+    int mask = newTable.mask;
+    for (int i = 0; i < values.length(); i++) {
+      Object value = values.get(i);
+      if (value == null) {
+        continue;
+      }
+      int index = hashAt(table.keys, i) & mask;
+      while (newValues.get(index) != null) {
+        index = (index + 1) & mask;
+      }
+      copyKey(table.keys, i, newTable.keys, index);
+      newValues.lazySet(index, value);
+    }
+    return newTable;
+  }
+}
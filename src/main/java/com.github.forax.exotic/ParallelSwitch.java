@@ -0,0 +1,304 @@
+package com.github.forax.exotic;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies a big array in parallel using a {@link StringSwitch}, a {@link TypeSwitch} or an
+ * {@link IntSwitch}, the array is split in ranges that are classified by the tasks of a {@link
+ * ForkJoinPool} and the indexes are stored in a shared array of ints.
+ *
+ * <pre>
+ * private static final StringSwitch COUNTRY_SWITCH = StringSwitch.create(false, "FR", "US", "DE");
+ *
+ * String[] countries = ...
+ * int[] indexes = new int[countries.length];
+ * ParallelSwitch.Histogram histogram =
+ *     ParallelSwitch.stringSwitch(COUNTRY_SWITCH, 3, countries, indexes);
+ * long unknownCount = histogram.count(StringSwitch.NO_MATCH);
+ * </pre>
+ *
+ * Each range is classified by the batch method of the switch, by example {@link
+ * StringSwitch#stringSwitch(String[], int[], int, int)}, then the indexes of the range are counted
+ * in a local array and added to the striped counters ({@link LongAdder}) of the histogram, so the
+ * tasks never share a lock or a contended counter.
+ */
+public final class ParallelSwitch {
+  private static final int MIN_RANGE_LENGTH = 1 << 12;
+
+  // all the switches use the same values for NO_MATCH and NULL_MATCH
+  private static final int NO_MATCH = StringSwitch.NO_MATCH;
+
+  private ParallelSwitch() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The number of values classified for each index, including {@link StringSwitch#NO_MATCH} and
+   * {@link StringSwitch#NULL_MATCH}.
+   */
+  public static final class Histogram {
+    private final long[] counts;
+
+    Histogram(long[] counts) {
+      this.counts = counts;
+    }
+
+    /**
+     * Returns the number of cases of the switch.
+     *
+     * @return the number of cases of the switch.
+     */
+    public int caseCount() {
+      return counts.length + NO_MATCH;
+    }
+
+    /**
+     * Returns the number of values classified with an index.
+     *
+     * @param index the index of a case, {@link StringSwitch#NO_MATCH} or {@link
+     *     StringSwitch#NULL_MATCH}.
+     * @return the number of values classified with the index.
+     * @throws IndexOutOfBoundsException if the index is not a valid index.
+     */
+    public long count(int index) {
+      if (index < NO_MATCH || index >= caseCount()) {
+        throw new IndexOutOfBoundsException("index " + index + " case count " + caseCount());
+      }
+      return counts[index - NO_MATCH];
+    }
+
+    @Override
+    public String toString() {
+      return "Histogram" + Arrays.toString(counts);
+    }
+  }
+
+  /** Classifies the values of a range, storing the index of {@code values[i]} in indexes[i]. */
+  private interface RangeClassifier {
+    void classify(int from, int to);
+  }
+
+  /**
+   * Classifies in parallel the strings of {@code values} using the common pool.
+   *
+   * @param stringSwitch the switch used to classify the strings.
+   * @param caseCount the number of cases of the switch.
+   * @param values the strings to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   * @see #stringSwitch(StringSwitch, int, String[], int[], ForkJoinPool)
+   */
+  public static Histogram stringSwitch(
+      StringSwitch stringSwitch, int caseCount, String[] values, int[] indexes) {
+    return stringSwitch(stringSwitch, caseCount, values, indexes, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Classifies in parallel the strings of {@code values} using the tasks of a fork/join pool.
+   *
+   * @param stringSwitch the switch used to classify the strings.
+   * @param caseCount the number of cases of the switch.
+   * @param values the strings to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @param pool the fork/join pool that runs the tasks.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   */
+  public static Histogram stringSwitch(
+      StringSwitch stringSwitch,
+      int caseCount,
+      String[] values,
+      int[] indexes,
+      ForkJoinPool pool) {
+    Objects.requireNonNull(stringSwitch);
+    return classify(
+        (from, to) -> stringSwitch.stringSwitch(values, indexes, from, to),
+        caseCount,
+        values.length,
+        indexes,
+        pool);
+  }
+
+  /**
+   * Classifies in parallel the objects of {@code values} using the common pool.
+   *
+   * @param typeSwitch the switch used to classify the objects.
+   * @param caseCount the number of cases of the switch.
+   * @param values the objects to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   * @see #typeSwitch(TypeSwitch, int, Object[], int[], ForkJoinPool)
+   */
+  public static Histogram typeSwitch(
+      TypeSwitch typeSwitch, int caseCount, Object[] values, int[] indexes) {
+    return typeSwitch(typeSwitch, caseCount, values, indexes, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Classifies in parallel the objects of {@code values} using the tasks of a fork/join pool.
+   *
+   * @param typeSwitch the switch used to classify the objects.
+   * @param caseCount the number of cases of the switch.
+   * @param values the objects to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @param pool the fork/join pool that runs the tasks.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   */
+  public static Histogram typeSwitch(
+      TypeSwitch typeSwitch, int caseCount, Object[] values, int[] indexes, ForkJoinPool pool) {
+    Objects.requireNonNull(typeSwitch);
+    return classify(
+        (from, to) -> typeSwitch.typeSwitch(values, indexes, from, to),
+        caseCount,
+        values.length,
+        indexes,
+        pool);
+  }
+
+  /**
+   * Classifies in parallel the ints of {@code values} using the common pool.
+   *
+   * @param intSwitch the switch used to classify the ints.
+   * @param caseCount the number of cases of the switch.
+   * @param values the ints to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   * @see #intSwitch(IntSwitch, int, int[], int[], ForkJoinPool)
+   */
+  public static Histogram intSwitch(
+      IntSwitch intSwitch, int caseCount, int[] values, int[] indexes) {
+    return intSwitch(intSwitch, caseCount, values, indexes, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Classifies in parallel the ints of {@code values} using the tasks of a fork/join pool.
+   *
+   * @param intSwitch the switch used to classify the ints.
+   * @param caseCount the number of cases of the switch.
+   * @param values the ints to classify.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code
+   *     values}.
+   * @param pool the fork/join pool that runs the tasks.
+   * @return the histogram of the indexes.
+   * @throws NullPointerException if one of the arguments is null.
+   * @throws IllegalArgumentException if {@code caseCount} is negative or the switch returns an
+   *     index greater or equals to {@code caseCount}.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   */
+  public static Histogram intSwitch(
+      IntSwitch intSwitch, int caseCount, int[] values, int[] indexes, ForkJoinPool pool) {
+    Objects.requireNonNull(intSwitch);
+    return classify(
+        (from, to) -> intSwitch.intSwitch(values, indexes, from, to),
+        caseCount,
+        values.length,
+        indexes,
+        pool);
+  }
+
+  private static Histogram classify(
+      RangeClassifier classifier, int caseCount, int length, int[] indexes, ForkJoinPool pool) {
+    Objects.requireNonNull(pool);
+    if (caseCount < 0) {
+      throw new IllegalArgumentException("caseCount < 0");
+    }
+    BatchSwitches.checkRange(length, indexes.length, 0, length);
+    LongAdder[] counters = new LongAdder[caseCount - NO_MATCH];
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] = new LongAdder();
+    }
+    // at least 4 ranges by thread so a thread that finishes early can steal work
+    int rangeLength = Math.max(MIN_RANGE_LENGTH, length / (pool.getParallelism() << 2));
+    pool.invoke(new ClassifyTask(classifier, indexes, counters, rangeLength, 0, length));
+    long[] counts = new long[counters.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = counters[i].sum();
+    }
+    return new Histogram(counts);
+  }
+
+  @SuppressWarnings("serial")
+  private static final class ClassifyTask extends RecursiveAction {
+    private final RangeClassifier classifier;
+    private final int[] indexes;
+    private final LongAdder[] counters;
+    private final int rangeLength;
+    private final int from;
+    private final int to;
+
+    ClassifyTask(
+        RangeClassifier classifier,
+        int[] indexes,
+        LongAdder[] counters,
+        int rangeLength,
+        int from,
+        int to) {
+      this.classifier = classifier;
+      this.indexes = indexes;
+      this.counters = counters;
+      this.rangeLength = rangeLength;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= rangeLength) {
+        classifier.classify(from, to);
+        count();
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ClassifyTask(classifier, indexes, counters, rangeLength, from, middle),
+          new ClassifyTask(classifier, indexes, counters, rangeLength, middle, to));
+    }
+
+    private void count() {
+      // count locally, so each counter is only updated once by range
+      long[] counts = new long[counters.length];
+      for (int i = from; i < to; i++) {
+        int slot = indexes[i] - NO_MATCH;
+        if (slot < 0 || slot >= counts.length) {
+          throw new IllegalArgumentException(
+              "index " + indexes[i] + " is not valid for " + (counts.length + NO_MATCH) + " cases");
+        }
+        counts[slot]++;
+      }
+      for (int i = 0; i < counts.length; i++) {
+        long count = counts[i];
+        if (count != 0) {
+          counters[i].add(count);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.github.forax.exotic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A perfect hash built once from the hash codes of a fixed set of keys using the "hash and
+ * displace" algorithm (CHD), it maps a hash code to the index of the key that has this hash code.
+ *
+ * <p>The hash codes are distributed into buckets, then for each bucket, starting with the biggest
+ * one, a seed is searched so that the hash codes of the bucket, mixed with the seed, fall into free
+ * slots of the table. A lookup computes the bucket, reads its seed, then reads the slot, all the
+ * data are stored in flat {@code int} arrays.
+ *
+ * <p>The perfect hash is not minimal, the table has more slots than hash codes (its load factor is
+ * below 0.75, the size being a power of two), so the search of the seeds stays fast.
+ *
+ * <p>The perfect hash works on hash codes, not on keys, so several keys with the same hash code
+ * can not be separated, the index returned by {@link #index(int)} is the one of the first key with
+ * the hash code and the other keys with the same hash code are found using {@link #next(int)}.
+ * The caller is responsible to check that the key at the returned index is equal to the key it
+ * looks for.
+ */
+final class PerfectHash {
+  private static final int KEYS_PER_BUCKET = 4;
+  private static final int MAX_SEED = 1 << 16;
+
+  private final int[] seeds;
+  private final int[] slots; // index of the key or -1
+  private final int[] hashes; // hash code of each key
+  private final int[] next; // index of the next key with the same hash code or -1
+
+  private PerfectHash(int[] seeds, int[] slots, int[] hashes, int[] next) {
+    this.seeds = seeds;
+    this.slots = slots;
+    this.hashes = hashes;
+    this.next = next;
+  }
+
+  /** Murmur3 finalizer. */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int bucket(int mixed, int bucketCount) {
+    return (int) (((mixed & 0xFFFFFFFFL) * bucketCount) >>> 32);
+  }
+
+  private static int slot(int mixed, int seed, int mask) {
+    return mix(mixed ^ (seed * 0x9E3779B9)) & mask;
+  }
+
+  /**
+   * Creates a perfect hash from the hash codes of the keys, the index of a key is its index in
+   * the array.
+   *
+   * @param hashes the hash codes of the keys.
+   * @return a new perfect hash.
+   */
+  static PerfectHash create(int[] hashes) {
+    hashes = hashes.clone();
+    int length = hashes.length;
+    int[] next = new int[length];
+    Arrays.fill(next, -1);
+
+    // the keys with the same hash code are chained, only the first one is in the table
+    HashMap<Integer, Integer> lastByHash = new HashMap<>();
+    ArrayList<Integer> firsts = new ArrayList<>();
+    for (int i = 0; i < length; i++) {
+      Integer last = lastByHash.put(hashes[i], i);
+      if (last == null) {
+        firsts.add(i);
+      } else {
+        next[last] = i;
+      }
+    }
+
+    int count = firsts.size();
+    int bucketCount = Math.max(1, (count + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+    int size = Integer.highestOneBit(Math.max(1, count * 4 / 3)) << 1; // load factor < 0.75
+    for (; ; size <<= 1) {
+      PerfectHash perfectHash = build(hashes, next, firsts, bucketCount, size);
+      if (perfectHash != null) {
+        return perfectHash;
+      }
+    }
+  }
+
+  private static PerfectHash build(
+      int[] hashes, int[] next, ArrayList<Integer> firsts, int bucketCount, int size) {
+    @SuppressWarnings("unchecked")
+    ArrayList<Integer>[] buckets = (ArrayList<Integer>[]) new ArrayList<?>[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      buckets[i] = new ArrayList<>();
+    }
+    for (int index : firsts) {
+      buckets[bucket(mix(hashes[index]), bucketCount)].add(index);
+    }
+    Integer[] order = new Integer[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (b1, b2) -> Integer.compare(buckets[b2].size(), buckets[b1].size()));
+
+    int mask = size - 1;
+    int[] seeds = new int[bucketCount];
+    int[] slots = new int[size];
+    Arrays.fill(slots, -1);
+    int[] bucketSlots = new int[firsts.isEmpty() ? 0 : buckets[order[0]].size()];
+    for (int bucketIndex : order) {
+      ArrayList<Integer> bucket = buckets[bucketIndex];
+      if (bucket.isEmpty()) {
+        break; // the buckets are sorted by size
+      }
+      int seed = findSeed(hashes, bucket, slots, mask, bucketSlots);
+      if (seed == -1) {
+        return null;
+      }
+      seeds[bucketIndex] = seed;
+      for (int i = 0; i < bucket.size(); i++) {
+        slots[bucketSlots[i]] = bucket.get(i);
+      }
+    }
+    return new PerfectHash(seeds, slots, hashes, next);
+  }
+
+  private static int findSeed(
+      int[] hashes, ArrayList<Integer> bucket, int[] slots, int mask, int[] bucketSlots) {
+    loop:
+    for (int seed = 0; seed < MAX_SEED; seed++) {
+      for (int i = 0; i < bucket.size(); i++) {
+        int slot = slot(mix(hashes[bucket.get(i)]), seed, mask);
+        if (slots[slot] != -1) {
+          continue loop;
+        }
+        for (int j = 0; j < i; j++) {
+          if (bucketSlots[j] == slot) {
+            continue loop;
+          }
+        }
+        bucketSlots[i] = slot;
+      }
+      return seed;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first key with the hash code {@code hash} or -1 if no key has this
+   * hash code.
+   *
+   * @param hash a hash code.
+   * @return the index of the first key with the hash code or -1.
+   */
+  int index(int hash) {
+    int mixed = mix(hash);
+    int index = slots[slot(mixed, seeds[bucket(mixed, seeds.length)], slots.length - 1)];
+    return (index != -1 && hashes[index] == hash) ? index : -1;
+  }
+
+  /**
+   * Returns the index of the next key with the same hash code as the key at {@code index} or -1.
+   *
+   * @param index the index of a key.
+   * @return the index of the next key with the same hash code or -1.
+   */
+  int next(int index) {
+    return next[index];
+  }
+}
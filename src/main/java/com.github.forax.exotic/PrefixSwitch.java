@@ -0,0 +1,72 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A PrefixSwitch allows to encode a switch on the prefixes of a string as a plain old switch on
+ * integers. For that, a PrefixSwitch is {@link #create(boolean, String...) created} with an array
+ * of prefixes and will find for a string the index of its longest prefix in the array.
+ *
+ * <pre>
+ * private static final PrefixSwitch ROUTE_SWITCH =
+ *     PrefixSwitch.create(false, "/", "/api/", "/api/users/");
+ *
+ * public static Handler route(String path) {
+ *   switch(ROUTE_SWITCH.prefixSwitch(path)) {
+ *   case 0:
+ *     return STATIC_HANDLER;
+ *   case 1:
+ *     return API_HANDLER;
+ *   case 2:
+ *     return USER_HANDLER;
+ *   default: // PrefixSwitch.NO_MATCH
+ *     return NOT_FOUND_HANDLER;
+ *   }
+ * }
+ * </pre>
+ *
+ * The prefixes are stored in a trie, the strings already seen are recognized by an inlining cache
+ * so the result for a string that comes back often is a constant for the JIT.
+ */
+@FunctionalInterface
+public interface PrefixSwitch {
+  /**
+   * Returns the index of the longest prefix of {@code value} in {@code prefixes}.
+   *
+   * @param value the value.
+   * @return the index of the longest prefix of {@code value}, {@value #NULL_MATCH} if {@code value}
+   *     is null or {@link #NO_MATCH} if no prefix match.
+   * @see #create(boolean, String...)
+   */
+  int prefixSwitch(String value);
+
+  /** Return value of {@link #prefixSwitch(String)} that indicates that no match is found. */
+  int NO_MATCH = StringSwitch.NO_MATCH;
+
+  /** Return value of {@link #prefixSwitch(String)} that indicates that null is found. */
+  int NULL_MATCH = StringSwitch.NULL_MATCH;
+
+  /**
+   * Creates a PrefixSwitch that returns for a string the index of its longest prefix in the {@code
+   * prefixes} array or {@link #NO_MATCH} if no prefix match.
+   *
+   * @param nullMatch true is the PrefixSwitch should allow null.
+   * @param prefixes an array of prefixes, the empty string matches all strings.
+   * @return a PrefixSwitch configured with the array of prefixes.
+   * @throws NullPointerException is {@code prefixes is null} or one prefix of the array is null.
+   * @throws IllegalStateException if the same prefix appears several times in the array.
+   * @see #prefixSwitch(String)
+   */
+  static PrefixSwitch create(boolean nullMatch, String... prefixes) {
+    MethodHandle mh =
+        StringSwitchCallSite.wrapNullIfNecessary(
+            nullMatch, PrefixSwitchCallSite.create(prefixes).dynamicInvoker());
+    return value -> {
+      try {
+        return (int) mh.invokeExact(value);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
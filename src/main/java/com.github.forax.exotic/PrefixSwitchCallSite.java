@@ -0,0 +1,95 @@
+package com.github.forax.exotic;
+
+import static com.github.forax.exotic.StringSwitch.NO_MATCH;
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Objects;
+
+/**
+ * The inlining cache of a {@link PrefixSwitch}, the strings already seen are checked with {@code
+ * equals} and the trie is used for the other strings and once the inlining cache is megamorphic.
+ */
+class PrefixSwitchCallSite extends MutableCallSite {
+  private static final MethodType STRING_TO_INT = methodType(int.class, String.class);
+  private static final MethodHandle FALLBACK, EQUALS, LONGEST_PREFIX;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK = lookup.findVirtual(PrefixSwitchCallSite.class, "fallback", STRING_TO_INT);
+      EQUALS = lookup.findVirtual(String.class, "equals", methodType(boolean.class, Object.class));
+      LONGEST_PREFIX =
+          lookup.findStatic(
+              PrefixSwitchCallSite.class,
+              "longestPrefix",
+              methodType(int.class, PrefixTrie.class, String.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 16;
+
+  private final int depth;
+  private final PrefixSwitchCallSite callsite;
+  private final PrefixTrie trie;
+  private final CallSiteStats stats;
+
+  private PrefixSwitchCallSite(
+      int depth, PrefixSwitchCallSite callsite, PrefixTrie trie, CallSiteStats stats) {
+    super(STRING_TO_INT);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.trie = trie;
+    this.stats = stats;
+    setTarget(FALLBACK.bindTo(this));
+  }
+
+  static PrefixSwitchCallSite create(String[] prefixes) {
+    return new PrefixSwitchCallSite(
+        0, null, PrefixTrie.create(prefixes), CallSiteStats.create(PrefixSwitch.class));
+  }
+
+  static int longestPrefix(PrefixTrie trie, String value) {
+    int index = trie.longestPrefix(value);
+    return (index == -1) ? NO_MATCH : index;
+  }
+
+  @SuppressWarnings("unused")
+  private int fallback(String value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private int link(String value) {
+    Objects.requireNonNull(value);
+    int index = longestPrefix(trie, value);
+
+    if (depth == MAX_DEPTH) {
+      callsite.setTarget(LONGEST_PREFIX.bindTo(trie));
+      stats.megamorphic();
+      return index;
+    }
+
+    setTarget(
+        guardWithTest(
+            insertArguments(EQUALS, 1, value),
+            dropArguments(constant(int.class, index), 0, String.class),
+            new PrefixSwitchCallSite(depth + 1, callsite, trie, stats).dynamicInvoker()));
+    stats.link();
+    return index;
+  }
+}
@@ -0,0 +1,127 @@
+package com.github.forax.exotic;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A trie of a fixed set of prefixes that finds the longest prefix of a string, all the data are
+ * stored in flat arrays.
+ *
+ * <p>The edges of a node are stored consecutively and sorted by character, a lookup walks the
+ * characters of the string and uses a binary search to find the edge of each character, it
+ * remembers the last node that ends a prefix.
+ */
+final class PrefixTrie {
+  private final int[] firstEdges; // index of the first edge of each node
+  private final int[] edgeCounts; // number of edges of each node
+  private final int[] matches; // index of the prefix that ends at each node or -1
+  private final char[] labels; // character of each edge
+  private final int[] targets; // target node of each edge
+
+  private PrefixTrie(
+      int[] firstEdges, int[] edgeCounts, int[] matches, char[] labels, int[] targets) {
+    this.firstEdges = firstEdges;
+    this.edgeCounts = edgeCounts;
+    this.matches = matches;
+    this.labels = labels;
+    this.targets = targets;
+  }
+
+  private static final class Node {
+    private final TreeMap<Character, Node> children = new TreeMap<>();
+    private int match = -1;
+  }
+
+  /**
+   * Creates a trie from an array of prefixes, the index of a prefix is its index in the array.
+   *
+   * @param prefixes an array of prefixes.
+   * @return a new trie.
+   * @throws NullPointerException if a prefix is null.
+   * @throws IllegalStateException if the same prefix appears several times in the array.
+   */
+  static PrefixTrie create(String[] prefixes) {
+    Node root = new Node();
+    int nodeCount = 1;
+    for (int i = 0; i < prefixes.length; i++) {
+      String prefix = Objects.requireNonNull(prefixes[i]);
+      Node node = root;
+      for (int j = 0; j < prefix.length(); j++) {
+        Node child = node.children.get(prefix.charAt(j));
+        if (child == null) {
+          child = new Node();
+          node.children.put(prefix.charAt(j), child);
+          nodeCount++;
+        }
+        node = child;
+      }
+      if (node.match != -1) {
+        throw new IllegalStateException(prefix + " value appear more than once");
+      }
+      node.match = i;
+    }
+
+    // number the nodes in breadth first order, the edges of a node are consecutive
+    int[] firstEdges = new int[nodeCount];
+    int[] edgeCounts = new int[nodeCount];
+    int[] matches = new int[nodeCount];
+    char[] labels = new char[nodeCount - 1];
+    int[] targets = new int[nodeCount - 1];
+    ArrayList<Node> nodes = new ArrayList<>();
+    nodes.add(root);
+    int edge = 0;
+    for (int index = 0; index < nodes.size(); index++) {
+      Node node = nodes.get(index);
+      firstEdges[index] = edge;
+      edgeCounts[index] = node.children.size();
+      matches[index] = node.match;
+      for (Character label : node.children.keySet()) {
+        labels[edge] = label;
+        targets[edge] = nodes.size();
+        nodes.add(node.children.get(label));
+        edge++;
+      }
+    }
+    return new PrefixTrie(firstEdges, edgeCounts, matches, labels, targets);
+  }
+
+  private int edge(int node, char c) {
+    int low = firstEdges[node];
+    int high = low + edgeCounts[node] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      char label = labels[middle];
+      if (label < c) {
+        low = middle + 1;
+      } else if (label > c) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the longest prefix of {@code value} or -1 if no prefix match.
+   *
+   * @param value a string.
+   * @return the index of the longest prefix of {@code value} or -1.
+   */
+  int longestPrefix(String value) {
+    int node = 0;
+    int match = matches[0];
+    for (int i = 0; i < value.length(); i++) {
+      int edge = edge(node, value.charAt(i));
+      if (edge == -1) {
+        break;
+      }
+      node = targets[edge];
+      if (matches[node] != -1) {
+        match = matches[node];
+      }
+    }
+    return match;
+  }
+}
@@ -0,0 +1,91 @@
+package com.github.forax.exotic;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * Compute the value of a key at most once even if several threads ask for the same key at the same
+ * time, the first thread computes the value while the other threads wait for the result.
+ *
+ * <p>If the computation fails, the exception is propagated to all the waiting threads and the key
+ * is forgotten, so the next call will try again. A thread that asks for a key it is currently
+ * computing (a recursive function) gets an {@link IllegalStateException} instead of a deadlock.
+ *
+ * <p>Once a flight is done, the thread that has computed the value replaces the flight by the value
+ * (or removes it if the computation fails), so the table does not retain the task nor the thread.
+ */
+final class SingleFlight {
+  private static final class Flight extends FutureTask<Object> {
+    final Thread owner = Thread.currentThread();
+
+    Flight(Function<Object, ?> function, Object key) {
+      super(() -> Objects.requireNonNull(function.apply(key)));
+    }
+  }
+
+  private final Function<Object, ?> function;
+  // the values are either a Flight or the value computed by the flight
+  private final ConcurrentHashMap<Object, Object> flights = new ConcurrentHashMap<>();
+
+  @SuppressWarnings("unchecked")
+  SingleFlight(Function<?, ?> function) {
+    this.function = (Function<Object, ?>) function;
+  }
+
+  Object get(Object key) {
+    Object result = flights.get(key);
+    if (result == null) {
+      Flight newFlight = new Flight(function, key);
+      result = flights.putIfAbsent(key, newFlight);
+      if (result == null) {
+        return fly(key, newFlight);
+      }
+    }
+    if (!(result instanceof Flight)) {
+      return result;
+    }
+    Flight flight = (Flight) result;
+    if (!flight.isDone() && flight.owner == Thread.currentThread()) {
+      throw new IllegalStateException("recursive computation of the key " + key);
+    }
+    return await(key, flight);
+  }
+
+  private Object fly(Object key, Flight flight) {
+    flight.run(); // never throws, an exception is stored in the flight
+    Object value = null;
+    try {
+      value = await(key, flight);
+      return value;
+    } finally {
+      if (value != null) {
+        flights.replace(key, flight, value);
+      } else {
+        flights.remove(key, flight);
+      }
+    }
+  }
+
+  private Object await(Object key, Flight flight) {
+    boolean interrupted = false;
+    try {
+      for (; ; ) {
+        try {
+          return flight.get();
+        } catch (InterruptedException e) {
+          interrupted = true; // the value is needed anyway, wait again
+        } catch (ExecutionException e) {
+          flights.remove(key, flight);
+          throw Thrower.rethrow(e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Map;
+
+/**
+ * An immutable map from strings to values that is optimized for a lookup with a key that is
+ * often the same.
+ *
+ * <p>Unlike a {@link StringSwitch} that returns the index of a string and requires to read the
+ * value in an array, a StringMap returns the value directly, the values associated with the keys
+ * already seen are constants for the JIT. If there are too many keys, a perfect hash is used.
+ *
+ * <pre>
+ * private static final StringMap&lt;Color&gt; COLORS =
+ *     StringMap.create(Map.of("red", Color.RED, "green", Color.GREEN));
+ *
+ * public static Color color(String name) {
+ *   return COLORS.get(name);
+ * }
+ * </pre>
+ *
+ * @param <V> the type of the values.
+ * @see ToIntStringMap
+ * @see ToLongStringMap
+ */
+@FunctionalInterface
+public interface StringMap<V> {
+  /**
+   * Returns the value associated with the {@code key} or null if there is no value.
+   *
+   * @param key the key.
+   * @return the value associated with the {@code key} or null.
+   * @throws NullPointerException if the {@code key} is null.
+   */
+  V get(String key);
+
+  /**
+   * Creates a StringMap with the keys and values of {@code map}.
+   *
+   * @param <V> the type of the values.
+   * @param map the keys and the values.
+   * @return a new StringMap.
+   * @throws NullPointerException if the map is null or a key of the map is null.
+   */
+  static <V> StringMap<V> create(Map<String, ? extends V> map) {
+    return create(map, null);
+  }
+
+  /**
+   * Creates a StringMap with the keys and values of {@code map}, {@link #get(String)} returns
+   * {@code defaultValue} if there is no value associated with a key.
+   *
+   * @param <V> the type of the values.
+   * @param map the keys and the values.
+   * @param defaultValue the value returned if there is no value associated with a key.
+   * @return a new StringMap.
+   * @throws NullPointerException if the map is null or a key of the map is null.
+   */
+  static <V> StringMap<V> create(Map<String, ? extends V> map, V defaultValue) {
+    MethodHandle mh =
+        StringMapCallSite.create(StringMap.class, Object.class, map, defaultValue)
+            .dynamicInvoker();
+    return key -> {
+      try {
+        @SuppressWarnings("unchecked")
+        V value = (V) (Object) mh.invokeExact(key);
+        return value;
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -0,0 +1,214 @@
+package com.github.forax.exotic;
+
+import static com.github.forax.exotic.StringSwitch.NO_MATCH;
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The inlining cache of a {@link StringMap}, a {@link ToIntStringMap} or a {@link
+ * ToLongStringMap}, the strategy is the same as {@link StringSwitchCallSite} but each guard returns
+ * the value associated with the key as a constant instead of the index of the key.
+ */
+class StringMapCallSite extends MutableCallSite {
+  private static final MethodHandle FALLBACK, EQUALS, EQUALS_IGNORE_CASE, GET;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      FALLBACK =
+          lookup.findVirtual(
+              StringMapCallSite.class, "fallback", methodType(Object.class, String.class));
+      EQUALS = lookup.findVirtual(String.class, "equals", methodType(boolean.class, Object.class));
+      EQUALS_IGNORE_CASE =
+          lookup.findStatic(
+              StringSwitchCallSite.class,
+              "equalsIgnoreCase",
+              methodType(boolean.class, String.class, String.class));
+      GET =
+          lookup.findStatic(
+              StringMapCallSite.class,
+              "get",
+              methodType(
+                  Object.class,
+                  PerfectHash.class,
+                  String[].class,
+                  Object[].class,
+                  Object.class,
+                  boolean.class,
+                  String.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final int MAX_DEPTH = 32;
+  private static final int MAX_CASCADE_LENGTH = 8;
+
+  private final int depth;
+  private final StringMapCallSite callsite;
+  private final String[] keys;
+  private final Object[] values;
+  private final Object defaultValue;
+  private final PerfectHash perfectHash;
+  private final boolean ignoreCase;
+  private final CallSiteStats stats;
+
+  private StringMapCallSite(
+      MethodType type,
+      int depth,
+      StringMapCallSite callsite,
+      String[] keys,
+      Object[] values,
+      Object defaultValue,
+      PerfectHash perfectHash,
+      boolean ignoreCase,
+      CallSiteStats stats) {
+    super(type);
+    this.depth = depth;
+    this.callsite = (callsite == null) ? this : callsite;
+    this.keys = keys;
+    this.values = values;
+    this.defaultValue = defaultValue;
+    this.perfectHash = perfectHash;
+    this.ignoreCase = ignoreCase;
+    this.stats = stats;
+    setTarget(FALLBACK.bindTo(this).asType(type));
+  }
+
+  static StringMapCallSite create(
+      Class<?> owner, Class<?> valueType, Map<String, ?> map, Object defaultValue) {
+    return create(owner, valueType, map, defaultValue, false);
+  }
+
+  static StringMapCallSite create(
+      Class<?> owner,
+      Class<?> valueType,
+      Map<String, ?> map,
+      Object defaultValue,
+      boolean ignoreCase) {
+    String[] keys = new String[map.size()];
+    Object[] values = new Object[keys.length];
+    int i = 0;
+    for (Map.Entry<String, ?> entry : map.entrySet()) {
+      keys[i] = entry.getKey();
+      Object value = entry.getValue();
+      values[i] = valueType.isPrimitive() ? Objects.requireNonNull(value) : value;
+      i++;
+    }
+    return new StringMapCallSite(
+        methodType(valueType, String.class),
+        0,
+        null,
+        keys,
+        values,
+        defaultValue,
+        ignoreCase
+            ? StringSwitchCallSite.createPerfectHashIgnoreCase(keys)
+            : StringSwitchCallSite.createPerfectHash(keys),
+        ignoreCase,
+        CallSiteStats.create(owner));
+  }
+
+  static Object get(
+      PerfectHash perfectHash,
+      String[] keys,
+      Object[] values,
+      Object defaultValue,
+      boolean ignoreCase,
+      String key) {
+    int index = indexOf(perfectHash, keys, ignoreCase, key);
+    return (index == NO_MATCH) ? defaultValue : values[index];
+  }
+
+  private static int indexOf(
+      PerfectHash perfectHash, String[] keys, boolean ignoreCase, String key) {
+    if (ignoreCase) {
+      return StringSwitchCallSite.indexOfIgnoreCase(perfectHash, keys, key);
+    }
+    return StringSwitchCallSite.indexOf(perfectHash, keys, key);
+  }
+
+  private MethodHandle test(String key) {
+    if (ignoreCase) {
+      return insertArguments(EQUALS_IGNORE_CASE, 0, key);
+    }
+    return insertArguments(EQUALS, 1, key);
+  }
+
+  private MethodHandle constantOf(Object value) {
+    return dropArguments(constant(type().returnType(), value), 0, String.class);
+  }
+
+  private MethodHandle createGet() {
+    return insertArguments(GET, 0, perfectHash, keys, values, defaultValue, ignoreCase)
+        .asType(type());
+  }
+
+  @SuppressWarnings("unused")
+  private Object fallback(String key) {
+    long start = stats.enter();
+    try {
+      return link(key);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private Object link(String key) {
+    Objects.requireNonNull(key);
+    int index = indexOf(perfectHash, keys, ignoreCase, key);
+    Object value = (index == NO_MATCH) ? defaultValue : values[index];
+
+    if (depth == MAX_DEPTH) {
+      callsite.setTarget(createGet());
+      stats.megamorphic();
+      return value;
+    }
+
+    if (depth == keys.length) {
+      callsite.setTarget(createAllKeys());
+      stats.relink(keys.length);
+      return value;
+    }
+
+    setTarget(
+        guardWithTest(
+            test(key),
+            constantOf(value),
+            new StringMapCallSite(
+                    type(),
+                    depth + 1,
+                    callsite,
+                    keys,
+                    values,
+                    defaultValue,
+                    perfectHash,
+                    ignoreCase,
+                    stats)
+                .dynamicInvoker()));
+    stats.link();
+    return value;
+  }
+
+  private MethodHandle createAllKeys() {
+    if (keys.length > MAX_CASCADE_LENGTH) {
+      return createGet();
+    }
+    MethodHandle target = constantOf(defaultValue);
+    for (int i = keys.length; --i >= 0; ) {
+      target = guardWithTest(test(keys[i]), constantOf(values[i]), target);
+    }
+    return target;
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.forax.exotic;
 
 import java.lang.invoke.MethodHandle;
+import java.util.stream.Collector;
 
 /**
  * A StringSwitch allows to encode a switch on strings as a plain old switch on integers.
@@ -55,6 +56,54 @@ public interface StringSwitch {
    */
   int stringSwitch(String value);
   
+  /**
+   * Stores in {@code indexes} the index returned by {@link #stringSwitch(String)} for each string of {@code values},
+   * the index of {@code values[i]} is stored in {@code indexes[i]}.
+   * 
+   * @param values an array of strings.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code values}.
+   * @throws NullPointerException if {@code values} or {@code indexes} is null.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   * 
+   * @see #stringSwitch(String[], int[], int, int)
+   */
+  default void stringSwitch(String[] values, int[] indexes) {
+    stringSwitch(values, indexes, 0, values.length);
+  }
+  
+  /**
+   * Stores in {@code indexes} the index returned by {@link #stringSwitch(String)} for each string of {@code values}
+   * from {@code from} (inclusive) to {@code to} (exclusive), the index of {@code values[i]} is stored in {@code indexes[i]}.
+   * 
+   * The StringSwitch returned by {@link #create(boolean, String...) create} or
+   * {@link #createCaseInsensitive(boolean, String...) createCaseInsensitive} overrides this method
+   * with a loop specific to the switch, the loop calls the inlining cache of the switch directly,
+   * so the JIT sees one hot loop around the inlining cache even if the StringSwitch is not a constant.
+   * 
+   * @param values an array of strings.
+   * @param indexes the array of the indexes.
+   * @param from the index of the first string, inclusive.
+   * @param to the index of the last string, exclusive.
+   * @throws NullPointerException if {@code values} or {@code indexes} is null.
+   * @throws IndexOutOfBoundsException if the range is not inside the two arrays.
+   */
+  default void stringSwitch(String[] values, int[] indexes, int from, int to) {
+    BatchSwitches.checkRange(values.length, indexes.length, from, to);
+    for(int i = from; i < to; i++) {
+      indexes[i] = stringSwitch(values[i]);
+    }
+  }
+  
+  /**
+   * Returns a collector that collects the indexes returned by {@link #stringSwitch(String)}
+   * for the strings of a stream into an array, in the encounter order of the stream.
+   * 
+   * @return a collector that collects the indexes of the strings into an array.
+   */
+  default Collector<String, ?, int[]> toIndexes() {
+    return BatchSwitches.toIndexes(this::stringSwitch);
+  }
+  
   /**
    * Return value of {@link #stringSwitch(String)} that indicates that no match is found.
    */
@@ -79,12 +128,27 @@ public interface StringSwitch {
    */
   static StringSwitch create(boolean nullMatch, String... stringcases) {
     MethodHandle mh = StringSwitchCallSite.wrapNullIfNecessary(nullMatch, StringSwitchCallSite.create(stringcases).dynamicInvoker());
-    return value -> {
-      try {
-        return (int)mh.invokeExact(value);  
-      } catch(Throwable t) {
-        throw Thrower.rethrow(t);
-      }
-    };
+    return BatchSwitches.stringSwitch(mh);
+  }
+  
+  /**
+   * Creates a StringSwitch that returns for a string the index in the {@code stringcases} array
+   * of the string equals ignoring case or {@link #NO_MATCH} if no string match.
+   * 
+   * Two strings are equal ignoring case if they are equal using {@link String#equalsIgnoreCase(String)},
+   * the input string is compared and hashed without being converted to lower case
+   * and the ASCII letters are checked before calling the Unicode case conversions.
+   * 
+   * @param nullMatch true is the StringSwitch should allow null.
+   * @param stringcases an array of string. 
+   * @return a StringSwitch configured with the array of stringcases.
+   * @throws NullPointerException is {@code stringcases is null} or one string of the array is null.
+   * @throws IllegalStateException if two strings of the array are equal ignoring case.
+   * 
+   * @see #create(boolean, String...)
+   */
+  static StringSwitch createCaseInsensitive(boolean nullMatch, String... stringcases) {
+    MethodHandle mh = StringSwitchCallSite.wrapNullIfNecessary(nullMatch, StringSwitchCallSite.createIgnoreCase(stringcases).dynamicInvoker());
+    return BatchSwitches.stringSwitch(mh);
   }
 }
@@ -12,93 +12,274 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Objects;
 
 class StringSwitchCallSite extends MutableCallSite {
   private static final MethodType STRING_TO_INT = methodType(int.class, String.class);
-  private static final MethodHandle FALLBACK, EQUALS, GET_OR_DEFAULT, NULLCHECK;
+  private static final MethodHandle FALLBACK, EQUALS, INDEX_OF, NULLCHECK, STRING_SWITCH;
+  private static final MethodHandle EQUALS_IGNORE_CASE, INDEX_OF_IGNORE_CASE, PROFILE;
   static {
     Lookup lookup = MethodHandles.lookup();
     try {
       FALLBACK = lookup.findVirtual(StringSwitchCallSite.class, "fallback", STRING_TO_INT);
       EQUALS = lookup.findVirtual(String.class, "equals", methodType(boolean.class, Object.class));
-      MethodHandle get = lookup.findVirtual(HashMap.class, "getOrDefault", methodType(Object.class, Object.class, Object.class));
-      GET_OR_DEFAULT = MethodHandles.insertArguments(get, 2, -1).asType(methodType(int.class, HashMap.class, String.class));
+      INDEX_OF = lookup.findStatic(StringSwitchCallSite.class, "indexOf", methodType(int.class, PerfectHash.class, String[].class, String.class));
       MethodHandle nullCheck = lookup.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
       NULLCHECK = nullCheck.asType(methodType(boolean.class, String.class));
+      STRING_SWITCH = lookup.findVirtual(StringSwitch.class, "stringSwitch", STRING_TO_INT);
+      EQUALS_IGNORE_CASE = lookup.findStatic(StringSwitchCallSite.class, "equalsIgnoreCase", methodType(boolean.class, String.class, String.class));
+      INDEX_OF_IGNORE_CASE = lookup.findStatic(StringSwitchCallSite.class, "indexOfIgnoreCase", methodType(int.class, PerfectHash.class, String[].class, String.class));
+      PROFILE = lookup.findVirtual(StringSwitchCallSite.class, "profile", STRING_TO_INT);
     } catch(NoSuchMethodException | IllegalAccessException e) {
       throw new AssertionError(e);
     }
   }
   
   private static final int MAX_DEPTH = 32;
+  private static final int MAX_CASCADE_LENGTH = 8;
+  
+  // the cascade is ordered using the number of hits of each case on the first calls once all
+  // the cases have been seen, the profile is taken only once, so the cascade is linked once and
+  // the callers are not deoptimized again if the distribution of the values changes later
+  private static final int PROFILE_SAMPLES = 1_024;
   
   private final int depth;
   private final StringSwitchCallSite callsite;
   private final String[] stringcases;
-  private final HashMap<String, Integer> map;
+  private final PerfectHash perfectHash;
+  private final boolean ignoreCase;
+  private final CallSiteStats stats;
+  
+  // profile of the root call site, the updates are racy, a lost update only skews the sample
+  private final int[] hits;
+  private int samples;
+  private boolean profiling;  // guarded by this
   
-  private StringSwitchCallSite(String[] stringcases, HashMap<String, Integer> map) {
+  private StringSwitchCallSite(String[] stringcases, PerfectHash perfectHash, boolean ignoreCase) {
     super(STRING_TO_INT);
     this.depth = 0;
     this.callsite = this;
     this.stringcases = stringcases;
-    this.map = map;
+    this.perfectHash = perfectHash;
+    this.ignoreCase = ignoreCase;
+    this.stats = CallSiteStats.create(StringSwitch.class);
+    this.hits = new int[stringcases.length];
     setTarget(FALLBACK.bindTo(this));
   }
   
-  private StringSwitchCallSite(int depth, StringSwitchCallSite callsite, String[] stringcases, HashMap<String, Integer> map) {
+  private StringSwitchCallSite(int depth, StringSwitchCallSite callsite, String[] stringcases, PerfectHash perfectHash) {
     super(STRING_TO_INT);
     this.depth = depth;
     this.callsite = callsite;
     this.stringcases = stringcases;
-    this.map = map;
+    this.perfectHash = perfectHash;
+    this.ignoreCase = callsite.ignoreCase;
+    this.stats = callsite.stats;
+    this.hits = null;
     setTarget(FALLBACK.bindTo(this));
   }
 
   static StringSwitchCallSite create(String[] stringcases) {
-    HashMap<String, Integer> map = new HashMap<>();  
+    return new StringSwitchCallSite(stringcases, createPerfectHash(stringcases), false);
+  }
+  
+  static StringSwitchCallSite createIgnoreCase(String[] stringcases) {
+    return new StringSwitchCallSite(stringcases, createPerfectHashIgnoreCase(stringcases), true);
+  }
+  
+  static PerfectHash createPerfectHash(String[] stringcases) {
+    HashSet<String> set = new HashSet<>();
+    int[] hashes = new int[stringcases.length];
     for(int i = 0; i < stringcases.length; i++) {
       String stringcase = Objects.requireNonNull(stringcases[i]);
-      if (map.put(stringcase, i) != null) {
+      if (!set.add(stringcase)) {
         throw new IllegalStateException(stringcase + " value appear more than once");
       }
+      hashes[i] = stringcase.hashCode();
+    }
+    return PerfectHash.create(hashes);
+  }
+  
+  static PerfectHash createPerfectHashIgnoreCase(String[] stringcases) {
+    HashMap<String, String> map = new HashMap<>();
+    int[] hashes = new int[stringcases.length];
+    for(int i = 0; i < stringcases.length; i++) {
+      String stringcase = Objects.requireNonNull(stringcases[i]);
+      String foldedcase = foldCase(stringcase);
+      String previous = map.putIfAbsent(foldedcase, stringcase);
+      if (previous != null) {
+        throw new IllegalStateException(stringcase + " and " + previous + " values are equal ignoring case");
+      }
+      hashes[i] = foldedcase.hashCode();
+    }
+    return PerfectHash.create(hashes);
+  }
+  
+  /* Folds the case of a character like String.equalsIgnoreCase does, ASCII characters first. */
+  private static char foldCase(char c) {
+    if (c < 128) {
+      return (c >= 'A' && c <= 'Z')? (char)(c + ('a' - 'A')): c;
+    }
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+  
+  private static String foldCase(String s) {
+    char[] array = new char[s.length()];
+    for(int i = 0; i < array.length; i++) {
+      array[i] = foldCase(s.charAt(i));
+    }
+    return new String(array);
+  }
+  
+  /* Same value as foldCase(value).hashCode() without allocating the folded string. */
+  private static int hashCodeIgnoreCase(String value) {
+    int hash = 0;
+    for(int i = 0; i < value.length(); i++) {
+      hash = 31 * hash + foldCase(value.charAt(i));
+    }
+    return hash;
+  }
+  
+  static boolean equalsIgnoreCase(String stringcase, String value) {
+    int length = stringcase.length();
+    if (length != value.length()) {
+      return false;
+    }
+    for(int i = 0; i < length; i++) {
+      char c1 = stringcase.charAt(i);
+      char c2 = value.charAt(i);
+      if (c1 != c2 && foldCase(c1) != foldCase(c2)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  static int indexOfIgnoreCase(PerfectHash perfectHash, String[] stringcases, String value) {
+    for(int index = perfectHash.index(hashCodeIgnoreCase(value)); index != -1; index = perfectHash.next(index)) {
+      if (equalsIgnoreCase(stringcases[index], value)) {
+        return index;
+      }
+    }
+    return NO_MATCH;
+  }
+  
+  static int indexOf(PerfectHash perfectHash, String[] stringcases, String value) {
+    for(int index = perfectHash.index(value.hashCode()); index != -1; index = perfectHash.next(index)) {
+      if (stringcases[index].equals(value)) {
+        return index;
+      }
     }
-    return new StringSwitchCallSite(stringcases, map);
+    return NO_MATCH;
   }
   
   @SuppressWarnings("unused")
   private int fallback(String value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+  
+  private int link(String value) {
     Objects.requireNonNull(value);
-    int index = map.getOrDefault(value, NO_MATCH);
+    int index = indexOf(value);
     
     //System.out.println("depth " + depth);
     
     if (depth == MAX_DEPTH) {
       //System.out.println("reach max depth");
-      callsite.setTarget(GET_OR_DEFAULT.bindTo(map));
+      callsite.setTarget(insertArguments(ignoreCase? INDEX_OF_IGNORE_CASE: INDEX_OF, 0, perfectHash, stringcases));
+      stats.megamorphic();
       return index;
     }
     
     if (depth == stringcases.length) {
       //System.out.println("reach cases length");
-      callsite.setTarget(createCascadeIfEquals(stringcases));
+      callsite.setTarget(callsite.createAllCases());
+      stats.relink(stringcases.length);
       return index;
     }
     
-    setTarget(guardWithTest(insertArguments(EQUALS, 1, value),
+    setTarget(guardWithTest(test(value),
         dropArguments(constant(int.class, index), 0, String.class),
-        new StringSwitchCallSite(depth + 1, callsite, stringcases, map).dynamicInvoker()));
+        new StringSwitchCallSite(depth + 1, callsite, stringcases, perfectHash).dynamicInvoker()));
+    stats.link();
     return index;
   }
   
-  private static MethodHandle createCascadeIfEquals(String[] stringcases) {
+  private int indexOf(String value) {
+    if (ignoreCase) {
+      return indexOfIgnoreCase(perfectHash, stringcases, value);
+    }
+    return indexOf(perfectHash, stringcases, value);
+  }
+  
+  private MethodHandle test(String stringcase) {
+    if (ignoreCase) {
+      return insertArguments(EQUALS_IGNORE_CASE, 0, stringcase);
+    }
+    return insertArguments(EQUALS, 1, stringcase);
+  }
+  
+  private MethodHandle createAllCases() {
+    if (!ignoreCase && stringcases.length > MAX_CASCADE_LENGTH) {
+      // use a switch on the hash codes instead of a linear cascade
+      StringSwitch stringSwitch = StringSwitchGenerator.generate(stringcases);
+      if (stringSwitch != null) {
+        return STRING_SWITCH.bindTo(stringSwitch);
+      }
+    }
+    // profile the calls to order the cascade
+    synchronized(this) {
+      profiling = true;
+    }
+    return PROFILE.bindTo(this);
+  }
+  
+  @SuppressWarnings("unused")
+  private int profile(String value) {
+    Objects.requireNonNull(value);
+    int index = indexOf(value);
+    if (index != NO_MATCH) {
+      hits[index]++;
+    }
+    if (++samples >= PROFILE_SAMPLES) {
+      reorder();
+    }
+    return index;
+  }
+  
+  private void reorder() {
+    synchronized(this) {
+      if (!profiling) {  // already re-ordered by another thread
+        return;
+      }
+      profiling = false;
+    }
+    int[] hits = this.hits.clone();
+    Integer[] order = new Integer[stringcases.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // the sort is stable, so cases with the same number of hits stay in declaration order
+    Arrays.sort(order, (i1, i2) -> Integer.compare(hits[i2], hits[i1]));
+    
+    setTarget(createCascade(order));
+    stats.relink(stringcases.length);
+  }
+  
+  private MethodHandle createCascade(Integer[] order) {
     MethodHandle target = dropArguments(constant(int.class, NO_MATCH), 0, String.class);
-    for(int i = stringcases.length; --i >= 0;) {
-      String stringcase = stringcases[i];
-      target = guardWithTest(insertArguments(EQUALS, 1, stringcase),
-          dropArguments(constant(int.class, i), 0, String.class),
+    for(int i = order.length; --i >= 0;) {
+      int index = order[i];
+      target = guardWithTest(test(stringcases[index]),
+          dropArguments(constant(int.class, index), 0, String.class),
           target);
     }
     return target;
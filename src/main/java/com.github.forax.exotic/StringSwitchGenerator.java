@@ -0,0 +1,363 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Generates a class implementing {@link StringSwitch} with the same bytecode javac generates for a
+ * switch on strings, a {@code lookupswitch} on the hash code of the string followed by calls to
+ * {@code equals} for the cases that have the same hash code.
+ *
+ * <pre>
+ * public int stringSwitch(String value) {
+ *   switch(value.hashCode()) {
+ *   case 101574:  // "foo".hashCode()
+ *     if (value.equals("foo")) {
+ *       return 0;
+ *     }
+ *     return NO_MATCH;
+ *   ...
+ *   default:
+ *     return NO_MATCH;
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>The class file is generated with the version 49 (Java 5), so there is no need to compute the
+ * stack map frames, the class is defined as a hidden class (or as an anonymous class before Java
+ * 15).
+ */
+final class StringSwitchGenerator {
+  private StringSwitchGenerator() {
+    throw new AssertionError();
+  }
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+
+  private static final int ICONST_0 = 3;
+  private static final int BIPUSH = 16;
+  private static final int SIPUSH = 17;
+  private static final int LDC_W = 19;
+  private static final int ALOAD_0 = 42;
+  private static final int ALOAD_1 = 43;
+  private static final int IFEQ = 153;
+  private static final int LOOKUPSWITCH = 171;
+  private static final int IRETURN = 172;
+  private static final int RETURN = 177;
+  private static final int INVOKEVIRTUAL = 182;
+  private static final int INVOKESPECIAL = 183;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private static final int MAX_CODE_LENGTH = 65535;
+  private static final int MAX_CONSTANT_POOL_SIZE = 65535;
+
+  /** A constant pool, the entries are de-duplicated. */
+  private static final class ConstantPool {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream output = new DataOutputStream(bytes);
+    private final HashMap<List<Object>, Integer> map = new HashMap<>();
+    private int count = 1;
+    // a string constant is longer than 65535 bytes once encoded in modified UTF-8
+    private boolean tooBig;
+
+    private int entry(List<Object> key, int tag, int... operands) {
+      Integer index = map.get(key);
+      if (index != null) {
+        return index;
+      }
+      try {
+        output.writeByte(tag);
+        for (int operand : operands) {
+          output.writeShort(operand);
+        }
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      map.put(key, count);
+      return count++;
+    }
+
+    int utf8(String value) {
+      List<Object> key = Arrays.asList(CONSTANT_UTF8, value);
+      Integer index = map.get(key);
+      if (index != null) {
+        return index;
+      }
+      try {
+        output.writeByte(CONSTANT_UTF8);
+        output.writeUTF(value);
+      } catch (UTFDataFormatException e) {
+        tooBig = true;
+        return 0;
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      map.put(key, count);
+      return count++;
+    }
+
+    int integer(int value) {
+      List<Object> key = Arrays.asList(CONSTANT_INTEGER, value);
+      Integer index = map.get(key);
+      if (index != null) {
+        return index;
+      }
+      try {
+        output.writeByte(CONSTANT_INTEGER);
+        output.writeInt(value);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      map.put(key, count);
+      return count++;
+    }
+
+    int classRef(String internalName) {
+      int name = utf8(internalName);
+      return entry(Arrays.asList(CONSTANT_CLASS, internalName), CONSTANT_CLASS, name);
+    }
+
+    int string(String value) {
+      int utf8 = utf8(value);
+      return entry(Arrays.asList(CONSTANT_STRING, value), CONSTANT_STRING, utf8);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+      int ownerIndex = classRef(owner);
+      int nameIndex = utf8(name);
+      int descriptorIndex = utf8(descriptor);
+      int nameAndType =
+          entry(
+              Arrays.asList(CONSTANT_NAME_AND_TYPE, name, descriptor),
+              CONSTANT_NAME_AND_TYPE,
+              nameIndex,
+              descriptorIndex);
+      return entry(
+          Arrays.asList(CONSTANT_METHODREF, owner, name, descriptor),
+          CONSTANT_METHODREF,
+          ownerIndex,
+          nameAndType);
+    }
+  }
+
+  /**
+   * Generates and loads a class implementing {@link StringSwitch} for the {@code stringcases}, the
+   * strings should be non null and different.
+   *
+   * @param stringcases the strings to match.
+   * @return a new StringSwitch or null if the generated code or one of the strings is too big.
+   */
+  static StringSwitch generate(String[] stringcases) {
+    byte[] data = generateBytecode(stringcases);
+    if (data == null) {
+      return null;
+    }
+    Lookup lookup = HiddenClasses.define(MethodHandles.lookup(), StringSwitch.class, data, false);
+    try {
+      MethodHandle constructor =
+          lookup.findConstructor(lookup.lookupClass(), methodType(void.class));
+      return (StringSwitch) constructor.invoke();
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    } catch (Throwable e) {
+      throw Thrower.rethrow(e);
+    }
+  }
+
+  static byte[] generateBytecode(String[] stringcases) {
+    String className = "com/github/forax/exotic/StringSwitch$Generated";
+    ConstantPool pool = new ConstantPool();
+    int thisClass = pool.classRef(className);
+    int superClass = pool.classRef("java/lang/Object");
+    int stringSwitchInterface = pool.classRef("com/github/forax/exotic/StringSwitch");
+    int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+    int hashCode = pool.methodRef("java/lang/String", "hashCode", "()I");
+    int equals = pool.methodRef("java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+    int codeName = pool.utf8("Code");
+    int initName = pool.utf8("<init>");
+    int initDescriptor = pool.utf8("()V");
+    int stringSwitchName = pool.utf8("stringSwitch");
+    int stringSwitchDescriptor = pool.utf8("(Ljava/lang/String;)I");
+
+    byte[] stringSwitchCode = generateStringSwitchCode(stringcases, pool, hashCode, equals);
+    if (stringSwitchCode == null || pool.tooBig || pool.count > MAX_CONSTANT_POOL_SIZE) {
+      return null;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    try {
+      output.writeInt(0xCAFEBABE);
+      output.writeShort(0); // minor version
+      output.writeShort(49); // major version, Java 5
+      output.writeShort(pool.count);
+      pool.output.flush();
+      pool.bytes.writeTo(output);
+      output.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      output.writeShort(thisClass);
+      output.writeShort(superClass);
+      output.writeShort(1); // interfaces
+      output.writeShort(stringSwitchInterface);
+      output.writeShort(0); // fields
+      output.writeShort(2); // methods
+
+      // constructor
+      byte[] initCode = {ALOAD_0, (byte) INVOKESPECIAL, 0, 0, (byte) RETURN};
+      initCode[2] = (byte) (objectInit >> 8);
+      initCode[3] = (byte) objectInit;
+      writeMethod(output, initName, initDescriptor, codeName, 1, 1, initCode);
+
+      // stringSwitch
+      writeMethod(
+          output, stringSwitchName, stringSwitchDescriptor, codeName, 2, 2, stringSwitchCode);
+
+      output.writeShort(0); // attributes
+      output.flush();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeMethod(
+      DataOutputStream output,
+      int name,
+      int descriptor,
+      int codeName,
+      int maxStack,
+      int maxLocals,
+      byte[] code)
+      throws IOException {
+    output.writeShort(ACC_PUBLIC);
+    output.writeShort(name);
+    output.writeShort(descriptor);
+    output.writeShort(1); // attributes
+    output.writeShort(codeName);
+    output.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+    output.writeShort(maxStack);
+    output.writeShort(maxLocals);
+    output.writeInt(code.length);
+    output.write(code);
+    output.writeShort(0); // exception table
+    output.writeShort(0); // attributes
+  }
+
+  private static byte[] generateStringSwitchCode(
+      String[] stringcases, ConstantPool pool, int hashCode, int equals) {
+    // group the cases by hash code, the keys of a lookupswitch must be sorted
+    LinkedHashMap<Integer, List<Integer>> caseMap = new LinkedHashMap<>();
+    for (int i = 0; i < stringcases.length; i++) {
+      caseMap.computeIfAbsent(stringcases[i].hashCode(), __ -> new ArrayList<>()).add(i);
+    }
+    int[] hashes = caseMap.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream code = new DataOutputStream(bytes);
+    try {
+      code.writeByte(ALOAD_1);
+      code.writeByte(INVOKEVIRTUAL);
+      code.writeShort(hashCode);
+      int switchOffset = code.size();
+      code.writeByte(LOOKUPSWITCH);
+      while (code.size() % 4 != 0) {
+        code.writeByte(0); // padding
+      }
+      int tableOffset = code.size();
+      // the offsets are patched later
+      code.writeInt(0); // default
+      code.writeInt(hashes.length);
+      for (int hash : hashes) {
+        code.writeInt(hash);
+        code.writeInt(0);
+      }
+
+      int[] caseOffsets = new int[hashes.length];
+      for (int i = 0; i < hashes.length; i++) {
+        caseOffsets[i] = code.size() - switchOffset;
+        for (int index : caseMap.get(hashes[i])) {
+          // if (value.equals(stringcase)) return index;
+          code.writeByte(ALOAD_1);
+          code.writeByte(LDC_W);
+          code.writeShort(pool.string(stringcases[index]));
+          code.writeByte(INVOKEVIRTUAL);
+          code.writeShort(equals);
+          code.writeByte(IFEQ);
+          code.writeShort(3 + pushIntLength(index) + 1);
+          pushInt(code, pool, index);
+          code.writeByte(IRETURN);
+        }
+        pushInt(code, pool, StringSwitch.NO_MATCH);
+        code.writeByte(IRETURN);
+      }
+      int defaultOffset = code.size() - switchOffset;
+      pushInt(code, pool, StringSwitch.NO_MATCH);
+      code.writeByte(IRETURN);
+      code.flush();
+
+      if (bytes.size() > MAX_CODE_LENGTH) {
+        return null;
+      }
+      byte[] array = bytes.toByteArray();
+      writeInt(array, tableOffset, defaultOffset);
+      for (int i = 0; i < hashes.length; i++) {
+        writeInt(array, tableOffset + 8 + i * 8 + 4, caseOffsets[i]);
+      }
+      return array;
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static int pushIntLength(int value) {
+    if (value >= -1 && value <= 5) {
+      return 1;
+    }
+    if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      return 2;
+    }
+    return 3; // sipush or ldc_w
+  }
+
+  private static void pushInt(DataOutputStream code, ConstantPool pool, int value)
+      throws IOException {
+    if (value >= -1 && value <= 5) {
+      code.writeByte(ICONST_0 + value);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      code.writeByte(BIPUSH);
+      code.writeByte(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      code.writeByte(SIPUSH);
+      code.writeShort(value);
+    } else {
+      code.writeByte(LDC_W);
+      code.writeShort(pool.integer(value));
+    }
+  }
+
+  private static void writeInt(byte[] array, int offset, int value) {
+    array[offset] = (byte) (value >> 24);
+    array[offset + 1] = (byte) (value >> 16);
+    array[offset + 2] = (byte) (value >> 8);
+    array[offset + 3] = (byte) value;
+  }
+}
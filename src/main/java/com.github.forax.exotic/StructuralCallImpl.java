@@ -161,17 +161,33 @@ interface StructuralCallImpl extends StructuralCall {
 
     private final Lookup lookup;
     private final String name;
+    private final CallSiteStats stats;
 
     InliningCacheCallSite(MethodType type, Lookup lookup, String name) {
+      this(type, lookup, name, CallSiteStats.create(StructuralCall.class));
+    }
+
+    private InliningCacheCallSite(
+        MethodType type, Lookup lookup, String name, CallSiteStats stats) {
       super(type);
       this.lookup = lookup;
       this.name = name;
+      this.stats = stats;
       setTarget(
           MethodHandles.foldArguments(MethodHandles.exactInvoker(type), FALLBACK.bindTo(this)));
     }
 
     @SuppressWarnings("unused")
     private MethodHandle fallback(Object receiver) {
+      long start = stats.enter();
+      try {
+        return link(receiver);
+      } finally {
+        stats.exit(start);
+      }
+    }
+
+    private MethodHandle link(Object receiver) {
       Class<?> receiverClass = receiver.getClass();
       MethodHandle target;
       try {
@@ -187,8 +203,9 @@ interface StructuralCallImpl extends StructuralCall {
           MethodHandles.guardWithTest(
               TYPECHECK.bindTo(receiverClass),
               target,
-              new InliningCacheCallSite(type(), lookup, name).dynamicInvoker());
+              new InliningCacheCallSite(type(), lookup, name, stats).dynamicInvoker());
       setTarget(guard);
+      stats.link();
       return target;
     }
 
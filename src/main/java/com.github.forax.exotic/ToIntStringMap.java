@@ -0,0 +1,44 @@
+package com.github.forax.exotic;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Map;
+
+/**
+ * An immutable map from strings to ints, like a {@link StringMap}, the values associated with the
+ * keys already seen are constants for the JIT.
+ *
+ * @see StringMap
+ */
+@FunctionalInterface
+public interface ToIntStringMap {
+  /**
+   * Returns the value associated with the {@code key} or the default value if there is no value.
+   *
+   * @param key the key.
+   * @return the value associated with the {@code key} or the default value.
+   * @throws NullPointerException if the {@code key} is null.
+   */
+  int getAsInt(String key);
+
+  /**
+   * Creates a ToIntStringMap with the keys and values of {@code map}, {@link #getAsInt(String)}
+   * returns {@code defaultValue} if there is no value associated with a key.
+   *
+   * @param map the keys and the values.
+   * @param defaultValue the value returned if there is no value associated with a key.
+   * @return a new ToIntStringMap.
+   * @throws NullPointerException if the map is null or a key or a value of the map is null.
+   */
+  static ToIntStringMap create(Map<String, Integer> map, int defaultValue) {
+    MethodHandle mh =
+        StringMapCallSite.create(ToIntStringMap.class, int.class, map, defaultValue)
+            .dynamicInvoker();
+    return key -> {
+      try {
+        return (int) mh.invokeExact(key);
+      } catch (Throwable t) {
+        throw Thrower.rethrow(t);
+      }
+    };
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.forax.exotic;
 
 import java.lang.invoke.MethodHandle;
+import java.util.stream.Collector;
 
 /**
  * A TypeSwitch allows to encode a switch on types as a plain old switch on integers.
@@ -58,6 +59,53 @@ public interface TypeSwitch {
    */
   int typeSwitch(Object value);
   
+  /**
+   * Stores in {@code indexes} the index returned by {@link #typeSwitch(Object)} for each object of {@code values},
+   * the index of {@code values[i]} is stored in {@code indexes[i]}.
+   * 
+   * @param values an array of objects.
+   * @param indexes the array of the indexes, its length should be at least the length of {@code values}.
+   * @throws NullPointerException if {@code values} or {@code indexes} is null.
+   * @throws IndexOutOfBoundsException if {@code indexes} is shorter than {@code values}.
+   * 
+   * @see #typeSwitch(Object[], int[], int, int)
+   */
+  default void typeSwitch(Object[] values, int[] indexes) {
+    typeSwitch(values, indexes, 0, values.length);
+  }
+  
+  /**
+   * Stores in {@code indexes} the index returned by {@link #typeSwitch(Object)} for each object of {@code values}
+   * from {@code from} (inclusive) to {@code to} (exclusive), the index of {@code values[i]} is stored in {@code indexes[i]}.
+   * 
+   * The TypeSwitch returned by {@link #create(boolean, Class...) create} overrides this method
+   * with a loop specific to the switch, the loop calls the inlining cache of the switch directly,
+   * so the JIT sees one hot loop around the inlining cache even if the TypeSwitch is not a constant.
+   * 
+   * @param values an array of objects.
+   * @param indexes the array of the indexes.
+   * @param from the index of the first object, inclusive.
+   * @param to the index of the last object, exclusive.
+   * @throws NullPointerException if {@code values} or {@code indexes} is null.
+   * @throws IndexOutOfBoundsException if the range is not inside the two arrays.
+   */
+  default void typeSwitch(Object[] values, int[] indexes, int from, int to) {
+    BatchSwitches.checkRange(values.length, indexes.length, from, to);
+    for(int i = from; i < to; i++) {
+      indexes[i] = typeSwitch(values[i]);
+    }
+  }
+  
+  /**
+   * Returns a collector that collects the indexes returned by {@link #typeSwitch(Object)}
+   * for the objects of a stream into an array, in the encounter order of the stream.
+   * 
+   * @return a collector that collects the indexes of the objects into an array.
+   */
+  default Collector<Object, ?, int[]> toIndexes() {
+    return BatchSwitches.toIndexes(this::typeSwitch);
+  }
+  
   /**
    * Return value of {@link #typeSwitch(Object)} that indicates that no match is found.
    */
@@ -83,12 +131,6 @@ public interface TypeSwitch {
   static TypeSwitch create(boolean nullMatch, Class<?>... typecases) {
     TypeSwitchCallSite.validatePartialOrder(typecases);
     MethodHandle mh = TypeSwitchCallSite.wrapNullIfNecessary(nullMatch, TypeSwitchCallSite.create(typecases).dynamicInvoker());
-    return value -> {
-      try {
-        return (int)mh.invokeExact(value);  
-      } catch(Throwable t) {
-        throw Thrower.rethrow(t);
-      }
-    };
+    return BatchSwitches.typeSwitch(mh);
   }
 }
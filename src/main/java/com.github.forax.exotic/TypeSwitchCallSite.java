@@ -169,12 +169,14 @@ class TypeSwitchCallSite extends MutableCallSite {
   private final int depth;
   private final TypeSwitchCallSite callsite;
   private final Strategy strategy;
+  private final CallSiteStats stats;
   
   private TypeSwitchCallSite(Strategy strategy) {
     super(OBJECT_TO_INT);
     this.depth = 0;
     this.callsite = this;
     this.strategy = strategy;
+    this.stats = CallSiteStats.create(TypeSwitch.class);
     setTarget(FALLBACK.bindTo(this));
   }
   
@@ -183,6 +185,7 @@ class TypeSwitchCallSite extends MutableCallSite {
     this.depth = depth;
     this.callsite = callsite;
     this.strategy = strategy;
+    this.stats = callsite.stats;
     setTarget(FALLBACK.bindTo(this));
   }
 
@@ -198,17 +201,28 @@ class TypeSwitchCallSite extends MutableCallSite {
   
   @SuppressWarnings("unused")
   private int fallback(Object value) {
+    long start = stats.enter();
+    try {
+      return link(value);
+    } finally {
+      stats.exit(start);
+    }
+  }
+  
+  private int link(Object value) {
     Class<?> receiverClass = value.getClass();
     int index = strategy.index(receiverClass);
     
     if (depth == MAX_DEPTH) {
       setTarget(strategy.target());
+      stats.megamorphic();
       return index;
     }
     
     setTarget(guardWithTest(TYPECHECK.bindTo(receiverClass),
         dropArguments(constant(int.class, index), 0, Object.class),
         new TypeSwitchCallSite(depth + 1, callsite, strategy).dynamicInvoker()));
+    stats.link();
     return index;
   }
   
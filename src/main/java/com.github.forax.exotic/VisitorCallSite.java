@@ -49,12 +49,14 @@ class VisitorCallSite extends MutableCallSite {
   private final int depth;
   private final VisitorCallSite callsite;
   private final HashMap<Class<?>, MethodHandle> map;
+  private final CallSiteStats stats;
 
   private VisitorCallSite(MethodType methodType, HashMap<Class<?>,MethodHandle> map) {
     super(methodType);
     this.depth = 0;
     this.callsite = this;
     this.map = map;
+    this.stats = CallSiteStats.create(Visitor.class);
     setTarget(foldArguments(exactInvoker(methodType), FALLBACK.bindTo(this)));
   }
   
@@ -63,11 +65,21 @@ class VisitorCallSite extends MutableCallSite {
     this.depth = depth;
     this.callsite = callsite;
     this.map = map;
+    this.stats = callsite.stats;
     setTarget(foldArguments(exactInvoker(methodType), FALLBACK.bindTo(this)));
   }
 
   @SuppressWarnings("unused")
   private MethodHandle fallback(Object o) {
+    long start = stats.enter();
+    try {
+      return link(o);
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private MethodHandle link(Object o) {
     Class<?> receiverClass = o.getClass();
     MethodHandle target = map.get(receiverClass);
     if (target == null) {
@@ -76,11 +88,13 @@ class VisitorCallSite extends MutableCallSite {
     
     if (depth == MAX_DEPTH) {
       callsite.setTarget(foldArguments(exactInvoker(type()), FIND.bindTo(map)));
+      stats.megamorphic();
     } else {
       MethodHandle guard = guardWithTest(TYPECHECK.bindTo(receiverClass),
           target,
           new VisitorCallSite(type(), callsite, depth + 1, map).dynamicInvoker());
       setTarget(guard);
+      stats.link();
     }
     
     return target;
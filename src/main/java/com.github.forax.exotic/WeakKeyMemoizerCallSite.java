@@ -0,0 +1,263 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A memoizer that references its keys weakly, so a key (and its class loader) can be collected
+ * even if the key is used by the memoizer, like a {@link java.util.WeakHashMap} the values are
+ * referenced strongly.
+ *
+ * <p>The first {@code maxDepth} keys are inlined as a cascade of {@code if equals else} where each
+ * test holds its key through a weak reference, the other keys are stored in a hash table as weak
+ * references, reading them never takes a lock nor allocates. All the weak references are
+ * registered to a reference queue of the memoizer, drained when a new key is inserted and
+ * periodically by the {@link DaemonScheduler}, when an inlined key is collected, the cascade is
+ * re-created without it, so the value is not referenced anymore and the next new key will be
+ * inlined instead.
+ */
+final class WeakKeyMemoizerCallSite extends MutableCallSite {
+  private static final MethodHandle LOOKUP, WEAK_EQUALS;
+
+  static {
+    Lookup lookup = MethodHandles.lookup();
+    try {
+      LOOKUP =
+          lookup.findVirtual(
+              WeakKeyMemoizerCallSite.class, "lookup", methodType(Object.class, Object.class));
+      WEAK_EQUALS =
+          lookup.findStatic(
+              WeakKeyMemoizerCallSite.class,
+              "weakEquals",
+              methodType(boolean.class, KeyReference.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final long EXPUNGE_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final class KeyReference extends WeakReference<Object> {
+    final Object value;
+    final int hash;
+
+    KeyReference(Object key, int hash, Object value, ReferenceQueue<Object> queue) {
+      super(key, queue);
+      this.value = value;
+      this.hash = hash;
+    }
+  }
+
+  /** Expunge the collected keys of a memoizer periodically, the memoizer is referenced weakly. */
+  private static final class Expunger implements Runnable {
+    private final WeakReference<WeakKeyMemoizerCallSite> callSiteRef;
+    volatile ScheduledFuture<?> future;
+
+    Expunger(WeakKeyMemoizerCallSite callSite) {
+      this.callSiteRef = new WeakReference<>(callSite);
+    }
+
+    @Override
+    public void run() {
+      WeakKeyMemoizerCallSite callSite = callSiteRef.get();
+      if (callSite == null) { // the memoizer is not used anymore
+        future.cancel(false);
+        return;
+      }
+      callSite.expunge();
+    }
+  }
+
+  private final Function<Object, Object> function;
+  private final int maxDepth;
+  private final MethodHandle lookupTarget;
+  private final CallSiteStats stats = CallSiteStats.create(ConstantMemoizer.class);
+  private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+  // the keys of the hash table are indexed by their hash, the equality is resolved when probing so
+  // a lookup doesn't allocate, a bucket is an immutable array replaced under the lock
+  private volatile AtomicReferenceArray<KeyReference[]> buckets = new AtomicReferenceArray<>(16);
+
+  // guarded by this
+  private int size;
+  private final ArrayList<KeyReference> inlined = new ArrayList<>();
+  private boolean megamorphic;
+
+  @SuppressWarnings("unchecked")
+  WeakKeyMemoizerCallSite(MethodType type, Function<?, ?> function, int maxDepth) {
+    super(type);
+    this.function = (Function<Object, Object>) function;
+    this.maxDepth = maxDepth;
+    MethodHandle lookupTarget = LOOKUP.bindTo(this).asType(type);
+    this.lookupTarget = lookupTarget;
+    setTarget(lookupTarget);
+
+    Expunger expunger = new Expunger(this);
+    expunger.future =
+        DaemonScheduler.SCHEDULER.scheduleWithFixedDelay(
+            expunger, EXPUNGE_PERIOD, EXPUNGE_PERIOD, TimeUnit.NANOSECONDS);
+  }
+
+  @SuppressWarnings("unused")
+  private static boolean weakEquals(KeyReference reference, Object value) {
+    Object key = reference.get();
+    return key != null && key.equals(value);
+  }
+
+  private static int hash(Object key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static KeyReference find(KeyReference[] bucket, int hash, Object key) {
+    if (bucket != null) {
+      for (KeyReference reference : bucket) {
+        if (reference.hash == hash) {
+          Object referent = reference.get();
+          if (referent != null && key.equals(referent)) {
+            return reference;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unused")
+  private Object lookup(Object key) {
+    int hash = hash(key);
+    AtomicReferenceArray<KeyReference[]> buckets = this.buckets;
+    KeyReference reference = find(buckets.get(hash & (buckets.length() - 1)), hash, key);
+    if (reference != null) {
+      return reference.value;
+    }
+    long start = stats.enter();
+    try {
+      expunge();
+      // call the function outside of the lock, the function may be recursive
+      return insert(key, hash, Objects.requireNonNull(function.apply(key)));
+    } finally {
+      stats.exit(start);
+    }
+  }
+
+  private synchronized Object insert(Object key, int hash, Object value) {
+    AtomicReferenceArray<KeyReference[]> buckets = this.buckets;
+    int index = hash & (buckets.length() - 1);
+    KeyReference[] bucket = buckets.get(index);
+    KeyReference existing = find(bucket, hash, key);
+    if (existing != null) { // inserted by another thread
+      return existing.value;
+    }
+    KeyReference reference = new KeyReference(key, hash, value, queue);
+    buckets.set(index, add(bucket, reference));
+    if (++size > buckets.length() >> 1) {
+      this.buckets = resize(buckets);
+    }
+    if (inlined.size() < maxDepth) {
+      inlined.add(reference);
+      relink();
+    } else if (!megamorphic) {
+      megamorphic = true;
+      stats.megamorphic();
+    }
+    return value;
+  }
+
+  private static KeyReference[] add(KeyReference[] bucket, KeyReference reference) {
+    if (bucket == null) {
+      return new KeyReference[] {reference};
+    }
+    KeyReference[] newBucket = Arrays.copyOf(bucket, bucket.length + 1);
+    newBucket[bucket.length] = reference;
+    return newBucket;
+  }
+
+  private static AtomicReferenceArray<KeyReference[]> resize(
+      AtomicReferenceArray<KeyReference[]> buckets) {
+    AtomicReferenceArray<KeyReference[]> newBuckets =
+        new AtomicReferenceArray<>(buckets.length() << 1);
+    int mask = newBuckets.length() - 1;
+    for (int i = 0; i < buckets.length(); i++) {
+      KeyReference[] bucket = buckets.get(i);
+      if (bucket == null) {
+        continue;
+      }
+      for (KeyReference reference : bucket) {
+        int index = reference.hash & mask;
+        newBuckets.set(index, add(newBuckets.get(index), reference));
+      }
+    }
+    return newBuckets;
+  }
+
+  private void remove(KeyReference reference) { // guarded by this
+    AtomicReferenceArray<KeyReference[]> buckets = this.buckets;
+    int index = reference.hash & (buckets.length() - 1);
+    KeyReference[] bucket = buckets.get(index);
+    for (int i = 0; i < bucket.length; i++) {
+      if (bucket[i] == reference) {
+        KeyReference[] newBucket = null;
+        if (bucket.length != 1) {
+          newBucket = new KeyReference[bucket.length - 1];
+          System.arraycopy(bucket, 0, newBucket, 0, i);
+          System.arraycopy(bucket, i + 1, newBucket, i, newBucket.length - i);
+        }
+        buckets.set(index, newBucket);
+        size--;
+        return;
+      }
+    }
+  }
+
+  void expunge() {
+    KeyReference reference = (KeyReference) queue.poll();
+    if (reference == null) { // fast path, no key was collected
+      return;
+    }
+    synchronized (this) {
+      boolean relink = false;
+      do {
+        remove(reference);
+        relink |= inlined.remove(reference);
+      } while ((reference = (KeyReference) queue.poll()) != null);
+      if (relink) {
+        relink();
+      }
+    }
+  }
+
+  private void relink() {
+    MethodType type = type();
+    Class<?> keyClass = type.parameterType(0);
+    Class<?> valueClass = type.returnType();
+    MethodHandle target = lookupTarget;
+    for (int i = inlined.size(); --i >= 0; ) {
+      KeyReference reference = inlined.get(i);
+      target =
+          guardWithTest(
+              WEAK_EQUALS.bindTo(reference).asType(methodType(boolean.class, keyClass)),
+              dropArguments(constant(valueClass, reference.value), 0, keyClass),
+              target);
+    }
+    setTarget(target);
+    stats.relink(inlined.size());
+  }
+}
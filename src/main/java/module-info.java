@@ -1,5 +1,7 @@
 module com.github.forax.exotic {
   requires static jdk.unsupported;  // optional if Java 15+
+  requires static java.management;  // only if the statistics are enabled
+  requires static jdk.jfr;  // only if the events are recorded, Java 11+
 
   exports com.github.forax.exotic;
 }
@@ -0,0 +1,103 @@
+package com.github.forax.exotic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits the re-links of the call sites of the library as Java Flight Recorder events.
+ *
+ * <p>This class is only available with Java 11+ (in {@code META-INF/versions/11}), it is loaded by
+ * reflection by {@link CallSiteEvents}.
+ */
+final class JfrCallSiteEvents implements CallSiteEvents {
+  @Name("com.github.forax.exotic.Relink")
+  @Label("Call Site Relink")
+  @Description("A call site of an inlining cache has been re-linked")
+  @Category("Exotic")
+  @StackTrace(true)
+  static final class RelinkEvent extends Event {
+    @Label("Owner")
+    Class<?> owner;
+
+    @Label("Depth")
+    int depth;
+  }
+
+  @Name("com.github.forax.exotic.Megamorphic")
+  @Label("Megamorphic Transition")
+  @Description("An inlining cache has stopped to add new tests and uses a generic strategy")
+  @Category("Exotic")
+  @StackTrace(true)
+  static final class MegamorphicEvent extends Event {
+    @Label("Owner")
+    Class<?> owner;
+
+    @Label("Depth")
+    int depth;
+  }
+
+  @Name("com.github.forax.exotic.SyncAll")
+  @Label("Call Sites Synchronization")
+  @Description("Several call sites have been synchronized, the codes that use them are deoptimized")
+  @Category("Exotic")
+  @StackTrace(true)
+  static final class SyncAllEvent extends Event {
+    @Label("Owner")
+    Class<?> owner;
+
+    @Label("Call Site Count")
+    int count;
+  }
+
+  private final EventType relinkType;
+  private final EventType megamorphicType;
+  private final EventType syncAllType;
+
+  JfrCallSiteEvents() {
+    // fail early if the module jdk.jfr is not available
+    relinkType = EventType.getEventType(RelinkEvent.class);
+    megamorphicType = EventType.getEventType(MegamorphicEvent.class);
+    syncAllType = EventType.getEventType(SyncAllEvent.class);
+  }
+
+  @Override
+  public boolean isEnabled() {
+    // true only if a recording is running with one of the events enabled
+    return relinkType.isEnabled() || megamorphicType.isEnabled() || syncAllType.isEnabled();
+  }
+
+  @Override
+  public void relink(Class<?> owner, int depth) {
+    RelinkEvent event = new RelinkEvent();
+    if (event.shouldCommit()) {
+      event.owner = owner;
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void megamorphic(Class<?> owner, int depth) {
+    MegamorphicEvent event = new MegamorphicEvent();
+    if (event.shouldCommit()) {
+      event.owner = owner;
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void syncAll(Class<?> owner, int count) {
+    SyncAllEvent event = new SyncAllEvent();
+    if (event.shouldCommit()) {
+      event.owner = owner;
+      event.count = count;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.github.forax.exotic;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class ByteStringSwitchTests {
+  @Test
+  public void simpleArray() {
+    ByteStringSwitch byteSwitch = ByteStringSwitch.create("foo", "bar", "été");
+    byte[] bytes = "xxfoobarété".getBytes(UTF_8);
+    assertAll(
+        () -> assertEquals(0, byteSwitch.byteSwitch(bytes, 2, 3)),
+        () -> assertEquals(1, byteSwitch.byteSwitch(bytes, 5, 3)),
+        () -> assertEquals(2, byteSwitch.byteSwitch(bytes, 8, 5)),
+        () -> assertEquals(ByteStringSwitch.NO_MATCH, byteSwitch.byteSwitch(bytes, 0, 3)),
+        () -> assertEquals(ByteStringSwitch.NO_MATCH, byteSwitch.byteSwitch(bytes, 2, 2)),
+        () -> assertEquals(ByteStringSwitch.NO_MATCH, byteSwitch.byteSwitch(bytes, 2, 0))
+        );
+  }
+
+  @Test
+  public void simpleBuffer() {
+    ByteBufferSwitch byteSwitch = ByteBufferSwitch.create("GET", "POST");
+    ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+    buffer.put("POST /".getBytes(UTF_8)).flip();
+    buffer.limit(4);
+    assertEquals(1, byteSwitch.byteSwitch(buffer));
+    assertEquals(0, buffer.position());
+    assertEquals(4, buffer.limit());
+    buffer.limit(3);
+    assertEquals(ByteBufferSwitch.NO_MATCH, byteSwitch.byteSwitch(buffer));
+    assertEquals(0, byteSwitch.byteSwitch(ByteBuffer.wrap("GET".getBytes(UTF_8))));
+  }
+
+  @Test
+  public void badRange() {
+    ByteStringSwitch byteSwitch = ByteStringSwitch.create("foo");
+    byte[] bytes = new byte[4];
+    assertAll(
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> byteSwitch.byteSwitch(bytes, -1, 2)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> byteSwitch.byteSwitch(bytes, 2, 3)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> byteSwitch.byteSwitch(bytes, 0, -1)),
+        () -> assertThrows(NullPointerException.class, () -> byteSwitch.byteSwitch(null, 0, 0))
+        );
+  }
+
+  @Test
+  public void aCaseCanNotBeNull() {
+    assertThrows(NullPointerException.class, () -> ByteStringSwitch.create("foo", null));
+    assertThrows(NullPointerException.class, () -> ByteBufferSwitch.create("foo", null));
+  }
+
+  @Test
+  public void sameCaseTwice() {
+    assertThrows(IllegalStateException.class, () -> ByteStringSwitch.create("foo", "bar", "foo"));
+  }
+
+  @Test
+  public void allCasesSeen() {
+    String[] cases = IntStream.range(0, 10).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    ByteStringSwitch byteSwitch = ByteStringSwitch.create(cases);
+    ByteBufferSwitch bufferSwitch = ByteBufferSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        byte[] bytes = cases[i].getBytes(UTF_8);
+        assertEquals(i, byteSwitch.byteSwitch(bytes, 0, bytes.length));
+        assertEquals(i, bufferSwitch.byteSwitch(ByteBuffer.wrap(bytes)));
+      }
+    }
+  }
+
+  @Test
+  public void megamorphic() {
+    String[] cases = IntStream.range(0, 500).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    ByteStringSwitch byteSwitch = ByteStringSwitch.create(cases);
+    ByteBufferSwitch bufferSwitch = ByteBufferSwitch.create(cases);
+    byte[] unknown = "unknown".getBytes(UTF_8);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        byte[] bytes = ("_" + cases[i]).getBytes(UTF_8);
+        assertEquals(i, byteSwitch.byteSwitch(bytes, 1, bytes.length - 1));
+        assertEquals(i, bufferSwitch.byteSwitch(ByteBuffer.wrap(bytes, 1, bytes.length - 1)));
+      }
+      assertEquals(ByteStringSwitch.NO_MATCH, byteSwitch.byteSwitch(unknown, 0, unknown.length));
+      assertEquals(ByteBufferSwitch.NO_MATCH, bufferSwitch.byteSwitch(ByteBuffer.wrap(unknown)));
+    }
+  }
+
+  @Test
+  public void sameHashCode() {
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    String[] cases = IntStream.range(0, 40).mapToObj(i -> (i % 2 == 0)? "Aa" + i: "BB" + (i - 1)).toArray(String[]::new);
+    ByteStringSwitch byteSwitch = ByteStringSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        byte[] bytes = cases[i].getBytes(UTF_8);
+        assertEquals(i, byteSwitch.byteSwitch(bytes, 0, bytes.length));
+      }
+      byte[] bytes = "AaBB".getBytes(UTF_8);
+      assertEquals(ByteStringSwitch.NO_MATCH, byteSwitch.byteSwitch(bytes, 0, bytes.length));
+    }
+  }
+
+  @Test
+  public void createReturnsALambda() {
+    // the fields of a lambda are trusted as constant by the JIT, not the fields of a plain class
+    assertAll(
+        () -> assertTrue(ByteStringSwitch.create("foo").getClass().isSynthetic()),
+        () -> assertTrue(ByteBufferSwitch.create("foo").getClass().isSynthetic()),
+        () -> assertThrows(NullPointerException.class, () -> ByteBufferSwitch.create("foo").byteSwitch(null))
+        );
+  }
+}
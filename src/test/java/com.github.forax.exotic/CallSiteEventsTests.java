@@ -0,0 +1,233 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class CallSiteEventsTests {
+  private static List<RecordedEvent> record(String eventName, Runnable runnable)
+      throws IOException {
+    Path path = Files.createTempFile("exotic", ".jfr");
+    try {
+      try (Recording recording = new Recording()) {
+        recording.enable(eventName);
+        recording.start();
+        runnable.run();
+        recording.stop();
+        recording.dump(path);
+      }
+      return RecordingFile.readAllEvents(path)
+          .stream()
+          .filter(event -> event.getEventType().getName().equals(eventName))
+          .collect(Collectors.toList());
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  private static String owner(RecordedEvent event) {
+    return event.<RecordedClass>getValue("owner").getName();
+  }
+
+  @Test
+  public void available() {
+    // the tests run with Java 11+ and the multi-release classes are in the classpath
+    assertNotSame(CallSiteEvents.NONE, CallSiteEvents.INSTANCE);
+  }
+
+  @Test
+  public void enabledOnlyDuringARecording() {
+    assertFalse(CallSiteEvents.INSTANCE.isEnabled());
+    try (Recording recording = new Recording()) {
+      recording.enable("com.github.forax.exotic.Relink");
+      recording.start();
+      assertTrue(CallSiteEvents.INSTANCE.isEnabled());
+      recording.stop();
+    }
+    assertFalse(CallSiteEvents.INSTANCE.isEnabled());
+  }
+
+  @Test
+  public void noRelinkOfASwitchCreatedBeforeTheRecording() throws IOException {
+    // without a recording, the switch has no statistics, so it can not report its depth
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+    stringSwitch.stringSwitch("foo");
+    List<RecordedEvent> events =
+        record("com.github.forax.exotic.Relink", () -> stringSwitch.stringSwitch("bar"));
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void relink() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Relink",
+            () -> {
+              StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+              stringSwitch.stringSwitch("foo");
+              stringSwitch.stringSwitch("bar");
+            });
+    assertAll(
+        () -> assertEquals(2, events.size()),
+        () -> assertEquals(StringSwitch.class.getName(), owner(events.get(0))),
+        () -> assertEquals(1, events.get(0).getInt("depth")),
+        () -> assertEquals(2, events.get(1).getInt("depth")),
+        () -> assertTrue(events.get(0).getStackTrace() != null));
+  }
+
+  @Test
+  public void intSwitchAllCasesSeenLongerThanACascade() throws IOException {
+    int[] cases = IntStream.range(0, 12).map(i -> i * 1_000_003).toArray();
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Megamorphic",
+            () -> {
+              IntSwitch intSwitch = IntSwitch.create(cases);
+              for (int j = 0; j < 3; j++) {
+                for (int value : cases) {
+                  intSwitch.intSwitch(value);
+                }
+              }
+            });
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void megamorphic() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Megamorphic",
+            () -> {
+              IntUnaryOperator memoizer =
+                  ConstantMemoizer.intToIntMemoizer(x -> x, opt -> opt.maxDepth(1));
+              memoizer.applyAsInt(1);
+              memoizer.applyAsInt(2);
+            });
+    assertAll(
+        () -> assertEquals(1, events.size()),
+        () -> assertEquals(ConstantMemoizer.class.getName(), owner(events.get(0))),
+        () -> assertEquals(1, events.get(0).getInt("depth")));
+  }
+
+  @Test
+  public void syncAll() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.SyncAll",
+            () -> new MostlyConstant<>(1, int.class).setAndDeoptimize(2));
+    assertAll(
+        () -> assertEquals(1, events.size()),
+        () -> assertEquals(MostlyConstant.class.getName(), owner(events.get(0))),
+        () -> assertEquals(1, events.get(0).getInt("count")));
+  }
+
+  private static void memoizerEvents(Consumer<? super ConstantMemoizer.Options> optionsConsumer)
+      throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Megamorphic",
+            () -> {
+              Function<String, Integer> memoizer =
+                  ConstantMemoizer.memoizer(
+                      String::length,
+                      String.class,
+                      Integer.class,
+                      options -> optionsConsumer.accept(options.maxDepth(1)));
+              memoizer.apply("foo");
+              memoizer.apply("bar");
+              memoizer.apply("baz");
+            });
+    assertAll(
+        () -> assertEquals(1, events.size()),
+        () -> assertEquals(ConstantMemoizer.class.getName(), owner(events.get(0))));
+  }
+
+  @Test
+  public void boundedMemoizerMegamorphic() throws IOException {
+    memoizerEvents(options -> options.maximumSize(10, ConstantMemoizer.EvictionPolicy.LRU));
+  }
+
+  @Test
+  public void weakKeysMemoizerMegamorphic() throws IOException {
+    memoizerEvents(options -> options.weakKeys());
+  }
+
+  @Test
+  public void expiringMemoizerMegamorphic() throws IOException {
+    memoizerEvents(options -> options.expireAfterWrite(1, TimeUnit.HOURS));
+  }
+
+  @Test
+  public void boundedMemoizerRelink() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Relink",
+            () -> {
+              Function<String, Integer> memoizer =
+                  ConstantMemoizer.memoizer(
+                      String::length,
+                      String.class,
+                      Integer.class,
+                      options -> options.maximumSize(1, ConstantMemoizer.EvictionPolicy.LRU));
+              memoizer.apply("foo");
+              memoizer.apply("quux");
+            });
+    assertAll(
+        () -> assertEquals(2, events.size()),
+        () -> assertEquals(1, events.get(1).getInt("depth")));
+  }
+
+  @Test
+  public void multiKeyMemoizerMegamorphic() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Megamorphic",
+            () -> {
+              BiFunction<String, String, String> memoizer =
+                  ConstantMemoizer.biMemoizer(
+                      String::concat,
+                      String.class,
+                      String.class,
+                      String.class,
+                      options -> options.maxDepth(1));
+              memoizer.apply("a", "b");
+              memoizer.apply("c", "d");
+            });
+    assertEquals(1, events.size());
+  }
+
+  @Test
+  public void asyncMemoizerRelink() throws IOException {
+    List<RecordedEvent> events =
+        record(
+            "com.github.forax.exotic.Relink",
+            () ->
+                ConstantMemoizer.asyncMemoizer(String::length, String.class, Runnable::run)
+                    .apply("foo")
+                    .join());
+    assertTrue(
+        events.stream().anyMatch(event -> event.getInt("depth") == 1),
+        events::toString);
+  }
+}
@@ -0,0 +1,32 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class CallSiteStatsTests {
+  // the statistics are only enabled to run InliningCacheMXBeanTests, see the configuration of
+  // surefire
+  @Test
+  public void disabledByDefault() throws MalformedObjectNameException {
+    assertFalse(Boolean.getBoolean(InliningCacheMXBean.ENABLE_PROPERTY));
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+    Function<String, Integer> memoizer =
+        ConstantMemoizer.memoizer(String::length, String.class, int.class, opt -> opt.maxDepth(1));
+    assertEquals(0, stringSwitch.stringSwitch("foo"));
+    assertEquals(3, (int) memoizer.apply("foo"));
+    assertEquals(3, (int) memoizer.apply("bar"));
+    assertTrue(
+        ManagementFactory.getPlatformMBeanServer()
+            .queryNames(new ObjectName("com.github.forax.exotic:*"), null)
+            .isEmpty());
+  }
+}
@@ -0,0 +1,78 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.CharBuffer;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class CharSequenceSwitchTests {
+  @Test
+  public void simple() {
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(false, "foo", "bar", "bazz");
+    assertAll(
+        () -> assertEquals(0, charSequenceSwitch.charSequenceSwitch(new StringBuilder("foo"))),
+        () -> assertEquals(1, charSequenceSwitch.charSequenceSwitch(CharBuffer.wrap("xbar", 1, 4))),
+        () -> assertEquals(2, charSequenceSwitch.charSequenceSwitch("bazz")),
+        () -> assertEquals(CharSequenceSwitch.NO_MATCH, charSequenceSwitch.charSequenceSwitch(new StringBuilder("whizz"))),
+        () -> assertEquals(CharSequenceSwitch.NO_MATCH, charSequenceSwitch.charSequenceSwitch("ba"))
+        );
+  }
+
+  @Test
+  public void mutableSequence() {
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(false, "foo", "bar");
+    StringBuilder builder = new StringBuilder("baz");
+    for(int i = 0; i < 3; i++) {
+      assertEquals(CharSequenceSwitch.NO_MATCH, charSequenceSwitch.charSequenceSwitch(builder));
+      builder.setCharAt(2, 'r');
+      assertEquals(1, charSequenceSwitch.charSequenceSwitch(builder));
+      builder.setCharAt(2, 'z');
+    }
+  }
+
+  @Test
+  public void nonNullSwitchCalledWithANull() {
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(false, "foo");
+    assertThrows(NullPointerException.class, () -> charSequenceSwitch.charSequenceSwitch(null));
+  }
+
+  @Test
+  public void nullCase() {
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(true, "foo");
+    assertEquals(CharSequenceSwitch.NULL_MATCH, charSequenceSwitch.charSequenceSwitch(null));
+  }
+
+  @Test
+  public void sameCaseTwice() {
+    assertThrows(IllegalStateException.class, () -> CharSequenceSwitch.create(false, "foo", "bar", "foo"));
+  }
+
+  @Test
+  public void allCasesSeen() {
+    String[] cases = IntStream.range(0, 10).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, charSequenceSwitch.charSequenceSwitch(new StringBuilder(cases[i])));
+      }
+    }
+  }
+
+  @Test
+  public void megamorphic() {
+    String[] cases = IntStream.range(0, 500).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    CharSequenceSwitch charSequenceSwitch = CharSequenceSwitch.create(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, charSequenceSwitch.charSequenceSwitch(new StringBuilder(cases[i])));
+        assertEquals(i, charSequenceSwitch.charSequenceSwitch(CharBuffer.wrap(cases[i])));
+      }
+      assertEquals(CharSequenceSwitch.NO_MATCH, charSequenceSwitch.charSequenceSwitch(new StringBuilder("unknown")));
+    }
+  }
+}
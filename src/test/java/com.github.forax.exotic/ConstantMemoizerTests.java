@@ -1,15 +1,42 @@
 package com.github.forax.exotic;
 
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodType.methodType;
+import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
 import java.util.function.ToDoubleFunction;
 import java.util.function.ToIntFunction;
 import java.util.function.ToLongFunction;
 
 import org.junit.jupiter.api.Test;
 
+import com.github.forax.exotic.ConstantMemoizer.EvictionPolicy;
+
 @SuppressWarnings("static-method")
 public class ConstantMemoizerTests {
   private static final Function<Integer, Integer> OBJECT_FIBO =
@@ -183,4 +210,1013 @@ public class ConstantMemoizerTests {
             Integer.class);
     assertThrows(ClassCastException.class, () -> fun.applyAsDouble(666));
   }
+
+  @Test
+  public void testObjectManyKeys() {
+    AtomicInteger counter = new AtomicInteger();
+    Function<Integer, String> fun =
+        ConstantMemoizer.memoizer(
+            x -> { counter.incrementAndGet(); return "" + x; }, Integer.class, String.class);
+    for (int i = 0; i < 1_000; i++) {
+      assertEquals("" + i, fun.apply(i));
+    }
+    for (int i = 0; i < 1_000; i++) {
+      assertEquals("" + i, fun.apply(i));
+    }
+    assertEquals(1_000, counter.get());
+  }
+
+  @Test
+  public void testIntManyKeysWithMaxDepth() {
+    ToIntFunction<Integer> fun =
+        ConstantMemoizer.intMemoizer(x -> 2 * x, Integer.class, opt -> opt.maxDepth(2));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(2 * i, fun.applyAsInt(i));
+    }
+    for (int i = 100; --i >= 0;) {
+      assertEquals(2 * i, fun.applyAsInt(i));
+    }
+  }
+
+  @Test
+  public void testLongMaxDepthZero() {
+    ToLongFunction<String> fun =
+        ConstantMemoizer.longMemoizer(Long::parseLong, String.class, opt -> opt.maxDepth(0));
+    assertEquals(42L, fun.applyAsLong("42"));
+    assertEquals(42L, fun.applyAsLong("42"));
+    assertEquals(43L, fun.applyAsLong("43"));
+  }
+
+  @Test
+  public void testDoubleManyKeysWithMaxDepth() {
+    ToDoubleFunction<Integer> fun =
+        ConstantMemoizer.doubleMemoizer(x -> x / 2.0, int.class, opt -> opt.maxDepth(4));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i / 2.0, fun.applyAsDouble(i));
+    }
+  }
+
+  @Test
+  public void testMegamorphicReturnValueNull() {
+    Function<Integer, Integer> fun =
+        ConstantMemoizer.memoizer(x -> null, Integer.class, Integer.class, opt -> opt.maxDepth(0));
+    assertThrows(NullPointerException.class, () -> fun.apply(3));
+  }
+
+  @Test
+  public void testMaxDepthNegative() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.memoizer(x -> x, Integer.class, Integer.class, opt -> opt.maxDepth(-1))),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.intMemoizer(x -> x, Integer.class, opt -> opt.maxDepth(-1)))
+      );
+  }
+
+  @Test
+  public void testOptionsConsumerNull() {
+    assertThrows(NullPointerException.class,
+        () -> ConstantMemoizer.memoizer(x -> x, Integer.class, Integer.class, null));
+  }
+
+  @Test
+  public void testBoundedLRU() {
+    AtomicInteger counter = new AtomicInteger();
+    Function<Integer, Integer> fun =
+        ConstantMemoizer.memoizer(
+            x -> { counter.incrementAndGet(); return x * x; },
+            Integer.class,
+            Integer.class,
+            opt -> opt.maxDepth(1).maximumSize(2, EvictionPolicy.LRU));
+    assertEquals(1, (int) fun.apply(1));
+    assertEquals(4, (int) fun.apply(2));
+    assertEquals(1, (int) fun.apply(1));
+    assertEquals(2, counter.get());
+    assertEquals(9, (int) fun.apply(3)); // evict 2, the least recently used
+    assertEquals(3, counter.get());
+    assertEquals(1, (int) fun.apply(1));
+    assertEquals(9, (int) fun.apply(3));
+    assertEquals(3, counter.get());
+    assertEquals(4, (int) fun.apply(2));
+    assertEquals(4, counter.get());
+  }
+
+  @Test
+  public void testBoundedLFUKeepsFrequentKeys() {
+    AtomicInteger counter = new AtomicInteger();
+    ToIntFunction<Integer> fun =
+        ConstantMemoizer.intMemoizer(
+            x -> { counter.incrementAndGet(); return x + 1; },
+            Integer.class,
+            opt -> opt.maximumSize(4, EvictionPolicy.LFU));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1, fun.applyAsInt(0));
+    }
+    for (int i = 1; i < 30; i++) {
+      assertEquals(i + 1, fun.applyAsInt(i));
+    }
+    assertEquals(30, counter.get());
+    assertEquals(1, fun.applyAsInt(0));
+    assertEquals(30, counter.get());
+  }
+
+  @Test
+  public void testBoundedManyKeys() {
+    ToLongFunction<Integer> fun =
+        ConstantMemoizer.longMemoizer(
+            x -> x * 3L, Integer.class, opt -> opt.maximumSize(10, EvictionPolicy.LRU));
+    for (int i = 0; i < 1_000; i++) {
+      assertEquals(i % 37 * 3L, fun.applyAsLong(i % 37));
+    }
+  }
+
+  @Test
+  public void testBoundedRecursive() {
+    class Fibo {
+      final ToDoubleFunction<Integer> fibo =
+          ConstantMemoizer.doubleMemoizer(
+              n -> n < 2 ? 1.0 : this.fibo.applyAsDouble(n - 2) + this.fibo.applyAsDouble(n - 1),
+              Integer.class,
+              opt -> opt.maxDepth(2).maximumSize(3, EvictionPolicy.LFU));
+    }
+    assertEquals(89.0, new Fibo().fibo.applyAsDouble(10));
+  }
+
+  @Test
+  public void testBoundedReturnValueNull() {
+    Function<Integer, Integer> fun =
+        ConstantMemoizer.memoizer(
+            x -> null, Integer.class, Integer.class, opt -> opt.maximumSize(1, EvictionPolicy.LRU));
+    assertThrows(NullPointerException.class, () -> fun.apply(3));
+  }
+
+  @Test
+  public void testMaximumSizeInvalid() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.memoizer(x -> x, Integer.class, Integer.class,
+                opt -> opt.maximumSize(0, EvictionPolicy.LRU))),
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.memoizer(x -> x, Integer.class, Integer.class,
+                opt -> opt.maximumSize(10, null)))
+      );
+  }
+
+  private static final IntUnaryOperator INT_TO_INT_FIBO =
+      ConstantMemoizer.intToIntMemoizer(n -> intToIntFibo(n));
+
+  private static int intToIntFibo(int n) {
+    if (n < 2) {
+      return 1;
+    }
+    return INT_TO_INT_FIBO.applyAsInt(n - 2) + INT_TO_INT_FIBO.applyAsInt(n - 1);
+  }
+
+  @Test
+  public void testIntToIntRecursive() {
+    assertEquals(10946, INT_TO_INT_FIBO.applyAsInt(20));
+  }
+
+  @Test
+  public void testIntKeySimple() {
+    IntFunction<String> fun = ConstantMemoizer.intKeyMemoizer(Integer::toString, String.class);
+    assertEquals("42", fun.apply(42));
+    assertEquals("42", fun.apply(42));
+    assertEquals("-1", fun.apply(-1));
+  }
+
+  @Test
+  public void testIntKeyManyKeys() {
+    AtomicInteger counter = new AtomicInteger();
+    IntFunction<String> fun =
+        ConstantMemoizer.intKeyMemoizer(
+            x -> { counter.incrementAndGet(); return "" + x; }, String.class, opt -> opt.maxDepth(3));
+    for (int i = -500; i < 500; i++) {
+      assertEquals("" + i, fun.apply(i));
+    }
+    for (int i = -500; i < 500; i++) {
+      assertEquals("" + i, fun.apply(i));
+    }
+    assertEquals(1_000, counter.get());
+  }
+
+  @Test
+  public void testLongKeyManyKeys() {
+    AtomicInteger counter = new AtomicInteger();
+    LongFunction<Long> fun =
+        ConstantMemoizer.longKeyMemoizer(
+            x -> { counter.incrementAndGet(); return -x; }, long.class, opt -> opt.maxDepth(0));
+    for (long i = 0; i < 1_000; i++) {
+      assertEquals(-(i << 32), (long) fun.apply(i << 32));
+    }
+    for (long i = 0; i < 1_000; i++) {
+      assertEquals(-(i << 32), (long) fun.apply(i << 32));
+    }
+    assertEquals(1_000, counter.get());
+  }
+
+  @Test
+  public void testLongToLongManyKeys() {
+    LongUnaryOperator fun = ConstantMemoizer.longToLongMemoizer(x -> x * x);
+    for (long i = 0; i < 100; i++) {
+      assertEquals(i * i, fun.applyAsLong(i));
+    }
+    assertEquals(Long.MIN_VALUE * Long.MIN_VALUE, fun.applyAsLong(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void testIntToIntBounded() {
+    IntUnaryOperator fun =
+        ConstantMemoizer.intToIntMemoizer(x -> x + 1, opt -> opt.maximumSize(8, EvictionPolicy.LFU));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i % 10 + 1, fun.applyAsInt(i % 10));
+    }
+  }
+
+  @Test
+  public void testIntKeyReturnValueNull() {
+    IntFunction<String> fun = ConstantMemoizer.intKeyMemoizer(x -> null, String.class);
+    assertThrows(NullPointerException.class, () -> fun.apply(3));
+  }
+
+  @Test
+  public void testPrimitiveKeyFunctionNull() {
+    assertAll(
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.intKeyMemoizer(null, String.class)),
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.longKeyMemoizer(null, String.class)),
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.intToIntMemoizer(null)),
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.longToLongMemoizer(null))
+      );
+  }
+
+  @Test
+  public void testIdentityKeys() {
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            x -> counter.incrementAndGet(), String.class, Integer.class, opt -> opt.identityKeys());
+    String foo = "foo";
+    String foo2 = new String("foo");
+    assertEquals(1, (int) fun.apply(foo));
+    assertEquals(1, (int) fun.apply(foo));
+    assertEquals(2, (int) fun.apply(foo2));
+    assertEquals(2, (int) fun.apply(foo2));
+  }
+
+  @Test
+  public void testIdentityKeysManyKeys() {
+    Object[] keys = new Object[200];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new Object();
+    }
+    AtomicInteger counter = new AtomicInteger();
+    ToIntFunction<Object> fun =
+        ConstantMemoizer.intMemoizer(
+            x -> counter.getAndIncrement(), Object.class, opt -> opt.identityKeys().maxDepth(2));
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i, fun.applyAsInt(keys[i]));
+    }
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i, fun.applyAsInt(keys[i]));
+    }
+    assertEquals(keys.length, counter.get());
+  }
+
+  @Test
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public void testIdentityKeysClass() {
+    Class<?>[] classes = {
+      String.class, Integer.class, Object.class, int.class, int[].class, Thread.class, Math.class
+    };
+    Function<Class, String> fun =
+        ConstantMemoizer.memoizer(
+            Class::getName, Class.class, String.class, opt -> opt.identityKeys().maxDepth(3));
+    for (int i = 0; i < 3; i++) {
+      for (Class<?> type : classes) {
+        assertEquals(type.getName(), fun.apply(type));
+      }
+    }
+  }
+
+  @Test
+  public void testIdentityKeysEnum() {
+    ToIntFunction<Thread.State> fun =
+        ConstantMemoizer.intMemoizer(
+            Thread.State::ordinal, Thread.State.class, opt -> opt.identityKeys().maxDepth(2));
+    for (int i = 0; i < 3; i++) {
+      for (Thread.State state : Thread.State.values()) {
+        assertEquals(state.ordinal(), fun.applyAsInt(state));
+      }
+    }
+  }
+
+  @Test
+  public void testIdentityKeysPrimitive() {
+    IntUnaryOperator fun =
+        ConstantMemoizer.intToIntMemoizer(x -> -x, opt -> opt.identityKeys().maxDepth(1));
+    for (int i = 0; i < 1_000; i++) {
+      assertEquals(-i, fun.applyAsInt(i));
+    }
+  }
+
+  @Test
+  public void testIdentityKeysAndMaximumSize() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+            opt -> opt.identityKeys().maximumSize(10, EvictionPolicy.LRU)));
+  }
+
+  @Test
+  public void testBiMemoizer() {
+    BiFunction<String, Integer, String> fun =
+        ConstantMemoizer.biMemoizer(
+            (s, n) -> s + n, String.class, Integer.class, String.class);
+    for (int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals("a1", fun.apply("a", 1)),
+          () -> assertEquals("a2", fun.apply("a", 2)),
+          () -> assertEquals("b1", fun.apply("b", 1)));
+    }
+  }
+
+  @Test
+  public void testBiMemoizerCalledOnce() {
+    AtomicInteger counter = new AtomicInteger();
+    BiFunction<String, String, String> fun =
+        ConstantMemoizer.biMemoizer(
+            (s1, s2) -> {
+              counter.incrementAndGet();
+              return s1 + s2;
+            },
+            String.class,
+            String.class,
+            String.class);
+    for (int i = 0; i < 10; i++) {
+      assertEquals("foobar", fun.apply("foo", "bar"));
+      assertEquals("barfoo", fun.apply("bar", "foo"));
+    }
+    assertEquals(2, counter.get());
+  }
+
+  @Test
+  public void testBiMemoizerManyKeys() {
+    BiFunction<Integer, Integer, Integer> fun =
+        ConstantMemoizer.biMemoizer(
+            (a, b) -> a * 100 + b,
+            Integer.class,
+            Integer.class,
+            Integer.class,
+            opt -> opt.maxDepth(4));
+    for (int j = 0; j < 3; j++) {
+      for (int i = 0; i < 1_000; i++) {
+        assertEquals(i * 100 + i % 7, (int) fun.apply(i, i % 7));
+      }
+    }
+  }
+
+  @Test
+  public void testBiMemoizerNullKey() {
+    BiFunction<String, String, String> fun =
+        ConstantMemoizer.biMemoizer(String::concat, String.class, String.class, String.class);
+    assertAll(
+        () -> assertThrows(NullPointerException.class, () -> fun.apply(null, "foo")),
+        () -> assertThrows(NullPointerException.class, () -> fun.apply("foo", null)));
+  }
+
+  @Test
+  public void testBiMemoizerMaximumSize() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.biMemoizer(String::concat, String.class, String.class,
+            String.class, opt -> opt.maximumSize(10, EvictionPolicy.LRU)));
+  }
+
+  private static int sum3(int a, long b, String c) {
+    return a + (int) b + c.length();
+  }
+
+  private static String concat4(String a, String b, String c, String d) {
+    return a + b + c + d;
+  }
+
+  @Test
+  public void testMethodHandleMemoizer() throws Throwable {
+    MethodHandle mh =
+        ConstantMemoizer.memoizer(
+            lookup()
+                .findStatic(
+                    ConstantMemoizerTests.class,
+                    "sum3",
+                    methodType(int.class, int.class, long.class, String.class)),
+            opt -> opt.maxDepth(3));
+    for (int j = 0; j < 3; j++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i + i % 5 + 3, (int) mh.invokeExact(i, (long) (i % 5), "foo"));
+      }
+    }
+  }
+
+  @Test
+  public void testMethodHandleMemoizerArity4() throws Throwable {
+    MethodHandle mh =
+        ConstantMemoizer.memoizer(
+            lookup()
+                .findStatic(
+                    ConstantMemoizerTests.class,
+                    "concat4",
+                    methodType(String.class, String.class, String.class, String.class,
+                        String.class)));
+    for (int i = 0; i < 3; i++) {
+      assertEquals("abcd", (String) mh.invokeExact("a", "b", "c", "d"));
+      assertEquals("abce", (String) mh.invokeExact("a", "b", "c", "e"));
+    }
+  }
+
+  @Test
+  public void testMethodHandleMemoizerArity1() throws Throwable {
+    MethodHandle mh =
+        ConstantMemoizer.memoizer(
+            lookup().findVirtual(String.class, "length", methodType(int.class)));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(3, (int) mh.invokeExact("foo"));
+      assertEquals(4, (int) mh.invokeExact("barz"));
+    }
+  }
+
+  private static String describe(double d, char c) {
+    return d + ":" + c;
+  }
+
+  private static String describe(boolean z, byte b, short s, float f) {
+    return z + ":" + b + ":" + s + ":" + f;
+  }
+
+  @Test
+  public void testMethodHandleMemoizerDoubleAndChar() throws Throwable {
+    MethodHandle mh =
+        ConstantMemoizer.memoizer(
+            lookup()
+                .findStatic(
+                    ConstantMemoizerTests.class,
+                    "describe",
+                    methodType(String.class, double.class, char.class)),
+            opt -> opt.maxDepth(3));
+    for (int j = 0; j < 3; j++) {
+      assertEquals("NaN:a", (String) mh.invokeExact(Double.NaN, 'a'));
+      assertEquals("0.0:a", (String) mh.invokeExact(0.0, 'a'));
+      assertEquals("-0.0:a", (String) mh.invokeExact(-0.0, 'a'));
+      for (char c = 'b'; c <= 'z'; c++) {
+        assertEquals("1.5:" + c, (String) mh.invokeExact(1.5, c));
+      }
+    }
+  }
+
+  @Test
+  public void testMethodHandleMemoizerOtherPrimitives() throws Throwable {
+    MethodHandle mh =
+        ConstantMemoizer.memoizer(
+            lookup()
+                .findStatic(
+                    ConstantMemoizerTests.class,
+                    "describe",
+                    methodType(
+                        String.class, boolean.class, byte.class, short.class, float.class)),
+            opt -> opt.maxDepth(3));
+    for (int j = 0; j < 3; j++) {
+      assertEquals("true:1:2:NaN", (String) mh.invokeExact(true, (byte) 1, (short) 2, Float.NaN));
+      assertEquals("true:1:2:0.0", (String) mh.invokeExact(true, (byte) 1, (short) 2, 0f));
+      assertEquals("true:1:2:-0.0", (String) mh.invokeExact(true, (byte) 1, (short) 2, -0f));
+      for (int i = 0; i < 50; i++) {
+        assertEquals(
+            "false:" + i + ":" + -i + ":1.5",
+            (String) mh.invokeExact(false, (byte) i, (short) -i, 1.5f));
+      }
+    }
+  }
+
+  @Test
+  public void testMethodHandleMemoizerInvalidArity() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.memoizer(MethodHandles.constant(String.class, "foo"))),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.memoizer(
+                MethodHandles.identity(String.class).asCollector(String[].class, 5))));
+  }
+
+  @Test
+  public void testSingleFlight() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(1);
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            s -> {
+              counter.incrementAndGet();
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                throw new AssertionError(e);
+              }
+              return s.length();
+            },
+            String.class,
+            Integer.class,
+            opt -> opt.singleFlight().maxDepth(2));
+    AtomicInteger errors = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  latch.await();
+                  for (String s : new String[] {"a", "bb", "ccc", "dddd"}) {
+                    if (fun.apply(s) != s.length()) {
+                      errors.incrementAndGet();
+                    }
+                  }
+                } catch (InterruptedException e) {
+                  errors.incrementAndGet();
+                }
+              });
+      threads[i].start();
+    }
+    latch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, errors.get());
+    assertEquals(4, counter.get());
+  }
+
+  @Test
+  public void testSingleFlightDoesNotRetainTheComputingThread() throws InterruptedException {
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            String::length, String.class, Integer.class, opt -> opt.singleFlight());
+    Thread thread = new Thread(() -> fun.apply("foo"));
+    thread.start();
+    thread.join();
+    WeakReference<Thread> reference = new WeakReference<>(thread);
+    thread = null;
+    awaitUntil(
+        () -> {
+          System.gc();
+          return reference.get() == null;
+        });
+    assertEquals(3, (int) fun.apply("foo"));
+  }
+
+  @Test
+  public void testSingleFlightManyKeys() {
+    IntUnaryOperator fun = ConstantMemoizer.intToIntMemoizer(x -> x * 2, opt -> opt.singleFlight());
+    for (int j = 0; j < 3; j++) {
+      for (int i = 0; i < 1_000; i++) {
+        assertEquals(i * 2, fun.applyAsInt(i));
+      }
+    }
+  }
+
+  private static final Function<Integer, Integer> SINGLE_FLIGHT_FIBO =
+      ConstantMemoizer.memoizer(
+          n -> singleFlightFibo(n), int.class, int.class, opt -> opt.singleFlight().maxDepth(4));
+
+  private static int singleFlightFibo(int n) {
+    if (n < 2) {
+      return 1;
+    }
+    return SINGLE_FLIGHT_FIBO.apply(n - 2) + SINGLE_FLIGHT_FIBO.apply(n - 1);
+  }
+
+  @Test
+  public void testSingleFlightRecursive() {
+    assertEquals(89, (int) SINGLE_FLIGHT_FIBO.apply(10));
+    assertEquals(89, (int) SINGLE_FLIGHT_FIBO.apply(10));
+  }
+
+  private static final Function<String, String> SELF_RECURSIVE =
+      ConstantMemoizer.memoizer(
+          s -> ConstantMemoizerTests.selfRecursive(s),
+          String.class,
+          String.class,
+          opt -> opt.singleFlight());
+
+  private static String selfRecursive(String s) {
+    return SELF_RECURSIVE.apply(s);
+  }
+
+  @Test
+  public void testSingleFlightSelfRecursive() {
+    assertThrows(IllegalStateException.class, () -> SELF_RECURSIVE.apply("foo"));
+  }
+
+  @Test
+  public void testSingleFlightRetryAfterFailure() {
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, String> fun =
+        ConstantMemoizer.memoizer(
+            s -> {
+              if (counter.getAndIncrement() == 0) {
+                throw new IllegalArgumentException();
+              }
+              return s;
+            },
+            String.class,
+            String.class,
+            opt -> opt.singleFlight());
+    assertThrows(IllegalArgumentException.class, () -> fun.apply("foo"));
+    assertEquals("foo", fun.apply("foo"));
+    assertEquals("foo", fun.apply("foo"));
+    assertEquals(2, counter.get());
+  }
+
+  @Test
+  public void testSingleFlightAndIdentityKeys() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+            opt -> opt.singleFlight().identityKeys()));
+  }
+
+  @Test
+  public void testAsyncMemoizer() throws InterruptedException, ExecutionException {
+    AtomicInteger counter = new AtomicInteger();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Function<String, CompletableFuture<Integer>> fun =
+          ConstantMemoizer.asyncMemoizer(
+              s -> {
+                counter.incrementAndGet();
+                return s.length();
+              },
+              String.class,
+              executor);
+      for (int i = 0; i < 3; i++) {
+        assertEquals(3, (int) fun.apply("foo").get());
+        assertEquals(4, (int) fun.apply("barz").get());
+      }
+      assertEquals(2, counter.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testAsyncMemoizerCompleted() {
+    Function<Integer, CompletableFuture<String>> fun =
+        ConstantMemoizer.asyncMemoizer(i -> "" + i, int.class, Runnable::run);
+    CompletableFuture<String> future = fun.apply(42);
+    assertAll(
+        () -> assertEquals("42", future.getNow(null)),
+        () -> assertSame(fun.apply(42), fun.apply(42)));
+  }
+
+  @Test
+  public void testAsyncMemoizerFutureReadOnly() {
+    CountDownLatch latch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Function<String, CompletableFuture<String>> fun =
+          ConstantMemoizer.asyncMemoizer(
+              s -> {
+                try {
+                  latch.await();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+                return s;
+              },
+              String.class,
+              executor);
+      CompletableFuture<String> future = fun.apply("foo");
+      assertAll(
+          () -> assertThrows(UnsupportedOperationException.class, () -> future.complete("bar")),
+          () -> assertThrows(UnsupportedOperationException.class, () -> future.cancel(false)),
+          () -> assertThrows(UnsupportedOperationException.class, () -> future.obtrudeValue("baz")),
+          () ->
+              assertThrows(
+                  UnsupportedOperationException.class, () -> future.completeAsync(() -> "baz")),
+          () -> assertTrue(future.thenApply(s -> s).complete("derived")));
+      latch.countDown();
+      assertEquals("foo", fun.apply("foo").join());
+      assertSame(future, fun.apply("foo"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testAsyncMemoizerManyKeys() {
+    Function<Integer, CompletableFuture<Integer>> fun =
+        ConstantMemoizer.asyncMemoizer(
+            i -> -i, Integer.class, Runnable::run, opt -> opt.maxDepth(2));
+    for (int j = 0; j < 3; j++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(-i, (int) fun.apply(i).join());
+      }
+    }
+  }
+
+  @Test
+  public void testAsyncMemoizerRetryAfterFailure() {
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, CompletableFuture<String>> fun =
+        ConstantMemoizer.asyncMemoizer(
+            s -> {
+              if (counter.getAndIncrement() == 0) {
+                throw new IllegalArgumentException();
+              }
+              return s;
+            },
+            String.class,
+            Runnable::run);
+    assertTrue(fun.apply("foo").isCompletedExceptionally());
+    assertEquals("foo", fun.apply("foo").join());
+    assertEquals("foo", fun.apply("foo").join());
+    assertEquals(2, counter.get());
+  }
+
+  @Test
+  public void testAsyncMemoizerNullValue() {
+    Function<String, CompletableFuture<String>> fun =
+        ConstantMemoizer.asyncMemoizer(s -> null, String.class, Runnable::run);
+    CompletionException exception =
+        assertThrows(CompletionException.class, () -> fun.apply("foo").join());
+    assertEquals(NullPointerException.class, exception.getCause().getClass());
+  }
+
+  private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("timeout");
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void testExpireAfterWrite() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            s -> counter.incrementAndGet(),
+            String.class,
+            Integer.class,
+            opt -> opt.expireAfterWrite(20, TimeUnit.MILLISECONDS));
+    int first = fun.apply("foo");
+    assertEquals(first, (int) fun.apply("foo"));
+    awaitUntil(() -> fun.apply("foo") != first);
+    assertEquals(2, counter.get());
+  }
+
+  @Test
+  public void testExpireAfterWriteManyKeys() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    Function<Integer, Integer> fun =
+        ConstantMemoizer.memoizer(
+            i -> {
+              counter.incrementAndGet();
+              return -i;
+            },
+            Integer.class,
+            Integer.class,
+            opt -> opt.maxDepth(2).expireAfterWrite(20, TimeUnit.MILLISECONDS));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(-i, (int) fun.apply(i));
+    }
+    awaitUntil(
+        () -> {
+          for (int i = 0; i < 10; i++) {
+            assertEquals(-i, (int) fun.apply(i));
+          }
+          return counter.get() >= 20;
+        });
+  }
+
+  @Test
+  public void testRefreshAfterWrite() throws InterruptedException {
+    AtomicInteger version = new AtomicInteger();
+    ToIntFunction<String> fun =
+        ConstantMemoizer.intMemoizer(
+            s -> version.get(),
+            String.class,
+            opt -> opt.maxDepth(1).refreshAfterWrite(10, TimeUnit.MILLISECONDS));
+    assertAll(
+        () -> assertEquals(0, fun.applyAsInt("foo")),
+        () -> assertEquals(0, fun.applyAsInt("bar")));
+    version.set(1);
+    awaitUntil(() -> fun.applyAsInt("foo") == 1 && fun.applyAsInt("bar") == 1);
+  }
+
+  @Test
+  public void testRefreshAfterWriteFailureKeepsValue() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, String> fun =
+        ConstantMemoizer.memoizer(
+            s -> {
+              if (counter.getAndIncrement() != 0) {
+                throw new IllegalStateException();
+              }
+              return s;
+            },
+            String.class,
+            String.class,
+            opt -> opt.refreshAfterWrite(5, TimeUnit.MILLISECONDS));
+    assertEquals("foo", fun.apply("foo"));
+    awaitUntil(() -> counter.get() >= 3);
+    assertEquals("foo", fun.apply("foo"));
+  }
+
+  @Test
+  public void testSlowRefreshDoesNotDelayTheOtherMemoizers() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    Function<String, String> slow =
+        ConstantMemoizer.memoizer(
+            s -> {
+              if (calls.getAndIncrement() != 0) {
+                try {
+                  latch.await();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+              return s;
+            },
+            String.class,
+            String.class,
+            opt -> opt.refreshAfterWrite(1, TimeUnit.MILLISECONDS));
+    AtomicInteger counter = new AtomicInteger();
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            s -> counter.incrementAndGet(),
+            String.class,
+            Integer.class,
+            opt -> opt.expireAfterWrite(5, TimeUnit.MILLISECONDS));
+    try {
+      assertEquals("foo", slow.apply("foo"));
+      awaitUntil(() -> calls.get() >= 2); // the refresh is blocked
+      int first = fun.apply("bar");
+      awaitUntil(() -> fun.apply("bar") != first);
+      assertEquals("foo", slow.apply("foo"));
+    } finally {
+      latch.countDown();
+    }
+  }
+
+  @Test
+  public void testSweepFailureDoesNotStopTheNextSweeps() throws InterruptedException {
+    AtomicBoolean fail = new AtomicBoolean();
+    Object flakyKey =
+        new Object() {
+          @Override
+          public int hashCode() {
+            if (fail.getAndSet(false)) {
+              throw new IllegalStateException("flaky");
+            }
+            return 0;
+          }
+        };
+    AtomicInteger counter = new AtomicInteger();
+    Function<Object, Integer> fun =
+        ConstantMemoizer.memoizer(
+            key -> counter.incrementAndGet(),
+            Object.class,
+            Integer.class,
+            opt -> opt.expireAfterWrite(20, TimeUnit.MILLISECONDS));
+    AtomicReference<Throwable> reported = new AtomicReference<>();
+    Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.set(e));
+    try {
+      fun.apply(flakyKey);
+      int first = fun.apply("foo");
+      fail.set(true); // the sweep that removes flakyKey fails
+      awaitUntil(() -> reported.get() != null);
+      awaitUntil(() -> fun.apply("foo") != first);
+      assertEquals("flaky", reported.get().getMessage());
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+
+  @Test
+  public void testRefreshAfterWriteLongerThanExpire() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+            opt -> opt.expireAfterWrite(1, TimeUnit.SECONDS)
+                .refreshAfterWrite(2, TimeUnit.SECONDS)));
+  }
+
+  @Test
+  public void testExpireAfterWriteInvalidDuration() {
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+                opt -> opt.expireAfterWrite(0, TimeUnit.SECONDS))),
+        () -> assertThrows(NullPointerException.class,
+            () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+                opt -> opt.refreshAfterWrite(1, null))));
+  }
+
+  @Test
+  public void testWeakKeys() {
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            String::length, String.class, Integer.class, opt -> opt.weakKeys().maxDepth(2));
+    for (int j = 0; j < 3; j++) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(("" + i).length(), (int) fun.apply("" + i));
+      }
+    }
+  }
+
+  static final class Plugin {
+    final int id;
+
+    Plugin(int id) {
+      this.id = id;
+    }
+  }
+
+  @Test
+  public void testWeakKeysCollected() throws InterruptedException {
+    Function<Plugin, Integer> fun =
+        ConstantMemoizer.memoizer(
+            p -> p.id, Plugin.class, Integer.class, opt -> opt.weakKeys().maxDepth(2));
+    ArrayList<WeakReference<Plugin>> references = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Plugin plugin = new Plugin(i);
+      assertEquals(i, (int) fun.apply(plugin));
+      assertEquals(i, (int) fun.apply(plugin));
+      references.add(new WeakReference<>(plugin));
+    }
+    awaitUntil(
+        () -> {
+          System.gc();
+          return references.stream().allMatch(ref -> ref.get() == null);
+        });
+    Plugin plugin = new Plugin(42);
+    assertEquals(42, (int) fun.apply(plugin));
+  }
+
+  @Test
+  public void testWeakKeysValuesReleased() throws InterruptedException {
+    ArrayList<WeakReference<Object>> values = new ArrayList<>();
+    Function<Plugin, Object> fun =
+        ConstantMemoizer.memoizer(
+            p -> {
+              Object value = new Object();
+              values.add(new WeakReference<>(value));
+              return value;
+            },
+            Plugin.class,
+            Object.class,
+            opt -> opt.weakKeys().maxDepth(1));
+    for (int i = 0; i < 4; i++) {
+      Plugin plugin = new Plugin(i);
+      assertSame(fun.apply(plugin), fun.apply(plugin));
+    }
+    // both the inlined value and the values of the hash table are released
+    awaitUntil(
+        () -> {
+          System.gc();
+          fun.apply(new Plugin(42));
+          return values.stream().limit(4).allMatch(ref -> ref.get() == null);
+        });
+  }
+
+  @Test
+  public void testWeakKeysNoDedicatedThread() {
+    Function<String, Integer> fun =
+        ConstantMemoizer.memoizer(
+            String::length, String.class, Integer.class, opt -> opt.weakKeys());
+    assertEquals(3, (int) fun.apply("foo"));
+    assertTrue(
+        Thread.getAllStackTraces()
+            .keySet()
+            .stream()
+            .noneMatch(thread -> thread.getName().equals("exotic-weak-key-cleaner")));
+  }
+
+  @Test
+  public void testWeakKeysPrimitive() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.intToIntMemoizer(x -> x, opt -> opt.weakKeys()));
+  }
+
+  @Test
+  public void testWeakKeysAndSingleFlight() {
+    assertThrows(
+        IllegalStateException.class,
+        () -> ConstantMemoizer.memoizer(x -> x, String.class, String.class,
+            opt -> opt.weakKeys().singleFlight()));
+  }
 }
@@ -0,0 +1,127 @@
+package com.github.forax.exotic;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("static-method")
+public class DictionaryEncoderTests {
+  @Test
+  public void encodeBytes() {
+    DictionaryEncoder encoder = DictionaryEncoder.create("FR", "US");
+    byte[] bytes = "FR,US,DE,FR,DE,IT".getBytes(UTF_8);
+    int[] codes = IntStream.range(0, 6).map(i -> encoder.encode(bytes, i * 3, 2)).toArray();
+    assertAll(
+        () -> assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3 }, codes),
+        () -> assertEquals(4, encoder.size()),
+        () -> assertEquals("DE", encoder.value(2)),
+        () -> assertEquals(List.of("FR", "US", "DE", "IT"), encoder.dictionary())
+        );
+  }
+
+  @Test
+  public void manyUnknownValues() {
+    DictionaryEncoder encoder = DictionaryEncoder.create();
+    for(int j = 0; j < 2; j++) {
+      for(int i = 0; i < 10_000; i++) {
+        byte[] bytes = ("value" + i).getBytes(UTF_8);
+        assertEquals(i, encoder.encode(bytes, 0, bytes.length));
+      }
+    }
+    assertEquals(10_000, encoder.size());
+  }
+
+  @Test
+  public void encodeColumn(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    Files.write(path, "id,country,status\r\n1,FR,ok\r\n2,DE,ko\r\n3,FR,ok\r\n4,été,ok".getBytes(UTF_8));
+    DictionaryEncoder encoder = DictionaryEncoder.create("FR", "US");
+    assertAll(
+        () -> assertArrayEquals(new int[] { 0, 2, 0, 3 }, encoder.encodeColumn(path, (byte) ',', 1, true)),
+        () -> assertEquals("été", encoder.value(3))
+        );
+    DictionaryEncoder statusEncoder = DictionaryEncoder.create();
+    assertArrayEquals(new int[] { 0, 1, 0, 0 }, statusEncoder.encodeColumn(path, (byte) ',', 2, true));
+  }
+
+  @Test
+  public void encodeColumnLongLines(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.tsv");
+    String padding = "x".repeat(100_000);
+    String text = IntStream.range(0, 100).mapToObj(i -> padding + "\t" + (i % 3) + "\n").collect(Collectors.joining());
+    Files.write(path, text.getBytes(UTF_8));
+    DictionaryEncoder encoder = DictionaryEncoder.create("0", "1", "2");
+    int[] codes = encoder.encodeColumn(path, (byte) '\t', 1, false);
+    assertArrayEquals(IntStream.range(0, 100).map(i -> i % 3).toArray(), codes);
+  }
+
+  @Test
+  public void encodeColumnManyLines(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    String text = IntStream.range(0, 100_000).mapToObj(i -> i + ",status" + (i % 7) + "\n").collect(Collectors.joining());
+    Files.write(path, text.getBytes(UTF_8));
+    DictionaryEncoder encoder = DictionaryEncoder.create("status0", "status1");
+    int[] codes = encoder.encodeColumn(path, (byte) ',', 1, false);
+    assertEquals(100_000, codes.length);
+    for(int i = 0; i < codes.length; i++) {
+      assertEquals("status" + (i % 7), encoder.value(codes[i]));
+    }
+    assertEquals(7, encoder.size());
+  }
+
+  @Test
+  public void encodeColumnSmallWindows(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    String text = IntStream.range(0, 1_000).mapToObj(i -> i + ",status" + (i % 7) + (i % 100 == 0? "-" + "x".repeat(100): "") + "\n").collect(Collectors.joining());
+    Files.write(path, text.getBytes(UTF_8));
+    for(long mapSize : new long[] { 1, 16, 100, 4_096 }) {
+      DictionaryEncoder encoder = DictionaryEncoder.create("status0", "status1");
+      int[] codes = encoder.encodeColumn(path, (byte) ',', 1, false, mapSize);
+      assertEquals(1_000, codes.length);
+      for(int i = 0; i < codes.length; i++) {
+        assertEquals("status" + (i % 7) + (i % 100 == 0? "-" + "x".repeat(100): ""), encoder.value(codes[i]));
+      }
+    }
+  }
+
+  @Test
+  public void encodeColumnBlankLines(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    Files.write(path, "country\n\nFR,1\r\n\r\nUS,2\n\n".getBytes(UTF_8));
+    DictionaryEncoder encoder = DictionaryEncoder.create("FR", "US");
+    assertArrayEquals(new int[] { 0, 1 }, encoder.encodeColumn(path, (byte) ',', 0, true));
+    assertArrayEquals(new int[] { 2, 3 }, encoder.encodeColumn(path, (byte) ',', 1, true));
+  }
+
+  @Test
+  public void encodeColumnEmptyFile(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    Files.write(path, new byte[0]);
+    assertArrayEquals(new int[0], DictionaryEncoder.create("FR").encodeColumn(path, (byte) ',', 0, false));
+  }
+
+  @Test
+  public void missingColumn(@TempDir Path dir) throws IOException {
+    Path path = dir.resolve("data.csv");
+    Files.write(path, "1,FR\n2\n".getBytes(UTF_8));
+    DictionaryEncoder encoder = DictionaryEncoder.create();
+    assertThrows(IOException.class, () -> encoder.encodeColumn(path, (byte) ',', 1, false));
+  }
+
+  @Test
+  public void sameValueTwice() {
+    assertThrows(IllegalStateException.class, () -> DictionaryEncoder.create("FR", "FR"));
+  }
+}
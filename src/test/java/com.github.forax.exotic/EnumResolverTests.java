@@ -0,0 +1,104 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.annotation.ElementType;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class EnumResolverTests {
+  @Test
+  public void simple() {
+    EnumResolver<TimeUnit> resolver = EnumResolver.of(TimeUnit.class);
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(TimeUnit.SECONDS, resolver.resolve("SECONDS")),
+          () -> assertEquals(TimeUnit.DAYS, resolver.resolve("DAYS")),
+          () -> assertNull(resolver.resolve("seconds")),
+          () -> assertNull(resolver.resolve("WEEKS"))
+          );
+    }
+  }
+
+  @Test
+  public void allNames() {
+    EnumResolver<ElementType> resolver = EnumResolver.of(ElementType.class);
+    for(int i = 0; i < 3; i++) {
+      for(ElementType elementType: ElementType.values()) {
+        assertEquals(elementType, resolver.resolve(elementType.name()));
+      }
+      assertNull(resolver.resolve("UNKNOWN"));
+    }
+  }
+
+  @Test
+  public void ignoreCase() {
+    EnumResolver<TimeUnit> resolver =
+        EnumResolver.of(TimeUnit.class, options -> options.ignoreCase());
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(TimeUnit.SECONDS, resolver.resolve("seconds")),
+          () -> assertEquals(TimeUnit.MILLISECONDS, resolver.resolve("MilliSeconds")),
+          () -> assertNull(resolver.resolve("second"))
+          );
+    }
+  }
+
+  @Test
+  public void alias() {
+    EnumResolver<TimeUnit> resolver = EnumResolver.of(TimeUnit.class,
+        options -> options.alias("ms", TimeUnit.MILLISECONDS).alias("s", TimeUnit.SECONDS));
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(TimeUnit.MILLISECONDS, resolver.resolve("ms")),
+          () -> assertEquals(TimeUnit.SECONDS, resolver.resolve("s")),
+          () -> assertEquals(TimeUnit.SECONDS, resolver.resolve("SECONDS")),
+          () -> assertNull(resolver.resolve("MS"))
+          );
+    }
+  }
+
+  @Test
+  public void aliasIgnoreCase() {
+    EnumResolver<TimeUnit> resolver = EnumResolver.of(TimeUnit.class,
+        options -> options.ignoreCase().alias("ms", TimeUnit.MILLISECONDS));
+    assertEquals(TimeUnit.MILLISECONDS, resolver.resolve("MS"));
+  }
+
+  @Test
+  public void aliasAlreadyAName() {
+    assertThrows(IllegalStateException.class,
+        () -> EnumResolver.of(TimeUnit.class, options -> options.alias("DAYS", TimeUnit.HOURS)));
+  }
+
+  @Test
+  public void aliasEqualsIgnoringCase() {
+    assertThrows(IllegalStateException.class,
+        () -> EnumResolver.of(TimeUnit.class,
+            options -> options.ignoreCase().alias("days", TimeUnit.HOURS)));
+  }
+
+  @Test
+  public void nullName() {
+    EnumResolver<TimeUnit> resolver = EnumResolver.of(TimeUnit.class);
+    assertThrows(NullPointerException.class, () -> resolver.resolve(null));
+  }
+
+  @Test
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public void notAnEnum() {
+    assertThrows(IllegalArgumentException.class, () -> EnumResolver.of((Class) String.class));
+  }
+
+  @Test
+  public void ofReturnsALambda() {
+    // the fields of a lambda are trusted as constant by the JIT, not the fields of a plain class
+    assertTrue(EnumResolver.of(TimeUnit.class).getClass().isSynthetic());
+  }
+}
@@ -0,0 +1,103 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.function.Function;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class InliningCacheMXBeanTests {
+  // the statistics are enabled by the build for this test only, see the configuration of surefire
+  private static InliningCacheMXBean lastCreated(String kind) throws MalformedObjectNameException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name =
+        server
+            .queryNames(
+                new ObjectName("com.github.forax.exotic:type=InliningCache,kind=" + kind + ",*"),
+                null)
+            .stream()
+            .max(Comparator.comparingLong(n -> Long.parseLong(n.getKeyProperty("id"))))
+            .orElseThrow(AssertionError::new);
+    return JMX.newMXBeanProxy(server, name, InliningCacheMXBean.class);
+  }
+
+  @Test
+  public void stringSwitch() throws MalformedObjectNameException {
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+    InliningCacheMXBean bean = lastCreated("StringSwitch");
+    assertEquals(0, bean.getFallbackCount());
+    stringSwitch.stringSwitch("foo");
+    stringSwitch.stringSwitch("foo");
+    stringSwitch.stringSwitch("baz");
+    assertAll(
+        () -> assertEquals("StringSwitch", bean.getKind()),
+        () -> assertEquals(2, bean.getFallbackCount()),
+        () -> assertEquals(2, bean.getRelinkCount()),
+        () -> assertEquals(2, bean.getDepth()),
+        () -> assertFalse(bean.isMegamorphic()),
+        () -> assertTrue(bean.getFallbackTime() > 0));
+  }
+
+  @Test
+  public void typeSwitchMegamorphic() throws MalformedObjectNameException {
+    TypeSwitch typeSwitch = TypeSwitch.create(false, Object.class);
+    InliningCacheMXBean bean = lastCreated("TypeSwitch");
+    Object[] values = {"", 1, 2.0, 3L, 'c', (byte) 1, (short) 2, 3f, new Object(), new int[0]};
+    for (Object value : values) {
+      assertEquals(0, typeSwitch.typeSwitch(value));
+    }
+    assertAll(
+        () -> assertTrue(bean.isMegamorphic()),
+        () -> assertEquals(8, bean.getDepth()),
+        () -> assertEquals(9, bean.getFallbackCount()));
+  }
+
+  @Test
+  public void constantMemoizer() throws MalformedObjectNameException {
+    Function<String, Integer> memoizer =
+        ConstantMemoizer.memoizer(String::length, String.class, int.class, opt -> opt.maxDepth(1));
+    InliningCacheMXBean bean = lastCreated("ConstantMemoizer");
+    memoizer.apply("foo");
+    memoizer.apply("foo");
+    memoizer.apply("bar");
+    memoizer.apply("baz");
+    assertAll(
+        () -> assertEquals(1, bean.getDepth()),
+        () -> assertTrue(bean.isMegamorphic()),
+        () -> assertEquals(2, bean.getFallbackCount()),
+        () -> assertEquals(2, bean.getRelinkCount()));
+  }
+
+  private static int registered(String kind) throws MalformedObjectNameException {
+    return ManagementFactory.getPlatformMBeanServer()
+        .queryNames(
+            new ObjectName("com.github.forax.exotic:type=InliningCache,kind=" + kind + ",*"), null)
+        .size();
+  }
+
+  @Test
+  public void unregisteredWhenCollected()
+      throws MalformedObjectNameException, InterruptedException {
+    int before = registered("TypeSwitch");
+    for (int i = 0; i < 10; i++) {
+      TypeSwitch.create(false, String.class).typeSwitch("foo");
+    }
+    assertTrue(registered("TypeSwitch") >= before + 10);
+    for (int i = 0; i < 100 && registered("TypeSwitch") > before + 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+      TypeSwitch.create(false, String.class); // unregister the MXBeans of the collected switches
+    }
+    assertTrue(registered("TypeSwitch") <= before + 1);
+  }
+}
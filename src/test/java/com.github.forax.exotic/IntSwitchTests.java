@@ -0,0 +1,155 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class IntSwitchTests {
+  @Test
+  public void simple() {
+    IntSwitch intSwitch = IntSwitch.create(404, 200, -1, 500);
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(0, intSwitch.intSwitch(404)),
+          () -> assertEquals(1, intSwitch.intSwitch(200)),
+          () -> assertEquals(2, intSwitch.intSwitch(-1)),
+          () -> assertEquals(3, intSwitch.intSwitch(500)),
+          () -> assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(0))
+          );
+    }
+  }
+
+  @Test
+  public void empty() {
+    IntSwitch intSwitch = IntSwitch.create();
+    for(int i = 0; i < 10; i++) {
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(i));
+    }
+  }
+
+  @Test
+  public void sameCaseTwice() {
+    assertThrows(IllegalStateException.class, () -> IntSwitch.create(1, 2, 1));
+  }
+
+  @Test
+  public void dense() {
+    int[] cases = IntStream.range(0, 300).map(i -> 1_000 + 3 * i / 2).distinct().toArray();
+    IntSwitch intSwitch = IntSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, intSwitch.intSwitch(cases[i]));
+      }
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(1_002));
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(999));
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(Integer.MIN_VALUE));
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(Integer.MAX_VALUE));
+    }
+  }
+
+  @Test
+  public void sparse() {
+    int[] cases = IntStream.range(0, 300).map(i -> i * 1_000_003).toArray();
+    IntSwitch intSwitch = IntSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, intSwitch.intSwitch(cases[i]));
+      }
+      assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(1));
+    }
+  }
+
+  @Test
+  public void allCasesSeen() {
+    IntSwitch intSwitch = IntSwitch.create(7, 3, 5);
+    for(int j = 0; j < 3; j++) {
+      assertEquals(0, intSwitch.intSwitch(7));
+      assertEquals(1, intSwitch.intSwitch(3));
+      assertEquals(2, intSwitch.intSwitch(5));
+    }
+    assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(4));
+  }
+
+  @Test
+  public void allCasesSeenLongerThanACascade() {
+    int[] cases = IntStream.range(0, 12).map(i -> i * 1_000_003).toArray();
+    IntSwitch intSwitch = IntSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, intSwitch.intSwitch(cases[i]));
+      }
+    }
+    assertEquals(IntSwitch.NO_MATCH, intSwitch.intSwitch(4));
+  }
+
+  @Test
+  public void longSwitch() {
+    LongSwitch longSwitch = LongSwitch.create(Long.MAX_VALUE, Long.MIN_VALUE, 0L, 1L << 40);
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(0, longSwitch.longSwitch(Long.MAX_VALUE)),
+          () -> assertEquals(1, longSwitch.longSwitch(Long.MIN_VALUE)),
+          () -> assertEquals(2, longSwitch.longSwitch(0L)),
+          () -> assertEquals(3, longSwitch.longSwitch(1L << 40)),
+          () -> assertEquals(LongSwitch.NO_MATCH, longSwitch.longSwitch(1L))
+          );
+    }
+  }
+
+  @Test
+  public void longSwitchDenseNearTheBounds() {
+    long[] cases = LongStream.range(0, 100).map(i -> Long.MAX_VALUE - i).toArray();
+    LongSwitch longSwitch = LongSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, longSwitch.longSwitch(cases[i]));
+      }
+      assertEquals(LongSwitch.NO_MATCH, longSwitch.longSwitch(Long.MIN_VALUE));
+      assertEquals(LongSwitch.NO_MATCH, longSwitch.longSwitch(0L));
+    }
+  }
+
+  @Test
+  public void longSwitchSparse() {
+    long[] cases = LongStream.range(0, 300).map(i -> i << 33).toArray();
+    LongSwitch longSwitch = LongSwitch.create(cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, longSwitch.longSwitch(cases[i]));
+      }
+      assertEquals(LongSwitch.NO_MATCH, longSwitch.longSwitch(1L << 32));
+    }
+  }
+  
+  @Test
+  public void batch() {
+    IntSwitch intSwitch = IntSwitch.create(10, 20, 30);
+    int[] values = { 30, 10, 15, 20 };
+    int[] indexes = new int[] { 42, 42, 42, 42 };
+    intSwitch.intSwitch(values, indexes, 0, 3);
+    assertArrayEquals(new int[] { 2, 0, IntSwitch.NO_MATCH, 42 }, indexes);
+  }
+  
+  @Test
+  public void batchBadRange() {
+    IntSwitch intSwitch = IntSwitch.create(10);
+    assertAll(
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> intSwitch.intSwitch(new int[2], new int[1], 0, 2)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> intSwitch.intSwitch(new int[2], new int[2], 1, 0))
+      );
+  }
+  
+  @Test
+  public void createReturnsALambda() {
+    // the fields of a lambda are trusted as constant by the JIT, not the fields of a plain class
+    assertTrue(IntSwitch.create(1, 2).getClass().isSynthetic());
+  }
+}
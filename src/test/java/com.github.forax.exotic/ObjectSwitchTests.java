@@ -0,0 +1,131 @@
+package com.github.forax.exotic;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class ObjectSwitchTests {
+  static final class Pair {
+    private final String first;
+    private final String second;
+
+    Pair(String first, String second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Pair && first.equals(((Pair) o).first) && second.equals(((Pair) o).second);
+    }
+
+    @Override
+    public int hashCode() {
+      return first.hashCode() ^ second.hashCode();
+    }
+  }
+
+  static final class Point {  // no equals/hashCode
+    static final ObjectSupport<Point> SUPPORT = ObjectSupport.of(lookup(), Point.class, "x", "y");
+    
+    final int x;
+    final int y;
+
+    Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  @Test
+  public void simple() {
+    ObjectSwitch<Pair> objectSwitch = ObjectSwitch.create(false, new Pair("EUR", "USD"), new Pair("USD", "JPY"));
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(0, objectSwitch.objectSwitch(new Pair("EUR", "USD"))),
+          () -> assertEquals(1, objectSwitch.objectSwitch(new Pair("USD", "JPY"))),
+          () -> assertEquals(ObjectSwitch.NO_MATCH, objectSwitch.objectSwitch(new Pair("USD", "EUR")))
+          );
+    }
+  }
+
+  @Test
+  public void withObjectSupport() {
+    ObjectSwitch<Point> objectSwitch = ObjectSwitch.create(false, Point.SUPPORT, new Point(1, 2), new Point(3, 4));
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(0, objectSwitch.objectSwitch(new Point(1, 2))),
+          () -> assertEquals(1, objectSwitch.objectSwitch(new Point(3, 4))),
+          () -> assertEquals(ObjectSwitch.NO_MATCH, objectSwitch.objectSwitch(new Point(2, 1)))
+          );
+    }
+  }
+
+  @Test
+  public void withObjectSupportMegamorphic() {
+    Point[] cases = IntStream.range(0, 200).mapToObj(i -> new Point(i, -i)).toArray(Point[]::new);
+    ObjectSwitch<Point> objectSwitch = ObjectSwitch.create(false, Point.SUPPORT, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, objectSwitch.objectSwitch(new Point(i, -i)));
+      }
+      assertEquals(ObjectSwitch.NO_MATCH, objectSwitch.objectSwitch(new Point(1, 1)));
+    }
+  }
+
+  @Test
+  public void megamorphic() {
+    List<?>[] cases = IntStream.range(0, 200).mapToObj(i -> List.of(i, "" + i)).toArray(List<?>[]::new);
+    ObjectSwitch<List<?>> objectSwitch = ObjectSwitch.create(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, objectSwitch.objectSwitch(Arrays.asList(i, "" + i)));
+      }
+      assertEquals(ObjectSwitch.NO_MATCH, objectSwitch.objectSwitch(List.of()));
+    }
+  }
+
+  @Test
+  public void allCasesSeen() {
+    ObjectSwitch<Integer> objectSwitch = ObjectSwitch.create(false, 1000, 2000, 3000);
+    for(int j = 0; j < 3; j++) {
+      assertEquals(0, objectSwitch.objectSwitch(1000));
+      assertEquals(1, objectSwitch.objectSwitch(2000));
+      assertEquals(2, objectSwitch.objectSwitch(3000));
+    }
+    assertEquals(ObjectSwitch.NO_MATCH, objectSwitch.objectSwitch(4000));
+  }
+
+  @Test
+  public void nonNullSwitchCalledWithANull() {
+    ObjectSwitch<String> objectSwitch = ObjectSwitch.create(false, "foo");
+    assertThrows(NullPointerException.class, () -> objectSwitch.objectSwitch(null));
+  }
+
+  @Test
+  public void nullCase() {
+    ObjectSwitch<String> objectSwitch = ObjectSwitch.create(true, "foo");
+    assertEquals(ObjectSwitch.NULL_MATCH, objectSwitch.objectSwitch(null));
+  }
+
+  @Test
+  public void aCaseCanNotBeNull() {
+    assertThrows(NullPointerException.class, () -> ObjectSwitch.create(false, "foo", null));
+  }
+
+  @Test
+  public void sameCaseTwice() {
+    assertAll(
+        () -> assertThrows(IllegalStateException.class, () -> ObjectSwitch.create(false, new Pair("a", "b"), new Pair("a", "b"))),
+        () -> assertThrows(IllegalStateException.class, () -> ObjectSwitch.create(false, Point.SUPPORT, new Point(1, 2), new Point(1, 2)))
+        );
+  }
+}
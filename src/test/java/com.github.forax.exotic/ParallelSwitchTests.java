@@ -0,0 +1,109 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class ParallelSwitchTests {
+  private static final int LENGTH = 1_000_000;
+
+  @Test
+  public void stringSwitch() {
+    StringSwitch stringSwitch = StringSwitch.create(true, "foo", "bar", "baz");
+    String[] names = { "foo", "bar", "baz", "whizz", null };
+    String[] values = IntStream.range(0, LENGTH).mapToObj(i -> names[i % names.length]).toArray(String[]::new);
+    int[] indexes = new int[values.length];
+    ParallelSwitch.Histogram histogram = ParallelSwitch.stringSwitch(stringSwitch, 3, values, indexes);
+    int[] expected = { 0, 1, 2, StringSwitch.NO_MATCH, StringSwitch.NULL_MATCH };
+    assertArrayEquals(IntStream.range(0, LENGTH).map(i -> expected[i % expected.length]).toArray(), indexes);
+    assertAll(
+        () -> assertEquals(3, histogram.caseCount()),
+        () -> assertEquals(LENGTH / 5, histogram.count(0)),
+        () -> assertEquals(LENGTH / 5, histogram.count(2)),
+        () -> assertEquals(LENGTH / 5, histogram.count(StringSwitch.NO_MATCH)),
+        () -> assertEquals(LENGTH / 5, histogram.count(StringSwitch.NULL_MATCH))
+      );
+  }
+
+  @Test
+  public void typeSwitch() {
+    TypeSwitch typeSwitch = TypeSwitch.create(false, Integer.class, String.class);
+    Object[] values = IntStream.range(0, LENGTH).mapToObj(i -> (i % 4 == 0)? "" + i: i).toArray();
+    int[] indexes = new int[values.length];
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ParallelSwitch.Histogram histogram = ParallelSwitch.typeSwitch(typeSwitch, 2, values, indexes, pool);
+      assertAll(
+          () -> assertEquals(3 * LENGTH / 4, histogram.count(0)),
+          () -> assertEquals(LENGTH / 4, histogram.count(1)),
+          () -> assertEquals(0, histogram.count(TypeSwitch.NO_MATCH)),
+          () -> assertEquals(1, indexes[LENGTH - 4]),
+          () -> assertEquals(0, indexes[LENGTH - 1])
+        );
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void intSwitch() {
+    IntSwitch intSwitch = IntSwitch.create(10, 20, 30, 40);
+    int[] values = IntStream.range(0, LENGTH).map(i -> (i % 5) * 10).toArray();
+    int[] indexes = new int[values.length];
+    ParallelSwitch.Histogram histogram = ParallelSwitch.intSwitch(intSwitch, 4, values, indexes);
+    assertArrayEquals(IntStream.range(0, LENGTH).map(i -> (i % 5) - 1).map(i -> (i == -1)? IntSwitch.NO_MATCH: i).toArray(), indexes);
+    assertAll(
+        () -> assertEquals(LENGTH / 5, histogram.count(3)),
+        () -> assertEquals(LENGTH / 5, histogram.count(IntSwitch.NO_MATCH)),
+        () -> assertEquals(0, histogram.count(StringSwitch.NULL_MATCH))
+      );
+  }
+
+  @Test
+  public void smallArray() {
+    IntSwitch intSwitch = IntSwitch.create(1);
+    int[] indexes = new int[3];
+    ParallelSwitch.Histogram histogram = ParallelSwitch.intSwitch(intSwitch, 1, new int[] { 1, 2, 1 }, indexes);
+    assertArrayEquals(new int[] { 0, IntSwitch.NO_MATCH, 0 }, indexes);
+    assertEquals(2, histogram.count(0));
+  }
+
+  @Test
+  public void emptyArray() {
+    ParallelSwitch.Histogram histogram = ParallelSwitch.stringSwitch(StringSwitch.create(false), 0, new String[0], new int[0]);
+    assertAll(
+        () -> assertEquals(0, histogram.caseCount()),
+        () -> assertEquals(0, histogram.count(StringSwitch.NO_MATCH)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> histogram.count(0))
+      );
+  }
+
+  @Test
+  public void wrongCaseCount() {
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+    String[] values = { "foo", "bar" };
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> ParallelSwitch.stringSwitch(stringSwitch, 1, values, new int[2])),
+        () -> assertThrows(IllegalArgumentException.class, () -> ParallelSwitch.stringSwitch(stringSwitch, -1, values, new int[2]))
+      );
+  }
+
+  @Test
+  public void badArguments() {
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo");
+    String[] values = { "foo", "foo" };
+    assertAll(
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> ParallelSwitch.stringSwitch(stringSwitch, 1, values, new int[1])),
+        () -> assertThrows(NullPointerException.class, () -> ParallelSwitch.stringSwitch(null, 1, values, new int[2])),
+        () -> assertThrows(NullPointerException.class, () -> ParallelSwitch.stringSwitch(stringSwitch, 1, null, new int[2])),
+        () -> assertThrows(NullPointerException.class, () -> ParallelSwitch.stringSwitch(stringSwitch, 1, values, new int[2], null))
+      );
+  }
+}
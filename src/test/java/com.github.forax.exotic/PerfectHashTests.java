@@ -0,0 +1,50 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class PerfectHashTests {
+  @Test
+  public void empty() {
+    PerfectHash perfectHash = PerfectHash.create(new int[0]);
+    assertEquals(-1, perfectHash.index(42));
+  }
+
+  @Test
+  public void random() {
+    int[] hashes = new Random(0).ints(10_000).distinct().toArray();
+    PerfectHash perfectHash = PerfectHash.create(hashes);
+    for (int i = 0; i < hashes.length; i++) {
+      assertEquals(i, perfectHash.index(hashes[i]));
+      assertEquals(-1, perfectHash.next(i));
+    }
+  }
+
+  @Test
+  public void consecutive() {
+    int[] hashes = IntStream.range(0, 1_000).map(i -> i << 16).toArray();
+    PerfectHash perfectHash = PerfectHash.create(hashes);
+    for (int i = 0; i < hashes.length; i++) {
+      assertEquals(i, perfectHash.index(hashes[i]));
+    }
+    assertEquals(-1, perfectHash.index(1));
+  }
+
+  @Test
+  public void sameHashes() {
+    PerfectHash perfectHash = PerfectHash.create(new int[] {7, 3, 7, 7});
+    assertAll(
+        () -> assertEquals(0, perfectHash.index(7)),
+        () -> assertEquals(2, perfectHash.next(0)),
+        () -> assertEquals(3, perfectHash.next(2)),
+        () -> assertEquals(-1, perfectHash.next(3)),
+        () -> assertEquals(1, perfectHash.index(3)),
+        () -> assertEquals(-1, perfectHash.index(5)));
+  }
+}
@@ -0,0 +1,79 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class PrefixSwitchTests {
+  @Test
+  public void simple() {
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(false, "/api/", "/", "/api/users/", "/static");
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(0, prefixSwitch.prefixSwitch("/api/orders/12")),
+          () -> assertEquals(1, prefixSwitch.prefixSwitch("/index.html")),
+          () -> assertEquals(2, prefixSwitch.prefixSwitch("/api/users/bob")),
+          () -> assertEquals(2, prefixSwitch.prefixSwitch("/api/users/")),
+          () -> assertEquals(3, prefixSwitch.prefixSwitch("/static")),
+          () -> assertEquals(1, prefixSwitch.prefixSwitch("/stat")),
+          () -> assertEquals(PrefixSwitch.NO_MATCH, prefixSwitch.prefixSwitch("api")),
+          () -> assertEquals(PrefixSwitch.NO_MATCH, prefixSwitch.prefixSwitch(""))
+          );
+    }
+  }
+
+  @Test
+  public void emptyPrefix() {
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(false, "", "foo");
+    assertAll(
+        () -> assertEquals(0, prefixSwitch.prefixSwitch("")),
+        () -> assertEquals(0, prefixSwitch.prefixSwitch("bar")),
+        () -> assertEquals(1, prefixSwitch.prefixSwitch("foobar"))
+        );
+  }
+
+  @Test
+  public void noPrefix() {
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(false);
+    assertEquals(PrefixSwitch.NO_MATCH, prefixSwitch.prefixSwitch("foo"));
+  }
+
+  @Test
+  public void nonNullSwitchCalledWithANull() {
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(false, "foo");
+    assertThrows(NullPointerException.class, () -> prefixSwitch.prefixSwitch(null));
+  }
+
+  @Test
+  public void nullCase() {
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(true, "foo");
+    assertEquals(PrefixSwitch.NULL_MATCH, prefixSwitch.prefixSwitch(null));
+  }
+
+  @Test
+  public void aPrefixCanNotBeNull() {
+    assertThrows(NullPointerException.class, () -> PrefixSwitch.create(false, "foo", null));
+  }
+
+  @Test
+  public void samePrefixTwice() {
+    assertThrows(IllegalStateException.class, () -> PrefixSwitch.create(false, "foo", "bar", "foo"));
+  }
+
+  @Test
+  public void megamorphic() {
+    String[] prefixes = IntStream.range(0, 100).mapToObj(i -> "/path" + i + "/").toArray(String[]::new);
+    PrefixSwitch prefixSwitch = PrefixSwitch.create(false, prefixes);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < prefixes.length; i++) {
+        assertEquals(i, prefixSwitch.prefixSwitch(prefixes[i] + "item" + j));
+      }
+      assertEquals(PrefixSwitch.NO_MATCH, prefixSwitch.prefixSwitch("/path"));
+    }
+  }
+}
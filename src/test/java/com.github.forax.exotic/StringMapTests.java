@@ -0,0 +1,117 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class StringMapTests {
+  @Test
+  public void simple() {
+    StringMap<String> stringMap = StringMap.create(Map.of("foo", "FOO", "bar", "BAR"));
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals("FOO", stringMap.get("foo")),
+          () -> assertEquals("BAR", stringMap.get("bar")),
+          () -> assertNull(stringMap.get("baz"))
+          );
+    }
+  }
+
+  @Test
+  public void defaultValue() {
+    StringMap<String> stringMap = StringMap.create(Map.of("foo", "FOO"), "?");
+    assertAll(
+        () -> assertEquals("FOO", stringMap.get("foo")),
+        () -> assertEquals("?", stringMap.get("bar"))
+        );
+  }
+
+  @Test
+  public void nullValue() {
+    HashMap<String, String> map = new HashMap<>();
+    map.put("foo", null);
+    StringMap<String> stringMap = StringMap.create(map, "?");
+    assertAll(
+        () -> assertNull(stringMap.get("foo")),
+        () -> assertEquals("?", stringMap.get("bar"))
+        );
+  }
+
+  @Test
+  public void nullKey() {
+    StringMap<String> stringMap = StringMap.create(Map.of("foo", "FOO"));
+    assertThrows(NullPointerException.class, () -> stringMap.get(null));
+  }
+
+  @Test
+  public void aKeyCanNotBeNull() {
+    HashMap<String, String> map = new HashMap<>();
+    map.put(null, "foo");
+    assertThrows(NullPointerException.class, () -> StringMap.create(map));
+  }
+
+  @Test
+  public void allKeysSeen() {
+    Map<String, Integer> map = IntStream.range(0, 20).boxed().collect(Collectors.toMap(i -> "key" + i, Function.identity()));
+    StringMap<Integer> stringMap = StringMap.create(map);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < 20; i++) {
+        assertEquals(i, (int)stringMap.get("key" + i));
+      }
+      assertNull(stringMap.get("unknown"));
+    }
+  }
+
+  @Test
+  public void megamorphic() {
+    Map<String, Integer> map = IntStream.range(0, 500).boxed().collect(Collectors.toMap(i -> "key" + i, Function.identity()));
+    StringMap<Integer> stringMap = StringMap.create(map);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < 500; i++) {
+        assertEquals(i, (int)stringMap.get("key" + i));
+      }
+      assertNull(stringMap.get("unknown"));
+    }
+  }
+
+  @Test
+  public void toIntStringMap() {
+    ToIntStringMap stringMap = ToIntStringMap.create(Map.of("foo", 1, "bar", 2), -1);
+    for(int i = 0; i < 3; i++) {
+      assertAll(
+          () -> assertEquals(1, stringMap.getAsInt("foo")),
+          () -> assertEquals(2, stringMap.getAsInt("bar")),
+          () -> assertEquals(-1, stringMap.getAsInt("baz"))
+          );
+    }
+  }
+
+  @Test
+  public void toIntStringMapNullValue() {
+    HashMap<String, Integer> map = new HashMap<>();
+    map.put("foo", null);
+    assertThrows(NullPointerException.class, () -> ToIntStringMap.create(map, 0));
+  }
+
+  @Test
+  public void toLongStringMapMegamorphic() {
+    Map<String, Long> map = IntStream.range(0, 500).boxed().collect(Collectors.toMap(i -> "key" + i, i -> i * 1_000_000_000L));
+    ToLongStringMap stringMap = ToLongStringMap.create(map, -1L);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < 500; i++) {
+        assertEquals(i * 1_000_000_000L, stringMap.getAsLong("key" + i));
+      }
+      assertEquals(-1L, stringMap.getAsLong("unknown"));
+    }
+  }
+}
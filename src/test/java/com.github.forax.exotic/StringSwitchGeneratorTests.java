@@ -0,0 +1,78 @@
+package com.github.forax.exotic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("static-method")
+public class StringSwitchGeneratorTests {
+  @Test
+  public void simple() {
+    StringSwitch stringSwitch = StringSwitchGenerator.generate(new String[] { "foo", "bar", "baz" });
+    assertNotNull(stringSwitch);
+    assertEquals(0, stringSwitch.stringSwitch("foo"));
+    assertEquals(1, stringSwitch.stringSwitch("bar"));
+    assertEquals(2, stringSwitch.stringSwitch("baz"));
+    assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("whizz"));
+  }
+
+  @Test
+  public void empty() {
+    StringSwitch stringSwitch = StringSwitchGenerator.generate(new String[0]);
+    assertNotNull(stringSwitch);
+    assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("foo"));
+  }
+
+  @Test
+  public void sameHashCode() {
+    // "Aa" and "BB" have the same hash code
+    StringSwitch stringSwitch = StringSwitchGenerator.generate(new String[] { "Aa", "BB", "AaBB", "BBAa" });
+    assertNotNull(stringSwitch);
+    assertEquals(0, stringSwitch.stringSwitch("Aa"));
+    assertEquals(1, stringSwitch.stringSwitch("BB"));
+    assertEquals(2, stringSwitch.stringSwitch("AaBB"));
+    assertEquals(3, stringSwitch.stringSwitch("BBAa"));
+    assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("AaAa"));
+  }
+
+  @Test
+  public void tooManyCases() {
+    String[] stringcases = IntStream.range(0, 40_000).mapToObj(i -> "s" + i).toArray(String[]::new);
+    assertNull(StringSwitchGenerator.generate(stringcases));
+  }
+
+  @Test
+  public void manyCases() {
+    String[] stringcases = IntStream.range(0, 2_000).mapToObj(i -> "s" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitchGenerator.generate(stringcases);
+    assertNotNull(stringSwitch);
+    for (int i = 0; i < stringcases.length; i++) {
+      assertEquals(i, stringSwitch.stringSwitch(stringcases[i]));
+    }
+    assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("s2000"));
+  }
+
+  @Test
+  public void tooLongCase() {
+    // a string constant can not be longer than 65535 bytes in modified UTF-8
+    String tooLong = String.join("", Collections.nCopies(70_000, "a"));
+    assertNull(StringSwitchGenerator.generate(new String[] { "foo", tooLong }));
+  }
+
+  @Test
+  public void tooLongCaseFallback() {
+    String tooLong = String.join("", Collections.nCopies(70_000, "a"));
+    String[] stringcases = IntStream.range(0, 20).mapToObj(i -> "s" + i).toArray(String[]::new);
+    stringcases[10] = tooLong;
+    StringSwitch stringSwitch = StringSwitch.create(false, stringcases);
+    for (int i = 0; i < stringcases.length; i++) {
+      assertEquals(i, stringSwitch.stringSwitch(stringcases[i]));
+    }
+    assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("s10"));
+  }
+}
@@ -1,8 +1,15 @@
 package com.github.forax.exotic;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
@@ -48,4 +55,179 @@ public class StringSwitchTests {
   public void casesArrayCanNotBeNull() {
     assertThrows(NullPointerException.class, () -> StringSwitch.create(false, (String[])null));
   }
+  
+  @Test
+  public void megamorphic() {
+    String[] cases = IntStream.range(0, 500).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.create(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, stringSwitch.stringSwitch(new String(cases[i])));
+      }
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("unknown"));
+    }
+  }
+  
+  @Test
+  public void allCasesSeen() {
+    String[] cases = IntStream.range(0, 20).mapToObj(i -> "keyword" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.create(true, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, stringSwitch.stringSwitch(new String(cases[i])));
+      }
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("unknown"));
+      assertEquals(StringSwitch.NULL_MATCH, stringSwitch.stringSwitch(null));
+    }
+  }
+  
+  @Test
+  public void sameHashCode() {
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    String[] cases = IntStream.range(0, 40).mapToObj(i -> (i % 2 == 0)? "Aa" + i: "BB" + (i - 1)).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.create(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, stringSwitch.stringSwitch(cases[i]));
+      }
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("AaBB"));
+    }
+  }
+  
+  @Test
+  public void sameCaseTwice() {
+    assertThrows(IllegalStateException.class, () -> StringSwitch.create(false, "foo", "bar", "foo"));
+  }
+  
+  @Test
+  public void caseInsensitive() {
+    StringSwitch stringSwitch = StringSwitch.createCaseInsensitive(true, "Content-Type", "content-length", "\u00E9t\u00E9");
+    for(int j = 0; j < 3; j++) {
+      assertAll(
+          () -> assertEquals(0, stringSwitch.stringSwitch("content-type")),
+          () -> assertEquals(0, stringSwitch.stringSwitch("CONTENT-TYPE")),
+          () -> assertEquals(1, stringSwitch.stringSwitch("Content-Length")),
+          () -> assertEquals(2, stringSwitch.stringSwitch("\u00C9T\u00C9")),
+          () -> assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("content-typ")),
+          () -> assertEquals(StringSwitch.NULL_MATCH, stringSwitch.stringSwitch(null))
+          );
+    }
+  }
+  
+  @Test
+  public void caseInsensitiveMegamorphic() {
+    String[] cases = IntStream.range(0, 500).mapToObj(i -> "Keyword" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.createCaseInsensitive(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, stringSwitch.stringSwitch(cases[i].toUpperCase(Locale.ROOT)));
+        assertEquals(i, stringSwitch.stringSwitch(cases[i].toLowerCase(Locale.ROOT)));
+      }
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("UNKNOWN"));
+    }
+  }
+  
+  @Test
+  public void caseInsensitiveAllCasesSeen() {
+    String[] cases = IntStream.range(0, 10).mapToObj(i -> "Keyword" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.createCaseInsensitive(false, cases);
+    for(int j = 0; j < 3; j++) {
+      for(int i = 0; i < cases.length; i++) {
+        assertEquals(i, stringSwitch.stringSwitch(cases[i].toUpperCase(Locale.ROOT)));
+      }
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("unknown"));
+    }
+  }
+  
+  @Test
+  public void caseInsensitiveSameCaseTwice() {
+    assertThrows(IllegalStateException.class, () -> StringSwitch.createCaseInsensitive(false, "foo", "bar", "FOO"));
+  }
+  
+  @Test
+  public void skewedCalls() {
+    String[] cases = { "foo", "bar", "baz", "whizz", "buzz" };
+    StringSwitch stringSwitch = StringSwitch.create(false, cases);
+    StringSwitch caseInsensitive = StringSwitch.createCaseInsensitive(false, cases);
+    for(int j = 0; j < 5_000; j++) {
+      int i = (j % 10 == 0)? j % cases.length: cases.length - 1;
+      assertEquals(i, stringSwitch.stringSwitch(cases[i]));
+      assertEquals(i, caseInsensitive.stringSwitch(cases[i].toUpperCase(Locale.ROOT)));
+      assertEquals(StringSwitch.NO_MATCH, stringSwitch.stringSwitch("unknown"));
+    }
+  }
+  
+  @Test
+  public void batch() {
+    StringSwitch stringSwitch = StringSwitch.create(true, "foo", "bar");
+    String[] values = { "bar", "foo", null, "baz", "foo" };
+    int[] indexes = new int[values.length];
+    stringSwitch.stringSwitch(values, indexes);
+    assertArrayEquals(new int[] { 1, 0, StringSwitch.NULL_MATCH, StringSwitch.NO_MATCH, 0 }, indexes);
+  }
+  
+  @Test
+  public void batchRange() {
+    StringSwitch stringSwitch = StringSwitch.createCaseInsensitive(false, "foo", "bar");
+    String[] values = { "BAR", "Foo", "baz", "foo" };
+    int[] indexes = new int[] { 42, 42, 42, 42 };
+    stringSwitch.stringSwitch(values, indexes, 1, 3);
+    assertArrayEquals(new int[] { 42, 0, StringSwitch.NO_MATCH, 42 }, indexes);
+  }
+  
+  @Test
+  public void batchAllCasesSeen() {
+    String[] cases = IntStream.range(0, 20).mapToObj(i -> "case" + i).toArray(String[]::new);
+    StringSwitch stringSwitch = StringSwitch.create(false, cases);
+    String[] values = IntStream.range(0, 10_000).mapToObj(i -> "case" + (i % 21)).toArray(String[]::new);
+    int[] indexes = new int[values.length];
+    stringSwitch.stringSwitch(values, indexes);
+    for(int i = 0; i < values.length; i++) {
+      assertEquals((i % 21 == 20)? StringSwitch.NO_MATCH: i % 21, indexes[i]);
+    }
+  }
+  
+  @Test
+  public void batchBadRange() {
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo");
+    String[] values = { "foo", "foo" };
+    assertAll(
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> stringSwitch.stringSwitch(values, new int[1])),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> stringSwitch.stringSwitch(values, new int[2], -1, 1)),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> stringSwitch.stringSwitch(values, new int[2], 2, 1)),
+        () -> assertThrows(NullPointerException.class, () -> stringSwitch.stringSwitch(null, new int[2])),
+        () -> assertThrows(NullPointerException.class, () -> stringSwitch.stringSwitch(values, null))
+      );
+  }
+  
+  @Test
+  public void batchDefaultMethod() {
+    StringSwitch stringSwitch = String::length;
+    int[] indexes = new int[2];
+    stringSwitch.stringSwitch(new String[] { "a", "abc" }, indexes);
+    assertArrayEquals(new int[] { 1, 3 }, indexes);
+  }
+  
+  @Test
+  public void toIndexes() {
+    StringSwitch stringSwitch = StringSwitch.create(false, "foo", "bar");
+    assertAll(
+        () -> assertArrayEquals(new int[] { 1, 0, StringSwitch.NO_MATCH },
+            Stream.of("bar", "foo", "baz").collect(stringSwitch.toIndexes())),
+        () -> assertArrayEquals(IntStream.range(0, 10_000).map(i -> i % 2).toArray(),
+            IntStream.range(0, 10_000).parallel().mapToObj(i -> (i % 2 == 0)? "foo": "bar").collect(stringSwitch.toIndexes()))
+      );
+  }
+  
+  @Test
+  public void createDefinesAClassPerSwitch() {
+    // each switch has its own class, so the batch loop of a switch has its own profile
+    // and the method handle of the switch is a static final constant
+    Class<?> class1 = StringSwitch.create(false, "foo").getClass();
+    Class<?> class2 = StringSwitch.create(false, "foo").getClass();
+    assertAll(
+        () -> assertNotSame(class1, class2),
+        () -> assertNotSame(BatchSwitches.StringSwitchImpl.class, class1)
+      );
+  }
 }
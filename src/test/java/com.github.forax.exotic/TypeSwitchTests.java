@@ -1,10 +1,14 @@
 package com.github.forax.exotic;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.Serializable;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
@@ -91,4 +95,52 @@ public class TypeSwitchTests {
         () -> assertThrows(IllegalStateException.class, () -> TypeSwitch.create(false, Serializable.class, Comparable.class, String.class))
       );
   }
+  
+  @Test
+  public void batch() {
+    TypeSwitch typeSwitch = TypeSwitch.create(true, Integer.class, String.class);
+    Object[] values = { "foo", 3, null, 4.5, 42 };
+    int[] indexes = new int[values.length];
+    typeSwitch.typeSwitch(values, indexes);
+    assertArrayEquals(new int[] { 1, 0, TypeSwitch.NULL_MATCH, TypeSwitch.NO_MATCH, 0 }, indexes);
+  }
+  
+  @Test
+  public void batchRange() {
+    TypeSwitch typeSwitch = TypeSwitch.create(false, CharSequence.class, Object.class);
+    Object[] values = { "foo", 3, "bar", 4.5 };
+    int[] indexes = new int[] { 42, 42, 42, 42 };
+    typeSwitch.typeSwitch(values, indexes, 1, 3);
+    assertArrayEquals(new int[] { 42, 1, 0, 42 }, indexes);
+  }
+  
+  @Test
+  public void batchBadRange() {
+    TypeSwitch typeSwitch = TypeSwitch.create(false, String.class);
+    Object[] values = { "foo", "bar" };
+    assertAll(
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> typeSwitch.typeSwitch(values, new int[1])),
+        () -> assertThrows(IndexOutOfBoundsException.class, () -> typeSwitch.typeSwitch(values, new int[2], 0, 3)),
+        () -> assertThrows(NullPointerException.class, () -> typeSwitch.typeSwitch(null, new int[2]))
+      );
+  }
+  
+  @Test
+  public void toIndexes() {
+    TypeSwitch typeSwitch = TypeSwitch.create(false, Integer.class, String.class);
+    assertArrayEquals(new int[] { 1, 0, TypeSwitch.NO_MATCH },
+        Stream.of("foo", 3, 4.5).collect(typeSwitch.toIndexes()));
+  }
+  
+  @Test
+  public void createDefinesAClassPerSwitch() {
+    // each switch has its own class, so the batch loop of a switch has its own profile
+    // and the method handle of the switch is a static final constant
+    Class<?> class1 = TypeSwitch.create(false, String.class).getClass();
+    Class<?> class2 = TypeSwitch.create(false, String.class).getClass();
+    assertAll(
+        () -> assertNotSame(class1, class2),
+        () -> assertNotSame(BatchSwitches.TypeSwitchImpl.class, class1)
+      );
+  }
 }
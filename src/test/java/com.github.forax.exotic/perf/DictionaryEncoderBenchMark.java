@@ -0,0 +1,120 @@
+package com.github.forax.exotic.perf;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.forax.exotic.DictionaryEncoder;
+
+@SuppressWarnings("static-method")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DictionaryEncoderBenchMark {
+  private static final String[] COUNTRIES = { "FR", "US", "DE", "IT", "ES", "GB", "JP", "CN" };
+  
+  // one country per line
+  private static final byte[] DATA = IntStream.range(0, 10_000)
+      .mapToObj(i -> COUNTRIES[(i * 7) % COUNTRIES.length] + "\n")
+      .collect(Collectors.joining())
+      .getBytes(UTF_8);
+  
+  private final DictionaryEncoder encoder = DictionaryEncoder.create(COUNTRIES);
+  private final HashMap<String, Integer> map = new HashMap<>();
+  private final int[] codes = new int[10_000];
+  
+  // a CSV file of 100_000 lines, the country is the second column
+  private Path path;
+  
+  @Setup
+  public void createFile() throws IOException {
+    path = Files.createTempFile("dictionary-encoder", ".csv");
+    Files.write(path, IntStream.range(0, 100_000)
+        .mapToObj(i -> i + "," + COUNTRIES[(i * 7) % COUNTRIES.length] + ",ok\n")
+        .collect(Collectors.joining())
+        .getBytes(UTF_8));
+  }
+  
+  @TearDown
+  public void deleteFile() throws IOException {
+    Files.delete(path);
+  }
+  
+  @Benchmark
+  public int[] dictionary_encoder() {
+    int line = 0;
+    int start = 0;
+    for(int i = 0; i < DATA.length; i++) {
+      if (DATA[i] == '\n') {
+        codes[line++] = encoder.encode(DATA, start, i - start);
+        start = i + 1;
+      }
+    }
+    return codes;
+  }
+  
+  @Benchmark
+  public int[] hashmap() {
+    int line = 0;
+    int start = 0;
+    for(int i = 0; i < DATA.length; i++) {
+      if (DATA[i] == '\n') {
+        String value = new String(DATA, start, i - start, UTF_8);
+        codes[line++] = map.computeIfAbsent(value, __ -> map.size());
+        start = i + 1;
+      }
+    }
+    return codes;
+  }
+
+  @Benchmark
+  public int[] dictionary_encoder_column() throws IOException {
+    return encoder.encodeColumn(path, (byte) ',', 1, false);
+  }
+  
+  @Benchmark
+  public int[] buffered_reader_hashmap_column() throws IOException {
+    HashMap<String, Integer> map = new HashMap<>();
+    int[] codes = new int[100_000];
+    int line = 0;
+    try(BufferedReader reader = Files.newBufferedReader(path)) {
+      String text;
+      while((text = reader.readLine()) != null) {
+        String value = text.split(",")[1];
+        codes[line++] = map.computeIfAbsent(value, __ -> map.size());
+      }
+    }
+    return codes;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(DictionaryEncoderBenchMark.class.getName()).build();
+    new Runner(opt).run();
+  }
+}
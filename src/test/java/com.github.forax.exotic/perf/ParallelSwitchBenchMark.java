@@ -0,0 +1,56 @@
+package com.github.forax.exotic.perf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.forax.exotic.ParallelSwitch;
+import com.github.forax.exotic.StringSwitch;
+
+@SuppressWarnings("static-method")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ParallelSwitchBenchMark {
+  private static final String[] COUNTRIES = { "FR", "US", "DE", "IT", "ES", "GB", "JP", "CN" };
+  
+  private static final StringSwitch COUNTRY_SWITCH = StringSwitch.create(false, COUNTRIES);
+  
+  private static final String[] DATA = IntStream.range(0, 4_000_000)
+      .mapToObj(i -> new String(COUNTRIES[(i * 7) % COUNTRIES.length]))
+      .toArray(String[]::new);
+  
+  private final int[] indexes = new int[DATA.length];
+  
+  @Benchmark
+  public int[] sequential_string_switch() {
+    COUNTRY_SWITCH.stringSwitch(DATA, indexes);
+    return indexes;
+  }
+  
+  @Benchmark
+  public ParallelSwitch.Histogram parallel_string_switch() {
+    return ParallelSwitch.stringSwitch(COUNTRY_SWITCH, COUNTRIES.length, DATA, indexes);
+  }
+  
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(ParallelSwitchBenchMark.class.getName()).build();
+    new Runner(opt).run();
+  }
+}
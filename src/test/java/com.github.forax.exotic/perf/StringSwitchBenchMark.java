@@ -152,6 +152,14 @@ public class StringSwitchBenchMark {
     return sum;
   }
   
+  private final int[] indexes = new int[DATA.length];
+  
+  @Benchmark
+  public int[] big_big_string_switch_batch() {
+    BIG_STRING_SWITCH.stringSwitch(DATA, indexes);
+    return indexes;
+  }
+  
   @Benchmark
   public int big_big_ifequals_cascade() {
     int sum = 0;